@@ -0,0 +1,690 @@
+package base;
+
+/**
+ * Binary decision diagram package.
+ *
+ * A BDD object manages a shared pool of reduced, ordered BDD nodes over a
+ * fixed number of boolean variables.  Nodes are identified by ints; ZERO
+ * and ONE are the terminal nodes.  Variable 0 is at the top of the order.
+ *
+ * Nodes are hash-consed through a unique table, so two nodes are equal iff
+ * they represent the same function.  Results of the recursive operations
+ * are memoized in a computed table (a direct-mapped cache).
+ *
+ * Garbage collection:  nodes that are to survive must be protected with
+ * ref(), and released with deref() when no longer needed.  Collection only
+ * occurs at the start of one of the public operations (never in the middle
+ * of one), and it preserves the operands of that operation; so it's safe to
+ * combine unreferenced intermediate results in a single expression, as long
+ * as each is used by the very next operation.
+ */
+public class BDD {
+
+  public static final int ZERO = 0, ONE = 1;
+
+  /**
+   * Constructor
+   * @param nVars : number of variables
+   */
+  public BDD(int nVars) {
+    this(nVars, 1 << 14);
+  }
+
+  /**
+   * Constructor
+   * @param nVars : number of variables
+   * @param initialNodes : initial size of node table
+   */
+  public BDD(int nVars, int initialNodes) {
+    this.nVars = nVars;
+    int cap = 16;
+    while (cap < initialNodes) {
+      cap <<= 1;
+    }
+    allocNodes(cap);
+
+    // terminals have a variable index below every real variable
+    nVar[ZERO] = nVars;
+    nVar[ONE] = nVars;
+    nLow[ONE] = nHigh[ONE] = ONE;
+    nRef[ZERO] = nRef[ONE] = 1;
+    for (int i = cap - 1; i >= 2; i--) {
+      nNext[i] = freeList;
+      freeList = i;
+      nVar[i] = FREE;
+    }
+    liveNodes = 2;
+    gcThreshold = cap >> 1;
+
+    allocCache(Math.max(1 << 12, cap >> 1));
+  }
+
+  /**
+   * Get number of variables
+   * @return int
+   */
+  public int vars() {
+    return nVars;
+  }
+
+  /**
+   * Get the number of nodes currently allocated (including the
+   * terminals, and any garbage not yet collected)
+   * @return int
+   */
+  public int nodeCount() {
+    return liveNodes;
+  }
+
+  /**
+   * Get the number of garbage collections performed
+   * @return int
+   */
+  public int gcCount() {
+    return gcCount;
+  }
+
+  /**
+   * Get variable of a node
+   * @param f : node
+   * @return variable index, or vars() if node is a terminal
+   */
+  public int var(int f) {
+    return nVar[f];
+  }
+
+  /**
+   * Get the low (variable = false) child of a node
+   * @param f : node (non-terminal)
+   * @return int
+   */
+  public int low(int f) {
+    return nLow[f];
+  }
+
+  /**
+   * Get the high (variable = true) child of a node
+   * @param f : node (non-terminal)
+   * @return int
+   */
+  public int high(int f) {
+    return nHigh[f];
+  }
+
+  /**
+   * Protect a node (and its descendants) from garbage collection
+   * @param f : node
+   * @return f
+   */
+  public int ref(int f) {
+    nRef[f]++;
+    return f;
+  }
+
+  /**
+   * Remove a reference added by ref()
+   * @param f : node
+   */
+  public void deref(int f) {
+    if (nRef[f] <= 0) {
+      throw new IllegalStateException("BDD node not referenced: " + f);
+    }
+    nRef[f]--;
+  }
+
+  /**
+   * Get the function that is true iff a variable is true
+   * @param v : variable index
+   * @return node
+   */
+  public int ithVar(int v) {
+    checkGC(ZERO, ZERO, ZERO);
+    return mk(v, ZERO, ONE);
+  }
+
+  /**
+   * Get the function that is true iff a variable is false
+   * @param v : variable index
+   * @return node
+   */
+  public int nithVar(int v) {
+    checkGC(ZERO, ZERO, ZERO);
+    return mk(v, ONE, ZERO);
+  }
+
+  /**
+   * Construct a cube (conjunction) of positive variables, for use with
+   * exists() and andExists()
+   * @param vars : variable indexes
+   * @return node
+   */
+  public int cube(int[] vars) {
+    checkGC(ZERO, ZERO, ZERO);
+    int[] s = DArray.copy(vars);
+    java.util.Arrays.sort(s);
+    int f = ONE;
+    for (int i = s.length - 1; i >= 0; i--) {
+      f = mk(s[i], ZERO, f);
+    }
+    return f;
+  }
+
+  /**
+   * Construct the function that is true for exactly a set of assignments
+   * @param keys : assignments, in increasing order (duplicates allowed);
+   *   the most significant bit of each key (bit vars.length-1) is the
+   *   value of vars[0], and so on
+   * @param count : number of keys
+   * @param vars : variable indexes, in increasing order (at most 63)
+   * @return node
+   */
+  public int fromMinterms(long[] keys, int count, int[] vars) {
+    checkGC(ZERO, ZERO, ZERO);
+    if (count == 0) {
+      return ZERO;
+    }
+    return mintermsRec(keys, 0, count, vars, 0);
+  }
+
+  /**
+   * Build function from a range of sorted keys that agree on the
+   * variables above vars[level]
+   */
+  private int mintermsRec(long[] keys, int start, int end, int[] vars,
+                          int level) {
+    if (level == vars.length) {
+      return ONE;
+    }
+    long bit = 1L << (vars.length - 1 - level);
+
+    // find first key with this level's bit set
+    int lo = start, hi = end;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if ( (keys[mid] & bit) == 0) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+    int f0 = lo > start ? mintermsRec(keys, start, lo, vars, level + 1) : ZERO;
+    int f1 = lo < end ? mintermsRec(keys, lo, end, vars, level + 1) : ZERO;
+    return mk(vars[level], f0, f1);
+  }
+
+  /**
+   * Calculate the complement of a function
+   * @param a : node
+   * @return node
+   */
+  public int not(int a) {
+    checkGC(a, ZERO, ZERO);
+    return notRec(a);
+  }
+
+  /**
+   * Calculate the conjunction of two functions
+   * @param a : node
+   * @param b : node
+   * @return node
+   */
+  public int and(int a, int b) {
+    checkGC(a, b, ZERO);
+    return andRec(a, b);
+  }
+
+  /**
+   * Calculate the disjunction of two functions
+   * @param a : node
+   * @param b : node
+   * @return node
+   */
+  public int or(int a, int b) {
+    checkGC(a, b, ZERO);
+    return orRec(a, b);
+  }
+
+  /**
+   * Calculate a & !b
+   * @param a : node
+   * @param b : node
+   * @return node
+   */
+  public int diff(int a, int b) {
+    checkGC(a, b, ZERO);
+    return andRec(a, notRec(b));
+  }
+
+  /**
+   * Existentially quantify variables out of a function
+   * @param f : node
+   * @param cube : cube of variables to quantify (see cube())
+   * @return node
+   */
+  public int exists(int f, int cube) {
+    checkGC(f, cube, ZERO);
+    return existsRec(f, cube);
+  }
+
+  /**
+   * Calculate the relational product, exists cube . (f & g), without
+   * constructing the conjunction
+   * @param f : node
+   * @param g : node
+   * @param cube : cube of variables to quantify (see cube())
+   * @return node
+   */
+  public int andExists(int f, int g, int cube) {
+    checkGC(f, g, cube);
+    return andExistsRec(f, g, cube);
+  }
+
+  /**
+   * Rename the variables of a function
+   * @param f : node
+   * @param map : new index for each variable; must preserve the
+   *   variable order over the variables f depends upon
+   * @return node
+   */
+  public int replace(int f, int[] map) {
+    checkGC(f, ZERO, ZERO);
+    if (map != replaceMap) {
+      // results cached for a different map are no longer valid
+      replaceMap = map;
+      replaceId++;
+    }
+    return replaceRec(f);
+  }
+
+  /**
+   * Perform garbage collection, freeing every node not reachable from
+   * a referenced node
+   */
+  public void gc() {
+    gcCount++;
+
+    boolean[] mark = new boolean[nVar.length];
+    mark[ZERO] = mark[ONE] = true;
+    int[] stack = new int[64];
+    for (int i = 2; i < nVar.length; i++) {
+      if (nVar[i] == FREE || nRef[i] == 0 || mark[i]) {
+        continue;
+      }
+      int sp = 0;
+      stack[sp++] = i;
+      mark[i] = true;
+      while (sp > 0) {
+        int f = stack[--sp];
+        if (sp + 2 > stack.length) {
+          int[] s2 = new int[stack.length * 2];
+          System.arraycopy(stack, 0, s2, 0, sp);
+          stack = s2;
+        }
+        int lo = nLow[f], hi = nHigh[f];
+        if (!mark[lo]) {
+          mark[lo] = true;
+          stack[sp++] = lo;
+        }
+        if (!mark[hi]) {
+          mark[hi] = true;
+          stack[sp++] = hi;
+        }
+      }
+    }
+
+    // rebuild the unique table from the surviving nodes
+    DArray.clearTo(buckets, NIL);
+    freeList = NIL;
+    liveNodes = 2;
+    for (int i = nVar.length - 1; i >= 2; i--) {
+      if (mark[i]) {
+        int h = hash(nVar[i], nLow[i], nHigh[i]);
+        nNext[i] = buckets[h];
+        buckets[h] = i;
+        liveNodes++;
+      }
+      else {
+        nVar[i] = FREE;
+        nNext[i] = freeList;
+        freeList = i;
+      }
+    }
+
+    DArray.clearTo(cacheOp, 0);
+  }
+
+  /**
+   * Collect garbage if the table is getting full.  The arguments are
+   * protected from collection.
+   */
+  private void checkGC(int a, int b, int c) {
+    if (liveNodes < gcThreshold) {
+      return;
+    }
+    nRef[a]++;
+    nRef[b]++;
+    nRef[c]++;
+    gc();
+    nRef[a]--;
+    nRef[b]--;
+    nRef[c]--;
+
+    // if most nodes are still live, collect less often
+    if (liveNodes > (gcThreshold >> 1)) {
+      gcThreshold <<= 1;
+    }
+  }
+
+  /**
+   * Find or create node
+   * @param v : variable
+   * @param lo : low child
+   * @param hi : high child
+   * @return node
+   */
+  private int mk(int v, int lo, int hi) {
+    if (lo == hi) {
+      return lo;
+    }
+    int h = hash(v, lo, hi);
+    for (int f = buckets[h]; f != NIL; f = nNext[f]) {
+      if (nVar[f] == v && nLow[f] == lo && nHigh[f] == hi) {
+        return f;
+      }
+    }
+
+    if (freeList == NIL) {
+      growNodes();
+      h = hash(v, lo, hi);
+    }
+    int f = freeList;
+    freeList = nNext[f];
+
+    nVar[f] = v;
+    nLow[f] = lo;
+    nHigh[f] = hi;
+    nRef[f] = 0;
+    nNext[f] = buckets[h];
+    buckets[h] = f;
+    liveNodes++;
+    return f;
+  }
+
+  private int notRec(int a) {
+    if (a == ZERO) {
+      return ONE;
+    }
+    if (a == ONE) {
+      return ZERO;
+    }
+    int slot = cacheSlot(OP_NOT, a, 0, 0);
+    if (cacheOp[slot] == OP_NOT && cacheA[slot] == a) {
+      return cacheRes[slot];
+    }
+    int lo = notRec(nLow[a]);
+    int hi = notRec(nHigh[a]);
+    int r = mk(nVar[a], lo, hi);
+    cacheStore(slot, OP_NOT, a, 0, 0, r);
+    return r;
+  }
+
+  private int andRec(int a, int b) {
+    if (a == ZERO || b == ZERO) {
+      return ZERO;
+    }
+    if (a == ONE || a == b) {
+      return b;
+    }
+    if (b == ONE) {
+      return a;
+    }
+    if (a > b) {
+      int t = a;
+      a = b;
+      b = t;
+    }
+    int slot = cacheSlot(OP_AND, a, b, 0);
+    if (cacheOp[slot] == OP_AND && cacheA[slot] == a && cacheB[slot] == b) {
+      return cacheRes[slot];
+    }
+    int va = nVar[a], vb = nVar[b];
+    int v = Math.min(va, vb);
+    int lo = andRec(va == v ? nLow[a] : a, vb == v ? nLow[b] : b);
+    int hi = andRec(va == v ? nHigh[a] : a, vb == v ? nHigh[b] : b);
+    int r = mk(v, lo, hi);
+    cacheStore(slot, OP_AND, a, b, 0, r);
+    return r;
+  }
+
+  private int orRec(int a, int b) {
+    if (a == ONE || b == ONE) {
+      return ONE;
+    }
+    if (a == ZERO || a == b) {
+      return b;
+    }
+    if (b == ZERO) {
+      return a;
+    }
+    if (a > b) {
+      int t = a;
+      a = b;
+      b = t;
+    }
+    int slot = cacheSlot(OP_OR, a, b, 0);
+    if (cacheOp[slot] == OP_OR && cacheA[slot] == a && cacheB[slot] == b) {
+      return cacheRes[slot];
+    }
+    int va = nVar[a], vb = nVar[b];
+    int v = Math.min(va, vb);
+    int lo = orRec(va == v ? nLow[a] : a, vb == v ? nLow[b] : b);
+    int hi = orRec(va == v ? nHigh[a] : a, vb == v ? nHigh[b] : b);
+    int r = mk(v, lo, hi);
+    cacheStore(slot, OP_OR, a, b, 0, r);
+    return r;
+  }
+
+  private int existsRec(int f, int cube) {
+    if (f == ZERO || f == ONE) {
+      return f;
+    }
+    // skip quantified variables above f's top variable
+    while (cube != ONE && nVar[cube] < nVar[f]) {
+      cube = nHigh[cube];
+    }
+    if (cube == ONE) {
+      return f;
+    }
+    int slot = cacheSlot(OP_EXISTS, f, cube, 0);
+    if (cacheOp[slot] == OP_EXISTS && cacheA[slot] == f
+        && cacheB[slot] == cube) {
+      return cacheRes[slot];
+    }
+    int r;
+    if (nVar[f] == nVar[cube]) {
+      int lo = existsRec(nLow[f], nHigh[cube]);
+      r = lo == ONE ? ONE : orRec(lo, existsRec(nHigh[f], nHigh[cube]));
+    }
+    else {
+      int lo = existsRec(nLow[f], cube);
+      int hi = existsRec(nHigh[f], cube);
+      r = mk(nVar[f], lo, hi);
+    }
+    cacheStore(slot, OP_EXISTS, f, cube, 0, r);
+    return r;
+  }
+
+  private int andExistsRec(int f, int g, int cube) {
+    if (f == ZERO || g == ZERO) {
+      return ZERO;
+    }
+    if (f == ONE && g == ONE) {
+      return ONE;
+    }
+    if (f == ONE || f == g) {
+      return existsRec(g, cube);
+    }
+    if (g == ONE) {
+      return existsRec(f, cube);
+    }
+    int vf = nVar[f], vg = nVar[g];
+    int v = Math.min(vf, vg);
+    while (cube != ONE && nVar[cube] < v) {
+      cube = nHigh[cube];
+    }
+    if (cube == ONE) {
+      return andRec(f, g);
+    }
+    if (f > g) {
+      int t = f;
+      f = g;
+      g = t;
+      t = vf;
+      vf = vg;
+      vg = t;
+    }
+    int slot = cacheSlot(OP_ANDEXISTS, f, g, cube);
+    if (cacheOp[slot] == OP_ANDEXISTS && cacheA[slot] == f
+        && cacheB[slot] == g && cacheC[slot] == cube) {
+      return cacheRes[slot];
+    }
+    int f0 = vf == v ? nLow[f] : f, f1 = vf == v ? nHigh[f] : f;
+    int g0 = vg == v ? nLow[g] : g, g1 = vg == v ? nHigh[g] : g;
+    int r;
+    if (nVar[cube] == v) {
+      int c2 = nHigh[cube];
+      int lo = andExistsRec(f0, g0, c2);
+      r = lo == ONE ? ONE : orRec(lo, andExistsRec(f1, g1, c2));
+    }
+    else {
+      int lo = andExistsRec(f0, g0, cube);
+      int hi = andExistsRec(f1, g1, cube);
+      r = mk(v, lo, hi);
+    }
+    cacheStore(slot, OP_ANDEXISTS, f, g, cube, r);
+    return r;
+  }
+
+  private int replaceRec(int f) {
+    if (f == ZERO || f == ONE) {
+      return f;
+    }
+    int slot = cacheSlot(OP_REPLACE, f, replaceId, 0);
+    if (cacheOp[slot] == OP_REPLACE && cacheA[slot] == f
+        && cacheB[slot] == replaceId) {
+      return cacheRes[slot];
+    }
+    int lo = replaceRec(nLow[f]);
+    int hi = replaceRec(nHigh[f]);
+    int r = mk(replaceMap[nVar[f]], lo, hi);
+    cacheStore(slot, OP_REPLACE, f, replaceId, 0, r);
+    return r;
+  }
+
+  private int hash(int v, int lo, int hi) {
+    int h = v * 0x9E3779B9 + lo * 0x85EBCA6B + hi * 0xC2B2AE35;
+    return (h ^ (h >>> 15)) & (buckets.length - 1);
+  }
+
+  private int cacheSlot(int op, int a, int b, int c) {
+    int h = op * 0x27D4EB2F + a * 0x9E3779B9 + b * 0x85EBCA6B
+        + c * 0xC2B2AE35;
+    return (h ^ (h >>> 16)) & (cacheOp.length - 1);
+  }
+
+  private void cacheStore(int slot, int op, int a, int b, int c, int r) {
+    cacheOp[slot] = op;
+    cacheA[slot] = a;
+    cacheB[slot] = b;
+    cacheC[slot] = c;
+    cacheRes[slot] = r;
+  }
+
+  private void allocNodes(int cap) {
+    nVar = new int[cap];
+    nLow = new int[cap];
+    nHigh = new int[cap];
+    nNext = new int[cap];
+    nRef = new int[cap];
+    buckets = new int[cap];
+    DArray.clearTo(buckets, NIL);
+  }
+
+  private void allocCache(int size) {
+    cacheOp = new int[size];
+    cacheA = new int[size];
+    cacheB = new int[size];
+    cacheC = new int[size];
+    cacheRes = new int[size];
+  }
+
+  /**
+   * Double the size of the node table
+   */
+  private void growNodes() {
+    int old = nVar.length;
+    int cap = old * 2;
+    nVar = copyOf(nVar, cap);
+    nLow = copyOf(nLow, cap);
+    nHigh = copyOf(nHigh, cap);
+    nNext = copyOf(nNext, cap);
+    nRef = copyOf(nRef, cap);
+
+    for (int i = cap - 1; i >= old; i--) {
+      nVar[i] = FREE;
+      nNext[i] = freeList;
+      freeList = i;
+    }
+
+    buckets = new int[cap];
+    DArray.clearTo(buckets, NIL);
+    for (int i = 2; i < old; i++) {
+      if (nVar[i] == FREE) {
+        continue;
+      }
+      int h = hash(nVar[i], nLow[i], nHigh[i]);
+      nNext[i] = buckets[h];
+      buckets[h] = i;
+    }
+
+    if (cacheOp.length < (cap >> 1)) {
+      allocCache(cap >> 1);
+    }
+  }
+
+  private static int[] copyOf(int[] a, int len) {
+    int[] b = new int[len];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  // operation codes for computed table (0 marks an empty entry)
+  private static final int OP_NOT = 1, OP_AND = 2, OP_OR = 3,
+      OP_EXISTS = 4, OP_ANDEXISTS = 5, OP_REPLACE = 6;
+
+  // end of hash chain
+  private static final int NIL = -1;
+  // variable field of a node on the free list
+  private static final int FREE = -1;
+
+  private int nVars;
+
+  // node table:  variable, children, next node in hash chain (or in
+  // free list), and external reference count
+  private int[] nVar, nLow, nHigh, nNext, nRef;
+  // heads of hash chains of unique table
+  private int[] buckets;
+  private int freeList = NIL;
+  private int liveNodes;
+  private int gcThreshold;
+  private int gcCount;
+
+  // computed table
+  private int[] cacheOp, cacheA, cacheB, cacheC, cacheRes;
+
+  // variable map for current replace() operation, and an id
+  // distinguishing it in the computed table
+  private int[] replaceMap;
+  private int replaceId;
+}
@@ -9,17 +9,18 @@ public class DynamicPushbackReader extends PushbackReader {
     super(r);
   }
 
+  /**
+   * Read characters into an array.  If any characters have been pushed
+   * back, returns those (up to len); otherwise, reads directly from the
+   * underlying reader.
+   */
   public int read(char[] charArray, int off, int len) throws IOException {
+    if (queue.isEmpty()) {
+      return super.read(charArray, off, len);
+    }
     int i;
-    for (i = 0; i < len; i++) {
-      int c = read();
-      if (c < 0) {
-        if (i == 0) {
-          i = -1;
-        }
-        break;
-      }
-      charArray[off + i] = (char) c;
+    for (i = 0; i < len && !queue.isEmpty(); i++) {
+      charArray[off + i] = (char) queue.popInt();
     }
     return i;
   }
@@ -0,0 +1,213 @@
+package base;
+
+/**
+ * Hash table mapping int keys to int values.
+ *
+ * Uses open addressing with linear probing over parallel int arrays, so
+ * neither lookups nor insertions allocate any objects (other than when
+ * the table grows).  Every int is a valid key.
+ */
+public class IntIntMap {
+
+  /**
+   * Constructor
+   */
+  public IntIntMap() {
+    this(16);
+  }
+
+  /**
+   * Constructor
+   * @param expectedSize : number of keys to make room for initially
+   */
+  public IntIntMap(int expectedSize) {
+    int cap = 16;
+    while (cap * LOAD_NUM < expectedSize * LOAD_DEN) {
+      cap <<= 1;
+    }
+    alloc(cap);
+  }
+
+  /**
+   * Get number of keys stored in map
+   * @return int
+   */
+  public int size() {
+    return size + (hasSentinel ? 1 : 0);
+  }
+
+  /**
+   * Determine if map is empty
+   * @return boolean
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Remove all keys from map
+   */
+  public void clear() {
+    DArray.clearTo(keys, EMPTY);
+    size = 0;
+    hasSentinel = false;
+  }
+
+  /**
+   * Get value associated with a key
+   * @param key : key to look for
+   * @param defaultValue : value to return if key not found
+   * @return value associated with key, or defaultValue
+   */
+  public int get(int key, int defaultValue) {
+    if (key == EMPTY) {
+      return hasSentinel ? sentinelValue : defaultValue;
+    }
+    int i = slot(key);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == EMPTY) {
+        return defaultValue;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Determine if map contains a key
+   * @param key int
+   * @return boolean
+   */
+  public boolean containsKey(int key) {
+    if (key == EMPTY) {
+      return hasSentinel;
+    }
+    int i = slot(key);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        return true;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Store a value for a key, replacing any existing one
+   * @param key int
+   * @param value int
+   */
+  public void put(int key, int value) {
+    if (key == EMPTY) {
+      hasSentinel = true;
+      sentinelValue = value;
+      return;
+    }
+    int i = slot(key);
+    while (true) {
+      int k = keys[i];
+      if (k == key) {
+        values[i] = value;
+        return;
+      }
+      if (k == EMPTY) {
+        break;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * LOAD_DEN > keys.length * LOAD_NUM) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  /**
+   * Get string describing object
+   * @return String
+   */
+  public String toString() {
+    StringBuffer sb = new StringBuffer("[");
+    boolean first = true;
+    if (hasSentinel) {
+      sb.append(EMPTY + "=>" + sentinelValue);
+      first = false;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] == EMPTY) {
+        continue;
+      }
+      if (!first) {
+        sb.append(' ');
+      }
+      first = false;
+      sb.append(keys[i] + "=>" + values[i]);
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  /**
+   * Determine starting slot for a key
+   * @param key int
+   * @return index into keys[]
+   */
+  private int slot(int key) {
+    // Fibonacci hashing; the high bits of the product are the best mixed
+    return (key * 0x9E3779B9) >>> shift;
+  }
+
+  /**
+   * Allocate empty table
+   * @param capacity : number of slots; must be a power of 2
+   */
+  private void alloc(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    DArray.clearTo(keys, EMPTY);
+    mask = capacity - 1;
+    shift = 32 - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  /**
+   * Move keys into a larger table
+   * @param capacity : new number of slots
+   */
+  private void rehash(int capacity) {
+    int[] oldKeys = keys, oldValues = values;
+    alloc(capacity);
+    for (int j = 0; j < oldKeys.length; j++) {
+      int k = oldKeys[j];
+      if (k == EMPTY) {
+        continue;
+      }
+      int i = slot(k);
+      while (keys[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = k;
+      values[i] = oldValues[j];
+    }
+  }
+
+  // marks an unused slot; this key is stored outside the table
+  private static final int EMPTY = Integer.MIN_VALUE;
+
+  // maximum load factor, LOAD_NUM / LOAD_DEN
+  private static final int LOAD_NUM = 2, LOAD_DEN = 3;
+
+  private int[] keys, values;
+  private int mask, shift;
+  // number of keys in table (not counting the sentinel key)
+  private int size;
+
+  // value for EMPTY key, if it's been stored
+  private boolean hasSentinel;
+  private int sentinelValue;
+}
@@ -0,0 +1,218 @@
+package base;
+
+import java.util.*;
+
+/**
+ * Hash table mapping long keys to int values; the counterpart of
+ * IntIntMap, for keys that don't fit in an int.
+ *
+ * Uses open addressing with linear probing over parallel arrays, so
+ * neither lookups nor insertions allocate any objects (other than when
+ * the table grows).  Every long is a valid key.
+ */
+public class LongIntMap {
+
+  /**
+   * Constructor
+   */
+  public LongIntMap() {
+    this(16);
+  }
+
+  /**
+   * Constructor
+   * @param expectedSize : number of keys to make room for initially
+   */
+  public LongIntMap(int expectedSize) {
+    int cap = 16;
+    while (cap * LOAD_NUM < expectedSize * LOAD_DEN) {
+      cap <<= 1;
+    }
+    alloc(cap);
+  }
+
+  /**
+   * Get number of keys stored in map
+   * @return int
+   */
+  public int size() {
+    return size + (hasSentinel ? 1 : 0);
+  }
+
+  /**
+   * Determine if map is empty
+   * @return boolean
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Remove all keys from map
+   */
+  public void clear() {
+    Arrays.fill(keys, EMPTY);
+    size = 0;
+    hasSentinel = false;
+  }
+
+  /**
+   * Get value associated with a key
+   * @param key : key to look for
+   * @param defaultValue : value to return if key not found
+   * @return value associated with key, or defaultValue
+   */
+  public int get(long key, int defaultValue) {
+    if (key == EMPTY) {
+      return hasSentinel ? sentinelValue : defaultValue;
+    }
+    int i = slot(key);
+    while (true) {
+      long k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == EMPTY) {
+        return defaultValue;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Determine if map contains a key
+   * @param key long
+   * @return boolean
+   */
+  public boolean containsKey(long key) {
+    if (key == EMPTY) {
+      return hasSentinel;
+    }
+    int i = slot(key);
+    while (true) {
+      long k = keys[i];
+      if (k == key) {
+        return true;
+      }
+      if (k == EMPTY) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Store a value for a key, replacing any existing one
+   * @param key long
+   * @param value int
+   */
+  public void put(long key, int value) {
+    if (key == EMPTY) {
+      hasSentinel = true;
+      sentinelValue = value;
+      return;
+    }
+    int i = slot(key);
+    while (true) {
+      long k = keys[i];
+      if (k == key) {
+        values[i] = value;
+        return;
+      }
+      if (k == EMPTY) {
+        break;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size * LOAD_DEN > keys.length * LOAD_NUM) {
+      rehash(keys.length << 1);
+    }
+  }
+
+  /**
+   * Get string describing object
+   * @return String
+   */
+  public String toString() {
+    StringBuffer sb = new StringBuffer("[");
+    boolean first = true;
+    if (hasSentinel) {
+      sb.append(EMPTY + "=>" + sentinelValue);
+      first = false;
+    }
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] == EMPTY) {
+        continue;
+      }
+      if (!first) {
+        sb.append(' ');
+      }
+      first = false;
+      sb.append(keys[i] + "=>" + values[i]);
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+
+  /**
+   * Determine starting slot for a key
+   * @param key long
+   * @return index into keys[]
+   */
+  private int slot(long key) {
+    // Fibonacci hashing; the high bits of the product are the best mixed
+    return (int) ( (key * 0x9E3779B97F4A7C15L) >>> shift);
+  }
+
+  /**
+   * Allocate empty table
+   * @param capacity : number of slots; must be a power of 2
+   */
+  private void alloc(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+    mask = capacity - 1;
+    shift = 64 - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  /**
+   * Move keys into a larger table
+   * @param capacity : new number of slots
+   */
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    alloc(capacity);
+    for (int j = 0; j < oldKeys.length; j++) {
+      long k = oldKeys[j];
+      if (k == EMPTY) {
+        continue;
+      }
+      int i = slot(k);
+      while (keys[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = k;
+      values[i] = oldValues[j];
+    }
+  }
+
+  // marks an unused slot; this key is stored outside the table
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  // maximum load factor, LOAD_NUM / LOAD_DEN
+  private static final int LOAD_NUM = 2, LOAD_DEN = 3;
+
+  private long[] keys;
+  private int[] values;
+  private int mask, shift;
+  // number of keys in table (not counting the sentinel key)
+  private int size;
+
+  // value for EMPTY key, if it's been stored
+  private boolean hasSentinel;
+  private int sentinelValue;
+}
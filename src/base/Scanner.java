@@ -790,6 +790,76 @@ public void finalize() throws Throwable {
     return tokenQueue.length();
   }
 
+  /**
+   * Determine if any tokens have been peeked at, but not yet read
+   * @return boolean
+   */
+  public boolean peeked() {
+    return queued() > 0;
+  }
+
+  /**
+   * Read characters directly from the current reader, bypassing the DFA,
+   * so a client can scan a long stretch of input without constructing
+   * tokens.  No tokens can have been peeked at.  Positions aren't
+   * tracked; when the client is done, it must call unreadChars() to
+   * return any characters it has read past the end of the stretch, and to
+   * tell the scanner where it is.
+   * @param buf : array to read into
+   * @param off : position of first character in array
+   * @param len : maximum number of characters to read
+   * @return number of characters read, or -1 if the current reader has
+   *   no more
+   */
+  public int readChars(char[] buf, int off, int len) {
+    if (peeked()) {
+      throw new ScanException("Can't read characters after peeking");
+    }
+    if (ri == null || ri.closed) {
+      return -1;
+    }
+    try {
+      return ri.read(buf, off, len);
+    }
+    catch (IOException e) {
+      throw new ScanException(e.getMessage());
+    }
+  }
+
+  /**
+   * Push back characters read by readChars(), and set the position of
+   * the first of them
+   * @param buf : array containing characters
+   * @param off : position of first character in array
+   * @param len : number of characters
+   * @param line : line number of first character, 0...n
+   * @param column : column of first character, 0...n; if column <= off,
+   *   the characters preceding it in the array are taken to be the start
+   *   of its line
+   */
+  public void unreadChars(char[] buf, int off, int len, int line,
+                          int column) {
+    if (ri == null || ri.closed) {
+      return;
+    }
+    ri.unread(buf, off, len);
+    ri.line = line;
+    ri.column = column;
+
+    // if the whole line is in the array, use it as the context of tokens
+    // read from the rest of it
+    String text = null;
+    if (column <= off) {
+      for (int i = off; i < off + len; i++) {
+        if (buf[i] == '\n') {
+          text = new String(buf, off - column, i + 1 - (off - column));
+          break;
+        }
+      }
+    }
+    ri.currentLineOfText = text;
+  }
+
   public static String scanSource(Reader src) {
     Scanner scan = new Scanner(src);
     StringBuffer sb = new StringBuffer();
@@ -204,6 +204,12 @@ public class Streams {
     return out;
   }
 
+  /**
+   * PrintStream that sends its output to System.out, unless the current
+   * thread has a stream of its own, as set by setThreadOutput(); in which
+   * case it's sent directly to that stream, so threads with their own
+   * streams don't contend for this one's lock
+   */
   private static class NonClosingSystemOut
       extends PrintStream {
     public NonClosingSystemOut() {
@@ -213,8 +219,282 @@ public class Streams {
     public void close() {
       flush();
     }
+
+    public void write(int b) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.write(b);
+      }
+      else {
+        t.write(b);
+      }
+    }
+
+    public void write(byte[] buf, int off, int len) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.write(buf, off, len);
+      }
+      else {
+        t.write(buf, off, len);
+      }
+    }
+
+    public void flush() {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.flush();
+      }
+      else {
+        t.flush();
+      }
+    }
+
+    public boolean checkError() {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.checkError() : t.checkError();
+    }
+
+    public void print(boolean b) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(b);
+      }
+      else {
+        t.print(b);
+      }
+    }
+
+    public void print(char c) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(c);
+      }
+      else {
+        t.print(c);
+      }
+    }
+
+    public void print(int i) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(i);
+      }
+      else {
+        t.print(i);
+      }
+    }
+
+    public void print(long l) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(l);
+      }
+      else {
+        t.print(l);
+      }
+    }
+
+    public void print(float f) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(f);
+      }
+      else {
+        t.print(f);
+      }
+    }
+
+    public void print(double d) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(d);
+      }
+      else {
+        t.print(d);
+      }
+    }
+
+    public void print(char[] s) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(s);
+      }
+      else {
+        t.print(s);
+      }
+    }
+
+    public void print(String s) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(s);
+      }
+      else {
+        t.print(s);
+      }
+    }
+
+    public void print(Object obj) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.print(obj);
+      }
+      else {
+        t.print(obj);
+      }
+    }
+
+    public void println() {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println();
+      }
+      else {
+        t.println();
+      }
+    }
+
+    public void println(boolean b) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(b);
+      }
+      else {
+        t.println(b);
+      }
+    }
+
+    public void println(char c) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(c);
+      }
+      else {
+        t.println(c);
+      }
+    }
+
+    public void println(int i) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(i);
+      }
+      else {
+        t.println(i);
+      }
+    }
+
+    public void println(long l) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(l);
+      }
+      else {
+        t.println(l);
+      }
+    }
+
+    public void println(float f) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(f);
+      }
+      else {
+        t.println(f);
+      }
+    }
+
+    public void println(double d) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(d);
+      }
+      else {
+        t.println(d);
+      }
+    }
+
+    public void println(char[] s) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(s);
+      }
+      else {
+        t.println(s);
+      }
+    }
+
+    public void println(String s) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(s);
+      }
+      else {
+        t.println(s);
+      }
+    }
+
+    public void println(Object obj) {
+      PrintStream t = threadOutput.get();
+      if (t == null) {
+        super.println(obj);
+      }
+      else {
+        t.println(obj);
+      }
+    }
+
+    public PrintStream format(String fmt, Object... args) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.format(fmt, args) : t.format(fmt, args);
+    }
+
+    public PrintStream format(java.util.Locale l, String fmt, Object... args) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.format(l, fmt, args) : t.format(l, fmt, args);
+    }
+
+    public PrintStream printf(String fmt, Object... args) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.printf(fmt, args) : t.printf(fmt, args);
+    }
+
+    public PrintStream printf(java.util.Locale l, String fmt, Object... args) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.printf(l, fmt, args) : t.printf(l, fmt, args);
+    }
+
+    public PrintStream append(CharSequence csq) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.append(csq) : t.append(csq);
+    }
+
+    public PrintStream append(CharSequence csq, int start, int end) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.append(csq, start, end) : t.append(csq, start, end);
+    }
+
+    public PrintStream append(char c) {
+      PrintStream t = threadOutput.get();
+      return t == null ? super.append(c) : t.append(c);
+    }
+  }
+
+  /**
+   * Send the output written to Streams.out by the current thread to a
+   * stream of its own, so concurrent jobs can each collect their own
+   * output without sharing a stream.  Has no effect if Streams.out has
+   * been redirected (e.g., to an emulated console).
+   * @param s : PrintStream, or null to send it to System.out again
+   */
+  public static void setThreadOutput(PrintStream s) {
+    threadOutput.set(s);
   }
 
+  private static ThreadLocal<PrintStream> threadOutput =
+      new ThreadLocal<PrintStream>();
+
   private static class NonClosingSystemIn
       extends BufferedInputStream {
     public NonClosingSystemIn() {
@@ -0,0 +1,140 @@
+package mcheck;
+
+import java.util.*;
+
+/**
+ * A cache of the Buchi automata constructed for LTL formulas, so that a
+ * formula that appears more than once (for instance, checked against
+ * several models, or compared against several formulas) is converted to
+ * an automaton only once.
+ *
+ * Automata are keyed by the canonical form of the reduced formula.  Since
+ * the indices of prop. vars can change whenever a new model is defined,
+ * each cached automaton records the names of the vars it refers to, and
+ * these are mapped to the current indices when the automaton is retrieved.
+ * The least recently used automaton is discarded when the cache is full.
+ */
+class AutomatonCache {
+
+  /**
+   * Constructor
+   * @param env Environment
+   * @param capacity : maximum number of automata to store
+   */
+  public AutomatonCache(Environment env, final int capacity) {
+    this.env = env;
+    this.capacity = capacity;
+    map_ = new LinkedHashMap<String, Entry>(16, .75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Retrieve a copy of a cached automaton
+   * @param key : canonical form of formula
+   * @param b : automaton to store copy in
+   * @return true if found
+   */
+  public boolean get(String key, Buchi b) {
+    boolean found = false;
+    do {
+      Entry ent = map_.get(key);
+      if (ent == null) {
+        break;
+      }
+
+      int[] varMap = new int[ent.varNames.length];
+      boolean valid = true;
+      for (int i = 0; i < varMap.length; i++) {
+        if (ent.varNames[i] == null) {
+          continue;
+        }
+        varMap[i] = env.vars.var(ent.varNames[i], false);
+        if (varMap[i] < 0) {
+          valid = false;
+        }
+      }
+      if (!valid) {
+        map_.remove(key);
+        break;
+      }
+
+      b.assign(ent.b, varMap);
+      found = true;
+    }
+    while (false);
+
+    if (found) {
+      hits++;
+    }
+    else {
+      misses++;
+    }
+    return found;
+  }
+
+  /**
+   * Store a copy of an automaton
+   * @param key : canonical form of formula
+   * @param b : automaton to store
+   */
+  public void put(String key, Buchi b) {
+    if (capacity == 0) {
+      return;
+    }
+    BitSet vars = b.propVars();
+    Entry ent = new Entry();
+    ent.varNames = new String[vars.length()];
+    int[] identity = new int[vars.length()];
+    for (int i = 0; i < identity.length; i++) {
+      identity[i] = i;
+      if (vars.get(i)) {
+        ent.varNames[i] = env.vars.var(i);
+      }
+    }
+    ent.b = new Buchi(env);
+    ent.b.assign(b, identity);
+    map_.put(key, ent);
+  }
+
+  /**
+   * Get the number of lookups that found a cached automaton
+   * @return int
+   */
+  public int hits() {
+    return hits;
+  }
+
+  /**
+   * Get the number of lookups that didn't find a cached automaton
+   * @return int
+   */
+  public int misses() {
+    return misses;
+  }
+
+  /**
+   * Get string describing object
+   * @return String
+   */
+  public String toString() {
+    return "Automaton cache: " + map_.size() + " of " + capacity
+        + " entries, " + hits + " hits, " + misses + " misses";
+  }
+
+  private static class Entry {
+    // automaton, with vars indexed as when it was constructed
+    Buchi b;
+    // name of each var referred to by the automaton, by index; null
+    // for unused indices
+    String[] varNames;
+  }
+
+  private Environment env;
+  private int capacity;
+  private int hits, misses;
+  // map of formula keys to Entries, in order of last access
+  private LinkedHashMap<String, Entry> map_;
+}
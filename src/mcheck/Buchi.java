@@ -3,6 +3,16 @@ package mcheck;
 import base.*;
 import java.util.*;
 
+/**
+ * A Buchi automaton whose transitions are labelled with guards:  each
+ * transition has a Cube of literals that the input read as it's taken
+ * must satisfy.  A run reads one input per transition; initial states
+ * read nothing.
+ *
+ * The automata constructed from the tableau and from Kripke models (and
+ * the products and copies of these) have the same guard on every
+ * transition to a state; see stateGuards().
+ */
 class Buchi {
 
   public Buchi(Environment e) {
@@ -32,28 +42,24 @@ class Buchi {
   }
 
   /**
-   * Add a transition from one state to another
+   * Add a transition from one state to another, with no guard
    * @param src source state
    * @param dest destination state
    */
   public void addTransition(int src, int dest) {
-    state(src).trans_.addInt(dest);
+    addTransition(src, dest, TRUE);
   }
 
   /**
-   * Specify a prop. var. that must be defined
-   * @param state id of state
-   * @param varNum index of variable
-   * @param value true or false, the value it must have
+   * Add a transition from one state to another
+   * @param src source state
+   * @param dest destination state
+   * @param guard : literals the input read must satisfy
    */
-  public void addPropVar(int state, int varNum, boolean value) {
-    State st = state(state);
-    if (value) {
-      st.pvTrue_.set(varNum);
-    }
-    else {
-      st.pvFalse_.set(varNum);
-    }
+  public void addTransition(int src, int dest, Cube guard) {
+    State st = state(src);
+    st.trans_.addInt(dest);
+    st.guards_.add(guard);
   }
 
   /**
@@ -73,6 +79,89 @@ class Buchi {
     acceptSets_.clear();
   }
 
+  /**
+   * Make this automaton a copy of another, renumbering its prop. vars
+   * @param src : automaton to copy
+   * @param varMap : new index of each of src's prop. vars
+   */
+  public void assign(Buchi src, int[] varMap) {
+    clear();
+    // guards are shared by many transitions; remap each only once
+    IdentityHashMap<Cube, Cube> remapped = new IdentityHashMap<Cube, Cube>();
+    for (int i = 0; i < src.nStates(); i++) {
+      State s = src.state(i);
+      addState();
+      State d = state(i);
+      for (int j = 0; j < s.trans_.length(); j++) {
+        Cube g = s.guard(j);
+        Cube g2 = remapped.get(g);
+        if (g2 == null) {
+          g2 = g.remap(varMap);
+          remapped.put(g, g2);
+        }
+        addTransition(i, s.trans_.getInt(j), g2);
+      }
+      d.label_ = s.label_;
+    }
+    for (int i = 0; i < src.initialStates_.length(); i++) {
+      initialStates_.add(src.initialStates_.get(i));
+    }
+    for (int i = 0; i < src.nAcceptSets(); i++) {
+      addAcceptSet(copy(src.acceptSet(i)));
+    }
+  }
+
+  /**
+   * Get the prop. vars referred to by any guard
+   * @return BitSet, with a bit set for the index of each var
+   */
+  public BitSet propVars() {
+    BitSet vars = new BitSet();
+    for (int i = 0; i < nStates(); i++) {
+      State st = state(i);
+      for (int j = 0; j < st.guards_.length(); j++) {
+        vars.or(st.guard(j).vars());
+      }
+    }
+    return vars;
+  }
+
+  /**
+   * Get the guard shared by the transitions to each state.  An automaton
+   * whose states all have one is equivalent to a state-labelled
+   * automaton, whose states carry these guards.
+   * @return array of Cubes, indexed by state; an entry is true (a cube
+   *   with no literals) if no transition leads to the state, and null if
+   *   the transitions to it have different guards
+   */
+  public Cube[] stateGuards() {
+    int n = nStates();
+    Cube[] g = new Cube[n];
+    BitSet mixed = new BitSet();
+    for (int q = 0; q < n; q++) {
+      State st = state(q);
+      for (int j = 0; j < st.trans_.length(); j++) {
+        int r = st.trans_.getInt(j);
+        Cube c = st.guard(j);
+        if (g[r] == null) {
+          g[r] = c;
+        }
+        else if (g[r] != c && ! (g[r].implies(c) && c.implies(g[r]))) {
+          mixed.set(r);
+        }
+      }
+    }
+    for (int r = 0; r < n; r++) {
+      if (mixed.get(r)) {
+        g[r] = null;
+      }
+      else if (g[r] == null) {
+        g[r] = TRUE;
+      }
+    }
+    return g;
+  }
+
   /**
    * Convert a generalized automaton to a non-generalized one.
    * @param dest	non-generalized automaton to construct
@@ -128,20 +217,10 @@ class Buchi {
             y = x; // not sure about this last one...
           }
 
-          d.addTransition(i + rowSize * x, j + rowSize * y);
+          d.addTransition(i + rowSize * x, j + rowSize * y, st.guard(tr));
         }
       }
     }
-
-    // define propVars
-    for (int i = 0; i < nStates(); i++) {
-      State st = state(i);
-      for (int j = 0; j < qm; j++) {
-        State sd = d.state(i + rowSize * j);
-        sd.pvFalse_ = copy(st.pvFalse_);
-        sd.pvTrue_ = copy(st.pvTrue_);
-      }
-    }
     if (db) {
       Streams.out.println("converted to non-gen:\n" + d);
     }
@@ -155,7 +234,10 @@ class Buchi {
   public String toString() {
     StringBuffer sb = new StringBuffer();
 
-    Vars v = env.vars;
+    // show the guards with the states they lead to; those of states
+    // whose transitions have different guards are shown with each
+    // transition instead
+    Cube[] sg = stateGuards();
 
     for (int i = 0; i < states_.length(); i++) {
 
@@ -163,48 +245,20 @@ class Buchi {
       StringBuffer s = new StringBuffer();
       s.append( (initialStates_.contains(i) != null ? '>' : ' '));
       s.append(Tools.f(i, 3) + ": ");
-
-      int maxVar = Math.max(st.pvTrue_.length(), st.pvFalse_.length());
-
-      boolean printed = false;
-      for (int j = 0; j < maxVar; j++) {
-
-        boolean f0 = st.pvTrue_.get(j),
-            f1 = st.pvFalse_.get(j);
-
-        if (! (f0 || f1)) {
-          continue;
-        }
-
-        if (printed) {
-          s.append(',');
-        }
-
-        printed = true;
-
-        if (f0 && f1) {
-          s.append('*');
-        }
-        else if (f1) {
-          s.append('!');
-        }
-
-        if (v == null) {
-          // convert var to 'a'...'z' to avoid confusion with numbers!
-          char c = '?';
-          if (j < 26) {
-            c = (char) (j + 'a');
-          }
-          s.append(c);
-        }
-        else {
-          s.append(v.var(j));
-        }
+      if (sg[i] != null) {
+        appendGuard(s, sg[i]);
       }
 
       Tools.tab(s, 20);
       for (int j = 0; j < st.trans_.length(); j++) {
-        s.append(st.trans_.get(j) + " ");
+        int dest = st.trans_.getInt(j);
+        s.append(dest);
+        if (sg[dest] == null) {
+          s.append('[');
+          appendGuard(s, st.guard(j));
+          s.append(']');
+        }
+        s.append(' ');
       }
 
       if (st.label_ != null) {
@@ -236,6 +290,53 @@ class Buchi {
     return sb.toString();
   }
 
+  /**
+   * Append a description of a guard to a string:  its literals, separated
+   * by commas, with '*' preceding a var required to be both true and false
+   * @param s : string to append to
+   * @param g : guard
+   */
+  private void appendGuard(StringBuffer s, Cube g) {
+    Vars v = env.vars;
+    int maxVar = g.length();
+
+    boolean printed = false;
+    for (int j = 0; j < maxVar; j++) {
+
+      boolean f0 = g.literal(j, true),
+          f1 = g.literal(j, false);
+
+      if (! (f0 || f1)) {
+        continue;
+      }
+
+      if (printed) {
+        s.append(',');
+      }
+
+      printed = true;
+
+      if (f0 && f1) {
+        s.append('*');
+      }
+      else if (f1) {
+        s.append('!');
+      }
+
+      if (v == null) {
+        // convert var to 'a'...'z' to avoid confusion with numbers!
+        char c = '?';
+        if (j < 26) {
+          c = (char) (j + 'a');
+        }
+        s.append(c);
+      }
+      else {
+        s.append(v.var(j));
+      }
+    }
+  }
+
   public int nStates() {
     return states_.length();
   }
@@ -261,25 +362,29 @@ class Buchi {
       addStateLabel(id, "" + m.stateName(i));
     }
 
+    // a transition to a state requires EVERY variable to have its value
+    // in the model state
+    Cube[] g = new Cube[m.states()];
+    long[] words = new long[m.stateVarWords()];
     for (int i = 0; i < m.states(); i++) {
-      int ds = i + 1;
-      int sname = m.stateName(i);
+      m.stateVars(i, words);
+      g[i] = Cube.valuation(totVars, words, 0, words.length);
+    }
 
-      // add complemented/uncom. version of EVERY variable to dest state
-      for (int j = 0; j < totVars; j++) {
-        addPropVar(ds, j, m.propVar(sname, j));
-      }
+    for (int i = 0; i < m.states(); i++) {
+      int ds = i + 1;
 
       // add transitions
-      for (int j = 0; j < m.degree(sname); j++) {
-        addTransition(ds, 1 + m.stateId(m.next(sname, j)));
+      for (int j = m.succStart(i); j < m.succEnd(i); j++) {
+        addTransition(ds, 1 + m.succ(j), g[m.succ(j)]);
       }
     }
 
     OrdSet mInit = m.initialStates();
 
     for (int i = 0; i < mInit.length(); i++) {
-      addTransition(0, 1 + m.stateId(mInit.get(i)));
+      int id = m.stateId(mInit.get(i));
+      addTransition(0, 1 + id, g[id]);
     }
 
     // make every state an accepting state
@@ -300,60 +405,39 @@ class Buchi {
    * @param b2 : Buchi
    */
   public void calcProduct(Buchi b1, Buchi b2) {
+    calcProduct(b1, b2, false);
+  }
+
+  /**
+   * Calculate the product of two Buchi automata, one which
+   * recognizes the intersection of the respective automata.
+   * The labels of automata b1 are copied to the first 'row'
+   * of the product automaton.
+   * @param b1 : Buchi
+   * @param b2 : Buchi
+   * @param general : if true, the product is a generalized automaton
+   *   with |Q1| * |Q2| states, whose accept sets are those of b1 followed
+   *   by those of b2; otherwise, neither input automata can be
+   *   generalized, and the product has three copies of these states
+   */
+  public void calcProduct(Buchi b1, Buchi b2, boolean general) {
     clear();
 
-    Tools.ASSERT(!b1.general() && !b2.general());
+    Tools.ASSERT(general || (!b1.general() && !b2.general()));
 
     int q1 = b1.nStates();
     int q2 = b2.nStates();
 
     int rowSize = q1;
     int pageSize = rowSize * q2;
+    int copies = general ? 1 : 3;
 
-    // add |Q1| * |Q2| * 3 states
-    for (int i = 0; i < q1 * q2 * 3; i++) {
+    // add |Q1| * |Q2| * 3 states (or just |Q1| * |Q2|, if generalized)
+    for (int i = 0; i < pageSize * copies; i++) {
       int id = addState();
       addStateLabel(id, b1.stateLabel(id % q1));
     }
 
-    // construct propVars, and determine if they are a contradiction.
-
-    // do this only for the first set, then copy to the other sets:
-
-    for (int i = 0; i < q1; i++) {
-      State si = b1.state(i);
-      for (int j = 0; j < q2; j++) {
-        State sj = b2.state(j);
-        for (int k = 0; k < 2; k++) {
-          int d0 = (i + rowSize * j);
-          int di = d0 + k * pageSize;
-
-          State d = state(di);
-          d.label_ = si.label_;
-
-          if (k == 0) {
-            d.pvFalse_ = copy(si.pvFalse_);
-            d.pvTrue_ = copy(si.pvTrue_);
-
-            d.pvFalse_.or(sj.pvFalse_);
-            d.pvTrue_.or(sj.pvTrue_);
-            // determine if any contradictions exist
-            BitSet test = copy(d.pvTrue_);
-            test.and(d.pvFalse_);
-            if (test.cardinality() != 0) {
-              contradictionStates_.set(di);
-            }
-          }
-          else {
-            State src = state(d0);
-            d.pvFalse_ = copy(src.pvFalse_);
-            d.pvTrue_ = copy(src.pvTrue_);
-            contradictionStates_.set(di, contradictionStates_.get(d0));
-          }
-        }
-      }
-    }
-
     // define initial states
     for (int i = 0; i < b1.initialStates_.length(); i++) {
       int i1 = b1.initialStates_.get(i);
@@ -363,8 +447,23 @@ class Buchi {
       }
     }
 
-    // define accept set
-    {
+    if (general) {
+      // define accept sets
+      for (int k = 0; k < b1.nAcceptSets() + b2.nAcceptSets(); k++) {
+        BitSet set = new BitSet();
+        for (int i = 0; i < q1; i++) {
+          for (int j = 0; j < q2; j++) {
+            if (k < b1.nAcceptSets() ? b1.accepting(i, k)
+                : b2.accepting(j, k - b1.nAcceptSets())) {
+              set.set(i + j * rowSize);
+            }
+          }
+        }
+        addAcceptSet(set);
+      }
+    }
+    else {
+      // define accept set
       BitSet set = new BitSet();
       for (int i = 0; i < q1; i++) {
         for (int j = 0; j < q2; j++) {
@@ -374,18 +473,28 @@ class Buchi {
       addAcceptSet(set);
     }
 
-    // define transitions
+    // define transitions; a pair of transitions is taken together, with
+    // the conjunction of their guards, unless their guards contradict
+    // each other
     for (int ri = 0; ri < q1; ri++) {
       State st = b1.state(ri);
       for (int tr = 0; tr < st.trans_.length(); tr++) {
         int rm = st.trans_.getInt(tr);
+        Cube g1 = st.guard(tr);
 
         for (int qj = 0; qj < q2; qj++) {
           State s2 = b2.state(qj);
           for (int t2 = 0; t2 < s2.trans_.length(); t2++) {
             int qn = s2.trans_.getInt(t2);
+            Cube g2 = s2.guard(t2);
+
+            if (!g1.compatible(g2)) {
+              continue;
+            }
+            Cube g = g1.and(g2);
 
-            if (contradictionStates_.get(rm + qn * rowSize)) {
+            if (general) {
+              addTransition(ri + qj * rowSize, rm + qn * rowSize, g);
               continue;
             }
 
@@ -407,7 +516,7 @@ class Buchi {
                   break;
               }
               addTransition( (ri + qj * rowSize) + x * pageSize,
-                            (rm + qn * rowSize) + y * pageSize);
+                            (rm + qn * rowSize) + y * pageSize, g);
             }
           }
         }
@@ -457,11 +566,19 @@ class Buchi {
    * @return DArray containing sequence of states, if nonempty; null if empty
    */
   public DArray nonEmpty() {
-    DArray seq = new DArray();
+    int n = nStates();
     flagged_.clear();
     hashed_.clear();
-    dfsStack1_.clear();
-    dfsStack2_.clear();
+    stacked_.clear();
+
+    buildSuccTable();
+    dfsStack1_ = new int[n];
+    dfsCursor1_ = new int[n];
+    // the second stack may end with a repeated state
+    dfsStack2_ = new int[n + 1];
+    dfsCursor2_ = new int[n];
+    dfsSp1_ = 0;
+    dfsSp2_ = 0;
 
     boolean result = false;
 
@@ -473,13 +590,99 @@ class Buchi {
       }
     }
 
+    DArray seq = null;
     if (result) {
-      seq = dfsStack1_;
-      for (int j = 1; j < dfsStack2_.length(); j++) {
-        seq.add(dfsStack2_.get(j));
+      seq = new DArray();
+      for (int j = 0; j < dfsSp1_; j++) {
+        seq.addInt(dfsStack1_[j]);
+      }
+      for (int j = 1; j < dfsSp2_; j++) {
+        seq.addInt(dfsStack2_[j]);
+      }
+    }
+
+    succOffsets_ = null;
+    succTargets_ = null;
+    dfsStack1_ = dfsCursor1_ = dfsStack2_ = dfsCursor2_ = null;
+    return seq;
+  }
+
+  /**
+   * Build the table of successors used by the emptiness search: the
+   * successors of state q are succTargets_[succOffsets_[q] ...
+   * succOffsets_[q+1]-1], in the order of the state's transition list
+   */
+  private void buildSuccTable() {
+    int n = nStates();
+    int[] offsets = new int[n + 1];
+    int total = 0;
+    for (int q = 0; q < n; q++) {
+      offsets[q] = total;
+      total += state(q).trans_.length();
+    }
+    offsets[n] = total;
+
+    int[] targets = new int[total];
+    for (int q = 0, k = 0; q < n; q++) {
+      DArray tr = state(q).trans_;
+      for (int i = 0; i < tr.length(); i++) {
+        targets[k++] = tr.getInt(i);
       }
     }
-    return result ? seq : null;
+    succOffsets_ = offsets;
+    succTargets_ = targets;
+  }
+
+  /**
+   * Get the initial states
+   * @return OrdSet
+   */
+  public OrdSet initialStates() {
+    return initialStates_;
+  }
+
+  /**
+   * Determine number of transitions from a state
+   * @param state : state number
+   * @return int
+   */
+  public int degree(int state) {
+    return state(state).trans_.length();
+  }
+
+  /**
+   * Get destination of a transition
+   * @param state : state number
+   * @param index : index of transition (0..degree-1)
+   * @return destination state number
+   */
+  public int next(int state, int index) {
+    return state(state).trans_.getInt(index);
+  }
+
+  /**
+   * Get the guard of a transition
+   * @param state : state number
+   * @param index : index of transition (0..degree-1)
+   * @return Cube
+   */
+  public Cube guard(int state, int index) {
+    return state(state).guard(index);
+  }
+
+  /**
+   * Determine if the guard of a transition, combined with that of a
+   * transition in another automaton, contains a contradiction
+   * @param state : state number
+   * @param index : index of transition
+   * @param b2 : other automaton
+   * @param state2 : state number in other automaton
+   * @param index2 : index of transition in other automaton
+   * @return true if some variable is required to be both true and false
+   */
+  public boolean contradicts(int state, int index, Buchi b2, int state2,
+                             int index2) {
+    return !guard(state, index).compatible(b2.guard(state2, index2));
   }
 
   /**
@@ -505,23 +708,30 @@ class Buchi {
    */
   public void setPropVarLabels() {
     Vars v = env.vars;
+    Cube[] sg = stateGuards();
 
     for (int j = 0; j < nStates(); j++) {
 
-      State s = state(j);
+      Cube g = sg[j];
       StringBuffer d = new StringBuffer();
 
       int litCnt = 0;
 
+      if (g == null) {
+        // transitions to state have different guards
+        addStateLabel(j, "?");
+        continue;
+      }
+
       for (int i = 0; i < v.length(); i++) {
-        if (s.pvTrue_.get(i) && s.pvFalse_.get(i)) {
+        if (g.literal(i, true) && g.literal(i, false)) {
           litCnt = 1;
           d.setLength(0);
           d.append('B');
           break;
         }
 
-        if (s.pvTrue_.get(i) || s.pvFalse_.get(i)) {
+        if (g.literal(i, true) || g.literal(i, false)) {
           if (litCnt == 1) {
             d.insert(0, "(");
           }
@@ -529,7 +739,7 @@ class Buchi {
             d.append(" ^ ");
           }
           litCnt++;
-          if (s.pvFalse_.get(i)) {
+          if (g.literal(i, false)) {
             d.append('!');
           }
           d.append(v.var(i));
@@ -568,10 +778,6 @@ class Buchi {
         continue;
       }
 
-      if (contradictionStates_.get(s)) {
-        continue;
-      }
-
       flagged.set(s);
       State st = state(s);
       for (int i = 0; i < st.trans_.length(); i++) {
@@ -630,78 +836,127 @@ class Buchi {
   }
 
   /**
-   * Perform emptiness depth-first search, part 1
-   * @param q : state to start from								state to start from
-   * @return true if infinite path found
+   * Simplify automaton, by removing states that can't contribute to an
+   * accepting run and merging states by simulation (see BuchiSimplifier)
+   * @param d : simplified automaton
    */
-  private boolean dfs1(int q) {
-    boolean result = false;
+  public void simplify(Buchi d) {
+    BuchiSimplifier bs = new BuchiSimplifier(this);
+    bs.simplify();
 
-    stacked_.set(q);
-    dfsStack1_.pushInt(q);
+    d.clear();
+    for (int i = 0; i < bs.nStates(); i++) {
+      d.addState(bs.initial(i));
+    }
+    for (int i = 0; i < bs.nStates(); i++) {
+      State s = state(bs.original(i));
+      int[] succ = bs.successors(i);
+      for (int j = 0; j < succ.length; j++) {
+        d.addTransition(i, succ[j], bs.guard(succ[j]));
+      }
+      d.state(i).label_ = s.label_;
+    }
+    for (int j = 0; j < nAcceptSets(); j++) {
+      d.addAcceptSet(copy(bs.acceptSet(j)));
+    }
+  }
 
-    hashed_.set(q);
-    State st = state(q);
-    for (int i = 0; i < st.trans_.length(); i++) {
-      int q2 = st.trans_.getInt(i);
-      if (!hashed_.get(q2)) {
-        if (dfs1(q2)) {
-          result = true;
-          break;
+  /**
+   * Perform emptiness depth-first search, part 1.  The search is
+   * iterative:  the stack holds the states of the current path, each with
+   * a cursor to the next successor to examine.  A state is popped once all
+   * its successors have been examined; if it's accepting, part 2 is first
+   * run from it, looking for a cycle back to the stack.
+   * @param q0 : state to start from
+   * @return true if infinite path found; the path to the accepting state
+   *   is left on dfsStack1_, and the cycle on dfsStack2_
+   */
+  private boolean dfs1(int q0) {
+    int base = dfsSp1_;
+    push1(q0);
+
+    while (dfsSp1_ > base) {
+      int top = dfsSp1_ - 1;
+      int q = dfsStack1_[top];
+      int pos = dfsCursor1_[top];
+
+      if (pos < succOffsets_[q + 1]) {
+        dfsCursor1_[top] = pos + 1;
+        int q2 = succTargets_[pos];
+        if (!hashed_.get(q2)) {
+          push1(q2);
         }
+        continue;
       }
-    }
-    if (!result) {
-      if (accepting(q)) {
-        result = dfs2(q);
+
+      if (accepting(q) && dfs2(q)) {
+        return true;
       }
-    }
-    if (!result) {
-      dfsStack1_.popInt();
+      dfsSp1_--;
       stacked_.set(q, false);
     }
+    return false;
+  }
 
-    return result;
+  private void push1(int q) {
+    stacked_.set(q);
+    hashed_.set(q);
+    dfsStack1_[dfsSp1_] = q;
+    dfsCursor1_[dfsSp1_] = succOffsets_[q];
+    dfsSp1_++;
   }
 
   /**
-   * Perform emptiness depth-first search, part 2
-   * @param q : state to start from								state to start from
+   * Perform emptiness depth-first search, part 2:  search for a path
+   * from an accepting state to a state on the first stack, through states
+   * not already flagged
+   * @param q0 : accepting state to start from
    * @return true if infinite path found
    */
-  private boolean dfs2(int q) {
-    dfsStack2_.pushInt(q);
-    flagged_.set(q);
-    State st = state(q);
-    boolean result = false;
-
-    for (int i = 0; i < st.trans_.length(); i++) {
-      int q2 = st.trans_.getInt(i);
-      if (stacked_.get(q2)) {
-        dfsStack2_.pushInt(q2);
-        result = true;
-        break;
-      }
-      if (!flagged_.get(q2)) {
-        result = dfs2(q2);
-        if (result) {
-          break;
+  private boolean dfs2(int q0) {
+    dfsSp2_ = 0;
+    push2(q0);
+
+    while (dfsSp2_ > 0) {
+      int top = dfsSp2_ - 1;
+      int q = dfsStack2_[top];
+      int pos = dfsCursor2_[top];
+
+      if (pos < succOffsets_[q + 1]) {
+        dfsCursor2_[top] = pos + 1;
+        int q2 = succTargets_[pos];
+        if (stacked_.get(q2)) {
+          dfsStack2_[dfsSp2_++] = q2;
+          return true;
+        }
+        if (!flagged_.get(q2)) {
+          push2(q2);
         }
+        continue;
       }
+      dfsSp2_--;
     }
-    if (!result) {
-      dfsStack2_.pop();
-    }
-    return result;
+    return false;
+  }
+
+  private void push2(int q) {
+    flagged_.set(q);
+    dfsStack2_[dfsSp2_] = q;
+    dfsCursor2_[dfsSp2_] = succOffsets_[q];
+    dfsSp2_++;
   }
 
   // dfs usage: bit is set if state is 'hashed'
   private BitSet hashed_ = new BitSet();
   // dfs usage: bit is set if state is 'flagged'
   private BitSet flagged_ = new BitSet();
-  // list of states on dfs stacks
-  private DArray dfsStack1_ = new DArray();
-  private DArray dfsStack2_ = new DArray();
+  // dfs stacks:  states, position of next successor to examine for
+  // each, and number of entries in use
+  private int[] dfsStack1_, dfsCursor1_;
+  private int[] dfsStack2_, dfsCursor2_;
+  private int dfsSp1_, dfsSp2_;
+  // dfs usage: successor table built by buildSuccTable()
+  private int[] succOffsets_, succTargets_;
   // true if state is on dfs stack
   private BitSet stacked_ = new BitSet();
 
@@ -711,12 +966,14 @@ class Buchi {
     // transition relation)
     DArray trans_ = new DArray();
 
-    // flags indicating which prop. vars must be true (or false)
-    // (if bit is set, indicates it must be true (or false))
-    BitSet pvTrue_ = new BitSet(),
-        pvFalse_ = new BitSet();
+    // guard of each transition:  literals the input read must satisfy
+    DArray guards_ = new DArray();
 
     String label_;
+
+    Cube guard(int index) {
+      return (Cube) guards_.get(index);
+    }
   };
 
   // Q
@@ -735,8 +992,8 @@ class Buchi {
     return (BitSet) acceptSets_.get(index);
   }
 
-  // flags indicating whether a state has contradictions
-  private BitSet contradictionStates_ = new BitSet();
+  // guard of transitions that read any input
+  private static final Cube TRUE = new Cube();
 
   private Environment env;
 }
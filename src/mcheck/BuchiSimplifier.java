@@ -0,0 +1,789 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+
+/**
+ * Simplifies a Buchi automaton without changing the language it accepts,
+ * by the following steps (see Etessami, Wilke & Schuller, "Fair
+ * Simulation Relations, Parity Games, and State Space Reduction for Buchi
+ * Automata"; and Somenzi & Bloem, "Efficient Buchi Automata from LTL
+ * Formulae"):
+ *
+ *  1) states that are unreachable, that have contradictory prop. var.
+ *     requirements, or that can't reach an accepting cycle are removed;
+ *  2) direct simulation is computed, and transitions to (and initial
+ *     states) that are strictly simulated by a sibling are removed; then
+ *     states that simulate each other are merged;
+ *  3) if the automaton is not generalized, delayed simulation is
+ *     computed (by solving a Buchi game), and states that
+ *     delayed-simulate each other are merged;
+ *  4) step 1 is repeated.
+ *
+ * The automaton must be state-labelled, i.e., every transition to a state
+ * must have the same guard (see Buchi.stateGuards()); a state q is then
+ * simulated by r only if every input accepted by q's guard is accepted by
+ * r's.
+ * The simulation steps are skipped for automata with too many states.
+ */
+class BuchiSimplifier {
+
+  /**
+   * Constructor
+   * @param b : automaton to simplify
+   */
+  public BuchiSimplifier(Buchi b) {
+    this.b = b;
+    n = b.nStates();
+    guards = b.stateGuards();
+    for (int q = 0; q < n; q++) {
+      Tools.ASSERT(guards[q] != null, "automaton isn't state-labelled");
+    }
+    orig = new int[n];
+    succ = new int[n][];
+    init = new BitSet();
+    acc = new BitSet[b.nAcceptSets()];
+
+    BitSet seen = new BitSet();
+    for (int q = 0; q < n; q++) {
+      orig[q] = q;
+      int[] s = new int[b.degree(q)];
+      int len = 0;
+      seen.clear();
+      for (int i = 0; i < s.length; i++) {
+        int r = b.next(q, i);
+        if (r < n && !seen.get(r)) {
+          seen.set(r);
+          s[len++] = r;
+        }
+      }
+      succ[q] = trim(s, len);
+    }
+    OrdSet is = b.initialStates();
+    for (int i = 0; i < is.length(); i++) {
+      init.set(is.get(i));
+    }
+    for (int k = 0; k < acc.length; k++) {
+      acc[k] = new BitSet();
+      for (int q = 0; q < n; q++) {
+        if (b.accepting(q, k)) {
+          acc[k].set(q);
+        }
+      }
+    }
+  }
+
+  /**
+   * Simplify the automaton
+   */
+  public void simplify() {
+    removeUseless();
+    if (n <= DIRECT_LIMIT) {
+      BitSet[] sim = directSimulation();
+      pruneLittleBrothers(sim);
+      quotient(sim);
+    }
+    if (acc.length == 1 && n <= DELAYED_LIMIT) {
+      quotient(delayedSimulation());
+    }
+    removeUseless();
+  }
+
+  /**
+   * Get the number of states in the simplified automaton
+   * @return int
+   */
+  public int nStates() {
+    return n;
+  }
+
+  /**
+   * Get the state of the original automaton that a state was derived
+   * from; it has the same guard
+   * @param q : state of simplified automaton
+   * @return state of original automaton
+   */
+  public int original(int q) {
+    return orig[q];
+  }
+
+  /**
+   * Get the guard of the transitions to a state
+   * @param q : state of simplified automaton
+   * @return Cube
+   */
+  public Cube guard(int q) {
+    return guards[orig[q]];
+  }
+
+  /**
+   * Get the successors of a state
+   * @param q : state of simplified automaton
+   * @return array of states
+   */
+  public int[] successors(int q) {
+    return succ[q];
+  }
+
+  /**
+   * Determine if a state is an initial state
+   * @param q : state of simplified automaton
+   * @return boolean
+   */
+  public boolean initial(int q) {
+    return init.get(q);
+  }
+
+  /**
+   * Get a set of accepting states
+   * @param k : index of set
+   * @return BitSet of states of simplified automaton
+   */
+  public BitSet acceptSet(int k) {
+    return acc[k];
+  }
+
+  /**
+   * Remove states that are unreachable, contradictory, or can't reach
+   * an accepting cycle
+   */
+  private void removeUseless() {
+    BitSet live = new BitSet();
+    int[] stk = new int[n];
+    int sp = 0;
+    for (int q = init.nextSetBit(0); q >= 0; q = init.nextSetBit(q + 1)) {
+      if (!guards[orig[q]].empty()) {
+        live.set(q);
+        stk[sp++] = q;
+      }
+    }
+    while (sp > 0) {
+      int q = stk[--sp];
+      for (int i = 0; i < succ[q].length; i++) {
+        int r = succ[q][i];
+        if (!live.get(r) && !guards[orig[r]].empty()) {
+          live.set(r);
+          stk[sp++] = r;
+        }
+      }
+    }
+
+    // find the states of the accepting components, those that are
+    // nontrivial and contain a state from each accept set
+    int[] comp = components(live);
+    int nComp = 0;
+    for (int q = 0; q < n; q++) {
+      nComp = Math.max(nComp, comp[q] + 1);
+    }
+    int[] size = new int[nComp];
+    boolean[] loop = new boolean[nComp];
+    BitSet[] meets = new BitSet[nComp];
+    for (int c = 0; c < nComp; c++) {
+      meets[c] = new BitSet();
+    }
+    for (int q = live.nextSetBit(0); q >= 0; q = live.nextSetBit(q + 1)) {
+      int c = comp[q];
+      size[c]++;
+      for (int i = 0; i < succ[q].length; i++) {
+        if (succ[q][i] == q) {
+          loop[c] = true;
+        }
+      }
+      for (int k = 0; k < acc.length; k++) {
+        if (acc[k].get(q)) {
+          meets[c].set(k);
+        }
+      }
+    }
+
+    // keep only states that can reach an accepting component
+    int[][] pred = predecessors(live);
+    BitSet keep = new BitSet();
+    sp = 0;
+    for (int q = live.nextSetBit(0); q >= 0; q = live.nextSetBit(q + 1)) {
+      int c = comp[q];
+      if ( (size[c] > 1 || loop[c]) && meets[c].cardinality() == acc.length) {
+        keep.set(q);
+        stk[sp++] = q;
+      }
+    }
+    while (sp > 0) {
+      int q = stk[--sp];
+      for (int i = 0; i < pred[q].length; i++) {
+        int p = pred[q][i];
+        if (!keep.get(p)) {
+          keep.set(p);
+          stk[sp++] = p;
+        }
+      }
+    }
+
+    if (keep.cardinality() < n) {
+      compact(keep);
+    }
+  }
+
+  /**
+   * Find the strongly connected components of the subgraph induced by a
+   * set of states (by Tarjan's algorithm, performed iteratively)
+   * @param live : states of subgraph
+   * @return component of each state, or -1 if not in subgraph
+   */
+  private int[] components(BitSet live) {
+    int[] comp = new int[n], index = new int[n], low = new int[n];
+    Arrays.fill(comp, -1);
+    Arrays.fill(index, -1);
+    int[] stk = new int[n], callStk = new int[n], cursor = new int[n];
+    BitSet stacked = new BitSet();
+    int sp = 0, counter = 0, nComp = 0;
+
+    for (int s = live.nextSetBit(0); s >= 0; s = live.nextSetBit(s + 1)) {
+      if (index[s] >= 0) {
+        continue;
+      }
+      int csp = 0;
+      callStk[csp] = s;
+      cursor[csp++] = 0;
+      index[s] = low[s] = counter++;
+      stk[sp++] = s;
+      stacked.set(s);
+
+      while (csp > 0) {
+        int q = callStk[csp - 1];
+        if (cursor[csp - 1] < succ[q].length) {
+          int r = succ[q][cursor[csp - 1]++];
+          if (!live.get(r)) {
+            continue;
+          }
+          if (index[r] < 0) {
+            index[r] = low[r] = counter++;
+            stk[sp++] = r;
+            stacked.set(r);
+            callStk[csp] = r;
+            cursor[csp++] = 0;
+          }
+          else if (stacked.get(r)) {
+            low[q] = Math.min(low[q], index[r]);
+          }
+          continue;
+        }
+        csp--;
+        if (csp > 0) {
+          int p = callStk[csp - 1];
+          low[p] = Math.min(low[p], low[q]);
+        }
+        if (low[q] == index[q]) {
+          int r;
+          do {
+            r = stk[--sp];
+            stacked.clear(r);
+            comp[r] = nComp;
+          }
+          while (r != q);
+          nComp++;
+        }
+      }
+    }
+    return comp;
+  }
+
+  /**
+   * Build the predecessor lists of the subgraph induced by a set of states
+   * @param live : states of subgraph
+   * @return predecessors of each state
+   */
+  private int[][] predecessors(BitSet live) {
+    int[] cnt = new int[n];
+    for (int q = live.nextSetBit(0); q >= 0; q = live.nextSetBit(q + 1)) {
+      for (int i = 0; i < succ[q].length; i++) {
+        cnt[succ[q][i]]++;
+      }
+    }
+    int[][] pred = new int[n][];
+    for (int q = 0; q < n; q++) {
+      pred[q] = new int[live.get(q) ? cnt[q] : 0];
+      cnt[q] = 0;
+    }
+    for (int q = live.nextSetBit(0); q >= 0; q = live.nextSetBit(q + 1)) {
+      for (int i = 0; i < succ[q].length; i++) {
+        int r = succ[q][i];
+        if (live.get(r)) {
+          pred[r][cnt[r]++] = q;
+        }
+      }
+    }
+    return pred;
+  }
+
+  /**
+   * Discard all but a subset of the states, renumbering those that remain
+   * @param keep : states to keep
+   */
+  private void compact(BitSet keep) {
+    int[] newId = new int[n];
+    int m = 0;
+    for (int q = 0; q < n; q++) {
+      newId[q] = keep.get(q) ? m++ : -1;
+    }
+
+    int[] orig2 = new int[m];
+    int[][] succ2 = new int[m][];
+    for (int q = keep.nextSetBit(0); q >= 0; q = keep.nextSetBit(q + 1)) {
+      int q2 = newId[q];
+      orig2[q2] = orig[q];
+      int[] s = new int[succ[q].length];
+      int len = 0;
+      for (int i = 0; i < s.length; i++) {
+        int r = newId[succ[q][i]];
+        if (r >= 0) {
+          s[len++] = r;
+        }
+      }
+      succ2[q2] = trim(s, len);
+    }
+    init = renumber(init, newId);
+    for (int k = 0; k < acc.length; k++) {
+      acc[k] = renumber(acc[k], newId);
+    }
+    orig = orig2;
+    succ = succ2;
+    n = m;
+  }
+
+  /**
+   * Determine if the prop. var. requirements of one state imply those of
+   * another, and if the first is in every accept set the second is
+   * @param q : first state
+   * @param r : second state
+   * @return boolean
+   */
+  private boolean covers(int q, int r) {
+    if (!guards[orig[q]].implies(guards[orig[r]])) {
+      return false;
+    }
+    for (int k = 0; k < acc.length; k++) {
+      if (acc[k].get(q) && !acc[k].get(r)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the direct simulation relation, by refining the relation
+   * 'covers' until every move of a state can be matched by a move of each
+   * state that simulates it
+   * @return array of BitSets; bit r of entry q is set if r simulates q
+   */
+  private BitSet[] directSimulation() {
+    BitSet all = new BitSet();
+    all.set(0, n);
+    int[][] pred = predecessors(all);
+    BitSet[] predSet = new BitSet[n];
+    for (int q = 0; q < n; q++) {
+      predSet[q] = new BitSet();
+      for (int i = 0; i < pred[q].length; i++) {
+        predSet[q].set(pred[q][i]);
+      }
+    }
+
+    // sim[q] is the set of states simulating q, and canMatch[q] the set of
+    // states with a successor in sim[q]
+    BitSet[] sim = new BitSet[n];
+    BitSet[] canMatch = new BitSet[n];
+    for (int q = 0; q < n; q++) {
+      sim[q] = new BitSet();
+      for (int r = 0; r < n; r++) {
+        if (covers(q, r)) {
+          sim[q].set(r);
+        }
+      }
+      canMatch[q] = union(sim[q], predSet);
+    }
+
+    // when a state's row of the relation shrinks, the rows of its
+    // predecessors must be refined again
+    int[] work = new int[n];
+    BitSet queued = new BitSet();
+    int sp = 0;
+    for (int q = n - 1; q >= 0; q--) {
+      work[sp++] = q;
+      queued.set(q);
+    }
+    while (sp > 0) {
+      int q = work[--sp];
+      queued.clear(q);
+      int before = sim[q].cardinality();
+      for (int i = 0; i < succ[q].length; i++) {
+        sim[q].and(canMatch[succ[q][i]]);
+      }
+      if (sim[q].cardinality() == before) {
+        continue;
+      }
+      canMatch[q] = union(sim[q], predSet);
+      for (int i = 0; i < pred[q].length; i++) {
+        int p = pred[q][i];
+        if (!queued.get(p)) {
+          queued.set(p);
+          work[sp++] = p;
+        }
+      }
+    }
+    return sim;
+  }
+
+  /**
+   * Construct the union of some of a collection of sets
+   * @param which : indices of sets to include
+   * @param sets : the collection
+   * @return BitSet
+   */
+  private static BitSet union(BitSet which, BitSet[] sets) {
+    BitSet u = new BitSet();
+    for (int i = which.nextSetBit(0); i >= 0; i = which.nextSetBit(i + 1)) {
+      u.or(sets[i]);
+    }
+    return u;
+  }
+
+  /**
+   * Remove transitions to states that are strictly simulated by another
+   * successor of the same state; and initial states that are strictly
+   * simulated by another initial state
+   * @param sim : direct simulation relation
+   */
+  private void pruneLittleBrothers(BitSet[] sim) {
+    for (int q = 0; q < n; q++) {
+      int[] s = succ[q];
+      int[] s2 = new int[s.length];
+      int len = 0;
+      for (int i = 0; i < s.length; i++) {
+        if (!dominated(sim, s[i], s)) {
+          s2[len++] = s[i];
+        }
+      }
+      succ[q] = trim(s2, len);
+    }
+
+    int[] is = new int[init.cardinality()];
+    for (int q = init.nextSetBit(0), i = 0; q >= 0; q = init.nextSetBit(q + 1)) {
+      is[i++] = q;
+    }
+    for (int i = 0; i < is.length; i++) {
+      if (dominated(sim, is[i], is)) {
+        init.clear(is[i]);
+      }
+    }
+  }
+
+  /**
+   * Determine if a state is strictly simulated by a state in a set
+   * @param sim : simulation relation
+   * @param q : state
+   * @param s : set
+   * @return boolean
+   */
+  private static boolean dominated(BitSet[] sim, int q, int[] s) {
+    for (int i = 0; i < s.length; i++) {
+      int r = s[i];
+      if (sim[q].get(r) && !sim[r].get(q)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Merge states that simulate each other.  A merged state is accepting
+   * if any of its states is; this is only significant for delayed
+   * simulation, since states equivalent by direct simulation are in the
+   * same accept sets.
+   * @param sim : simulation relation
+   */
+  private void quotient(BitSet[] sim) {
+    int[] cls = new int[n];
+    Arrays.fill(cls, -1);
+    int m = 0;
+    for (int q = 0; q < n; q++) {
+      if (cls[q] >= 0) {
+        continue;
+      }
+      cls[q] = m;
+      for (int r = sim[q].nextSetBit(q + 1); r >= 0; r = sim[q].nextSetBit(r + 1)) {
+        if (cls[r] < 0 && sim[r].get(q)) {
+          cls[r] = m;
+        }
+      }
+      m++;
+    }
+    if (m == n) {
+      return;
+    }
+
+    int[] orig2 = new int[m];
+    int[][] succ2 = new int[m][];
+    BitSet seen = new BitSet();
+    for (int c = 0; c < m; c++) {
+      seen.clear();
+      int len = 0;
+      int[] s = new int[m];
+      for (int q = 0; q < n; q++) {
+        if (cls[q] != c) {
+          continue;
+        }
+        if (succ2[c] == null) {
+          succ2[c] = s;
+          orig2[c] = orig[q];
+        }
+        for (int i = 0; i < succ[q].length; i++) {
+          int r = cls[succ[q][i]];
+          if (!seen.get(r)) {
+            seen.set(r);
+            s[len++] = r;
+          }
+        }
+      }
+      succ2[c] = trim(s, len);
+    }
+    init = renumber(init, cls);
+    for (int k = 0; k < acc.length; k++) {
+      acc[k] = renumber(acc[k], cls);
+    }
+    orig = orig2;
+    succ = succ2;
+    n = m;
+  }
+
+  /**
+   * Compute the delayed simulation relation of a non-generalized
+   * automaton.  In the simulation game, Spoiler moves from q to q', then
+   * Duplicator must move from r to some r' whose prop. var. requirements
+   * are implied by those of q'.  A bit records whether an obligation is
+   * pending: whether Spoiler has visited an accepting state since
+   * Duplicator last did.  Duplicator wins if the obligation is discharged
+   * infinitely often, which is a Buchi condition.
+   *
+   * Positions are numbered:
+   *   Spoiler to move from (q,r,bit):     (q*n+r)*2+bit
+   *   Duplicator to move from (q',r,bit): 2n^2 + (q'*n+r)*2+bit
+   *
+   * @return array of BitSets; bit r of entry q is set if r simulates q
+   */
+  private BitSet[] delayedSimulation() {
+    BitSet f = acc[0];
+    int half = 2 * n * n;
+    int nPos = 2 * half;
+    boolean[][] implies = new boolean[n][n];
+    for (int q = 0; q < n; q++) {
+      for (int r = 0; r < n; r++) {
+        implies[q][r] = guards[orig[q]].implies(guards[orig[r]]);
+      }
+    }
+
+    // build successor table of game graph
+    int[] offsets = new int[nPos + 1];
+    int total = 0;
+    for (int q = 0; q < n; q++) {
+      for (int r = 0; r < n; r++) {
+        int d = implies[q][r] ? succ[q].length : 0;
+        for (int bit = 0; bit < 2; bit++) {
+          offsets[ (q * n + r) * 2 + bit] = d;
+        }
+      }
+    }
+    for (int q2 = 0; q2 < n; q2++) {
+      for (int r = 0; r < n; r++) {
+        int d = 0;
+        for (int i = 0; i < succ[r].length; i++) {
+          if (implies[q2][succ[r][i]]) {
+            d++;
+          }
+        }
+        for (int bit = 0; bit < 2; bit++) {
+          offsets[half + (q2 * n + r) * 2 + bit] = d;
+        }
+      }
+    }
+    for (int v = 0; v < nPos; v++) {
+      int d = offsets[v];
+      offsets[v] = total;
+      total += d;
+    }
+    offsets[nPos] = total;
+
+    int[] targets = new int[total];
+    for (int q = 0; q < n; q++) {
+      for (int r = 0; r < n; r++) {
+        for (int bit = 0; bit < 2; bit++) {
+          int v = (q * n + r) * 2 + bit;
+          if (offsets[v + 1] == offsets[v]) {
+            continue;
+          }
+          for (int i = 0, k = offsets[v]; i < succ[q].length; i++) {
+            targets[k++] = half + (succ[q][i] * n + r) * 2 + bit;
+          }
+        }
+      }
+    }
+    for (int q2 = 0; q2 < n; q2++) {
+      for (int r = 0; r < n; r++) {
+        for (int bit = 0; bit < 2; bit++) {
+          int k = offsets[half + (q2 * n + r) * 2 + bit];
+          for (int i = 0; i < succ[r].length; i++) {
+            int r2 = succ[r][i];
+            if (!implies[q2][r2]) {
+              continue;
+            }
+            int bit2 = f.get(r2) ? 0 : (f.get(q2) ? 1 : bit);
+            targets[k++] = (q2 * n + r2) * 2 + bit2;
+          }
+        }
+      }
+    }
+
+    // build predecessor table
+    int[] pOffsets = new int[nPos + 1];
+    for (int k = 0; k < total; k++) {
+      pOffsets[targets[k] + 1]++;
+    }
+    for (int v = 0; v < nPos; v++) {
+      pOffsets[v + 1] += pOffsets[v];
+    }
+    int[] sources = new int[total];
+    int[] fill = new int[nPos];
+    for (int v = 0; v < nPos; v++) {
+      for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+        int w = targets[k];
+        sources[pOffsets[w] + fill[w]++] = v;
+      }
+    }
+
+    BitSet goal = new BitSet();
+    for (int v = 0; v < half; v += 2) {
+      goal.set(v);
+    }
+
+    // solve Buchi game: repeatedly remove the positions from which
+    // Spoiler can prevent Duplicator from reaching the goal
+    BitSet alive = new BitSet();
+    alive.set(0, nPos);
+    alive.andNot(attractor(false, new BitSet(), alive, half, offsets,
+                           targets, pOffsets, sources));
+    while (true) {
+      BitSet g = (BitSet) goal.clone();
+      g.and(alive);
+      BitSet trap = (BitSet) alive.clone();
+      trap.andNot(attractor(true, g, alive, half, offsets, targets,
+                            pOffsets, sources));
+      if (trap.isEmpty()) {
+        break;
+      }
+      alive.andNot(attractor(false, trap, alive, half, offsets, targets,
+                             pOffsets, sources));
+    }
+
+    BitSet[] sim = new BitSet[n];
+    for (int q = 0; q < n; q++) {
+      sim[q] = new BitSet();
+      for (int r = 0; r < n; r++) {
+        int bit = (f.get(q) && !f.get(r)) ? 1 : 0;
+        if (implies[q][r] && alive.get( (q * n + r) * 2 + bit)) {
+          sim[q].set(r);
+        }
+      }
+    }
+    return sim;
+  }
+
+  /**
+   * Compute the attractor of a set of positions in a game: the positions
+   * from which a player can force the play into the set.  Positions
+   * below 'half' belong to Spoiler, the rest to Duplicator; a player who
+   * can't move loses.
+   * @param duplicator : true to compute Duplicator's attractor
+   * @param target : set of positions
+   * @param alive : positions of the subgame to consider
+   * @param half : first of Duplicator's positions
+   * @param offsets, targets : successors of positions
+   * @param pOffsets, sources : predecessors of positions
+   * @return attractor
+   */
+  private static BitSet attractor(boolean duplicator, BitSet target,
+                                  BitSet alive, int half, int[] offsets,
+                                  int[] targets, int[] pOffsets,
+                                  int[] sources) {
+    int nPos = offsets.length - 1;
+    int[] cnt = new int[nPos];
+    int[] queue = new int[alive.cardinality()];
+    int qHead = 0, qTail = 0;
+    BitSet attr = new BitSet();
+
+    for (int v = alive.nextSetBit(0); v >= 0; v = alive.nextSetBit(v + 1)) {
+      for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+        if (alive.get(targets[k])) {
+          cnt[v]++;
+        }
+      }
+      boolean own = (v >= half) == duplicator;
+      if (target.get(v) || (!own && cnt[v] == 0)) {
+        attr.set(v);
+        queue[qTail++] = v;
+      }
+    }
+
+    while (qHead < qTail) {
+      int w = queue[qHead++];
+      for (int k = pOffsets[w]; k < pOffsets[w + 1]; k++) {
+        int v = sources[k];
+        if (!alive.get(v) || attr.get(v)) {
+          continue;
+        }
+        boolean own = (v >= half) == duplicator;
+        if (own || --cnt[v] == 0) {
+          attr.set(v);
+          queue[qTail++] = v;
+        }
+      }
+    }
+    return attr;
+  }
+
+  private static int[] trim(int[] a, int len) {
+    if (len == a.length) {
+      return a;
+    }
+    int[] t = new int[len];
+    System.arraycopy(a, 0, t, 0, len);
+    return t;
+  }
+
+  private static BitSet renumber(BitSet s, int[] newId) {
+    BitSet t = new BitSet();
+    for (int q = s.nextSetBit(0); q >= 0; q = s.nextSetBit(q + 1)) {
+      if (newId[q] >= 0) {
+        t.set(newId[q]);
+      }
+    }
+    return t;
+  }
+
+  // states with more than this many aren't reduced by direct simulation
+  private static final int DIRECT_LIMIT = 1000;
+  // states with more than this many aren't reduced by delayed simulation
+  private static final int DELAYED_LIMIT = 64;
+
+  // automaton being simplified
+  private Buchi b;
+  // guard of the transitions to each state of b
+  private Cube[] guards;
+  // number of states of simplified automaton
+  private int n;
+  // state of b each state was derived from
+  private int[] orig;
+  // successors of each state
+  private int[][] succ;
+  // initial states
+  private BitSet init;
+  // accept sets
+  private BitSet[] acc;
+}
@@ -2,10 +2,32 @@ package mcheck;
 
 import base.*;
 import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 class CTLCheck
     implements IScript {
 
+  /**
+   * Constructor
+   */
+  public CTLCheck() {
+    this(0);
+  }
+
+  /**
+   * Constructor
+   * @param options OPT_xxx flags
+   */
+  public CTLCheck(int options) {
+    options_ = options;
+  }
+
+  public static final int OPT_SWEEP = 0x0001,
+      OPT_PARALLEL = 0x0002,
+      OPT_WITNESS = 0x0004;
+
   /*	Check a formula
                   > vars						symbol table
                   > model						model to check
@@ -24,9 +46,11 @@ class CTLCheck
     this.env = env;
 
     sfAlias_.clear();
-    stateFlags_.clear();
     sfOrder_.clear();
+    sfPos_.clear();
     pvWarn_.clear();
+    warnings_.clear();
+    freeVectors_.clear();
 
     showProgress_ = showProgress;
 
@@ -36,37 +60,66 @@ class CTLCheck
 
     Tools.ASSERT(f_.isCTL());
 
-    prepareModel();
+    nWords_ = (m.states() + 63) >> 6;
     if (model().defined()) {
 
       // reduce formula to minimal set of connectives
       f_.reduce();
       extractSubformulas();
+      buildTables();
+      findFairStates();
 
-      for (int i = 0; i < sfOrder_.length(); i++) {
-        processFormula(sfOrder_.getInt(i));
+      boolean parallel = option(OPT_PARALLEL);
+
+      // unless we're printing subformulas, recycle each subformula's
+      // vector once its last parent has been evaluated
+      recycle_ = !printFormulas && !option(OPT_WITNESS)
+          && ! (parallel && showProgress_);
+      if (option(OPT_WITNESS)) {
+        next_ = new int[sfOrder_.length()][];
+        comp_ = new int[sfOrder_.length()][];
+      }
+      if (recycle_) {
+        countReferences();
       }
 
-      if (printFormulas) {
+      if (parallel) {
+        evaluateParallel();
+        if (showProgress_) {
+          for (int sf = 0; sf < sfOrder_.length(); sf++) {
+            printMarked(sf);
+          }
+        }
+      }
+      else {
+        for (int sf = 0; sf < sfOrder_.length(); sf++) {
+          processFormula(sf);
+          if (showProgress_) {
+            printMarked(sf);
+          }
+          releaseChildren(sf);
+        }
+      }
+
+      if (printFormulas && out_ != null) {
         for (int i = 0; i < model().states(); i++) {
           int name = model().stateName(i);
-          Streams.out.println("State #" + name + ":");
+          out_.println("State #" + name + ":");
           for (int j = 0; j < sfOrder_.length(); j++) {
-            int form = sfOrder_.getInt(j);
-            if (getFlag(i, form)) {
-              Streams.out.print("  ");
-              Streams.out.println(f_.toString(form));
+            if (get(labels_[j], i)) {
+              out_.print("  ");
+              out_.println(f_.toString(sfOrder_.getInt(j)));
             }
           }
-          Streams.out.println();
+          out_.println();
         }
       }
 
       if (bs != null) {
-        int satFormula = sfOrder_.lastInt();
+        long[] sat = labels_[sfOrder_.length() - 1];
 
         for (int i = 0; i < model().states(); i++) {
-          if (getFlag(i, satFormula)) {
+          if (get(sat, i)) {
             bs.set(i);
           }
         }
@@ -77,163 +130,770 @@ class CTLCheck
   public void check(Environment env, Model model, Formula f) {
     check(env, model, f, null, false, false);
   }
+  /*	Set the stream that formulas satisfied in each state (and
+                  warnings) are printed to
+                  > out							PrintStream, or null to print nothing
+   */
+  public void setOutput(PrintStream out) {
+    out_ = out;
+  }
+
+  /*	Get the warnings produced by the last check
+                  < DArray of Strings
+   */
+  public DArray warnings() {
+    return warnings_;
+  }
+
+  /*	Record a warning, and print it
+                  > msg							warning
+   */
+  private void warn(String msg) {
+    warnings_.add(msg);
+    if (out_ != null) {
+      out_.println(msg);
+    }
+  }
+
 
   private Model model() {
     return model_;
   }
 
-  /*	Prepare model for checking
+  /**
+   * Determine if a particular option has been set
+   * @param flag int
+   * @return boolean
    */
-  private void prepareModel() {
-    stateFlags_.clear();
-    Model m = model();
+  private boolean option(int flag) {
+    return (options_ & flag) != 0;
+  }
 
-    // initialize state flags to empty
-    {
-      for (int i = 0; i < m.states(); i++) {
-        stateFlags_.add(new BitSet());
-      }
+  /**
+   * Determine if the fixpoint sweeps are to be used in place of the
+   * linear algorithms.  The sweeps don't record witnesses, so
+   * OPT_WITNESS takes precedence.
+   * @return boolean
+   */
+  private boolean sweep() {
+    return option(OPT_SWEEP) && !option(OPT_WITNESS);
+  }
+
+  /*	Determine satisfaction set of a subformula, whose children have
+                  already been processed
+                  > sf							index of subformula in evaluation order
+   */
+  private void processFormula(int sf) {
+    labels_[sf] = newVector();
+
+    switch (sfType_[sf]) {
+      case T_AF:
+        if (fair_ != null) {
+          markFairAF(sf);
+        }
+        else if (sweep()) {
+          sweepAF(sf);
+        }
+        else {
+          markAF(sf);
+        }
+        break;
+      case T_EG:
+        if (fair_ != null) {
+          fairEG(labels_[sfChild0_[sf]], labels_[sf], sf);
+        }
+        else if (sweep()) {
+          sweepEG(sf);
+        }
+        else {
+          markEG(sf);
+        }
+        break;
+      case T_EXISTS_UNTIL:
+        if (sweep()) {
+          sweepEU(sf);
+        }
+        else {
+          markEU(sf);
+        }
+        break;
+      default:
+        processRange(sf, 0, nWords_);
+        break;
     }
   }
 
-  private void processFormula(int root) {
+  /*	Determine if a subformula's satisfaction set can be computed
+                  piecewise, each piece depending on only its own states
+                  > sf							index of subformula in evaluation order
+   */
+  private boolean isRangeOp(int sf) {
+    switch (sfType_[sf]) {
+      case T_AF:
+      case T_EG:
+      case T_EXISTS_UNTIL:
+        return false;
+    }
+    return true;
+  }
 
+  /*	Compute part of a subformula's satisfaction set, for one of the
+                  connectives that can be computed piecewise (see isRangeOp)
+                  > sf							index of subformula in evaluation order
+                  > w0, w1					range of words of the vector to compute;
+                                     these represent states 64*w0...64*w1-1
+   */
+  private void processRange(int sf, int w0, int w1) {
     Model m = model();
-    Token t = f_.token(root);
-
-    int type = f_.nType(root);
-    //	pt((" type=%d, str=%s\n",type,Formula::ts(t) ));
-    //pt((" %s\n",Formula::ts(t) ));
+    long[] dest = labels_[sf];
 
-    switch (type) {
+    switch (sfType_[sf]) {
       case T_PROPVAR: {
-        int var = env.vars.var(t.text(), true);
-        //int var = Model::varToInt(t.str().charAt(0));
-        if (!m.propVarUsed(var)) {
-          if (!pvWarn_.get(var)) {
-            pvWarn_.set(var);
-            Streams.out.println("Warning: Variable '" + t.text() +
-                                "' not used in model");
-          }
-        }
-        for (int i = 0; i < m.states(); i++) {
-
-          if (m.propVar(m.stateName(i), var)) {
-            markState(i, root);
-          }
+        long[] src = m.propVarStates(sfVar_[sf]);
+        if (src != null) {
+          System.arraycopy(src, w0, dest, w0, w1 - w0);
         }
       }
       break;
       case T_BOTTOM:
         break;
       case T_NEGATION: {
-        int child = childFormula(root, 0);
-        for (int i = 0; i < m.states(); i++) {
-          if (!getFlag(i, child)) {
-            markState(i, root);
-          }
+        long[] c = labels_[sfChild0_[sf]];
+        for (int w = w0; w < w1; w++) {
+          dest[w] = ~c[w];
+        }
+        // clear the bits past the last state
+        int extra = m.states() & 63;
+        if (extra != 0 && w1 == nWords_) {
+          dest[nWords_ - 1] &= (1L << extra) - 1;
         }
       }
       break;
       case T_AND: {
-        int ca = childFormula(root, 0),
-            cb = childFormula(root, 1);
-
-        for (int i = 0; i < m.states(); i++) {
-          if (getFlag(i, ca) && getFlag(i, cb)) {
-            markState(i, root);
-          }
+        long[] ca = labels_[sfChild0_[sf]],
+            cb = labels_[sfChild1_[sf]];
+        for (int w = w0; w < w1; w++) {
+          dest[w] = ca[w] & cb[w];
         }
       }
       break;
       case T_EX: {
-        int c = childFormula(root, 0);
-
-        for (int i = 0; i < m.states(); i++) {
-          int in = m.stateName(i);
-          for (int j = m.degree(in) - 1; j >= 0; j--) {
-            int xs = m.next(in, j);
-            if (getFlag(m.stateId(xs), c)) {
-              markState(i, root);
+        long[] c = labels_[sfChild0_[sf]];
+
+        int end = Math.min(w1 << 6, m.states());
+        for (int i = w0 << 6; i < end; i++) {
+          for (int j = m.succEnd(i) - 1; j >= m.succStart(i); j--) {
+            int s = m.succ(j);
+            if (get(c, s) && (fair_ == null || get(fair_, s))) {
+              set(dest, i);
               break;
             }
           }
         }
       }
       break;
-      case T_AF: {
-        int c = childFormula(root, 0);
-
-        boolean changed = true;
-        while (changed) {
-          changed = false;
-          for (int i = 0; i < m.states(); i++) {
-            int iName = m.stateName(i);
-            if (getFlag(i, root)) {
-              continue;
-            }
-            if (getFlag(i, c)) {
-              changed = true;
-              markState(i, root);
-              continue;
-            }
+    }
+  }
 
-            boolean allNb = true;
-            for (int j = m.degree(iName) - 1; j >= 0; j--) {
-              int xs = m.next(iName, j);
-              if (!getFlag(m.stateId(xs), root)) {
-                allNb = false;
-                break;
-              }
-            }
-            if (allNb) {
-              changed = true;
-              markState(i, root);
-            }
+  /*	Evaluate the subformulas using the fork/join pool.  A subformula
+                  is evaluated once all of its children have been; sibling
+                  subformulas may be evaluated concurrently, and the vectors
+                  of connectives that can be computed piecewise are split
+                  across workers.
+   */
+  private void evaluateParallel() {
+    int n = sfOrder_.length();
+    tasks_ = new EvalTask[n];
+    for (int sf = 0; sf < n; sf++) {
+      tasks_[sf] = new EvalTask(sf);
+    }
+    EvalTask rootTask = tasks_[n - 1];
+    rootTask.started.set(true);
+    ForkJoinPool.commonPool().invoke(rootTask);
+    tasks_ = null;
+  }
+
+  /*	Task to evaluate a subformula (after its children)
+   */
+  private class EvalTask
+      extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    EvalTask(int sf) {
+      this.sf = sf;
+    }
+
+    protected void compute() {
+      int c0 = sfChild0_[sf], c1 = sfChild1_[sf];
+
+      // start any children not already started by another parent,
+      // then wait for them
+      if (c0 >= 0 && tasks_[c0].started.compareAndSet(false, true)) {
+        tasks_[c0].fork();
+      }
+      if (c1 >= 0 && tasks_[c1].started.compareAndSet(false, true)) {
+        tasks_[c1].fork();
+      }
+      if (c0 >= 0) {
+        tasks_[c0].join();
+      }
+      if (c1 >= 0) {
+        tasks_[c1].join();
+      }
+
+      if (isRangeOp(sf) && nWords_ > GRAIN_WORDS) {
+        labels_[sf] = newVector();
+        new RangeTask(sf, 0, nWords_).invoke();
+      }
+      else {
+        processFormula(sf);
+      }
+      releaseChildren(sf);
+    }
+
+    // index of subformula in evaluation order
+    private final int sf;
+    // set once the task has been forked
+    final AtomicBoolean started = new AtomicBoolean();
+  }
+
+  /*	Task to compute a range of words of a subformula's vector
+   */
+  private class RangeTask
+      extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    RangeTask(int sf, int w0, int w1) {
+      this.sf = sf;
+      this.w0 = w0;
+      this.w1 = w1;
+    }
+
+    protected void compute() {
+      if (w1 - w0 <= GRAIN_WORDS) {
+        processRange(sf, w0, w1);
+      }
+      else {
+        int mid = (w0 + w1) >>> 1;
+        invokeAll(new RangeTask(sf, w0, mid), new RangeTask(sf, mid, w1));
+      }
+    }
+
+    private final int sf, w0, w1;
+  }
+
+  /*	Mark states satisfying AF c, by propagating backwards from the
+                  states satisfying c.  Each state keeps a count of its
+                  successors not yet known to satisfy AF c; it's marked when
+                  that count drops to zero.  Linear in the size of the model.
+                  > sf							index of AF subformula
+   */
+  private void markAF(int sf) {
+    Model m = model();
+    long[] c = labels_[sfChild0_[sf]];
+    long[] dest = labels_[sf];
+
+    int[] pending = new int[m.states()];
+    int[] stack = new int[m.states()];
+    int sp = 0;
+
+    for (int i = 0; i < m.states(); i++) {
+      pending[i] = m.succEnd(i) - m.succStart(i);
+      if (get(c, i) || pending[i] == 0) {
+        set(dest, i);
+        stack[sp++] = i;
+      }
+    }
+
+    while (sp > 0) {
+      int s = stack[--sp];
+      for (int j = m.predStart(s); j < m.predEnd(s); j++) {
+        int p = m.pred(j);
+        if (get(dest, p)) {
+          continue;
+        }
+        if (--pending[p] == 0) {
+          set(dest, p);
+          stack[sp++] = p;
+        }
+      }
+    }
+  }
+
+  /*	Mark states satisfying E[a U b], by a backward search from
+                  the states satisfying b through states satisfying a.
+                  Linear in the size of the model.
+                  > sf							index of EU subformula
+   */
+  private void markEU(int sf) {
+    long[] cb = labels_[sfChild1_[sf]];
+    if (fair_ != null) {
+      // the path must continue fairly from the b-state
+      cb = and(cb, fair_);
+    }
+    if (option(OPT_WITNESS)) {
+      next_[sf] = witnessArray();
+    }
+    euStates(labels_[sfChild0_[sf]], cb, labels_[sf],
+             option(OPT_WITNESS) ? next_[sf] : null);
+  }
+
+  /*	Find the states satisfying E[a U b], by a breadth-first backward
+                  search from the states satisfying b through states satisfying
+                  a
+                  > ca, cb					states satisfying a and b
+                  > dest						where to store result
+                  > next						if not null, for each state added by the search,
+                                     stores its successor on a shortest path to
+                                     a b-state
+   */
+  private void euStates(long[] ca, long[] cb, long[] dest, int[] next) {
+    Model m = model();
+    int[] queue = new int[m.states()];
+    int head = 0, tail = 0;
+
+    System.arraycopy(cb, 0, dest, 0, nWords_);
+    for (int i = nextSet(dest, 0); i >= 0; i = nextSet(dest, i + 1)) {
+      queue[tail++] = i;
+    }
+
+    while (head < tail) {
+      int s = queue[head++];
+      for (int j = m.predStart(s); j < m.predEnd(s); j++) {
+        int p = m.pred(j);
+        if (!get(dest, p) && get(ca, p)) {
+          set(dest, p);
+          queue[tail++] = p;
+          if (next != null) {
+            next[p] = s;
           }
         }
       }
-      break;
-      case T_EXISTS_UNTIL: {
+    }
+  }
+
+  /*	Mark states satisfying EG c.  Restricted to the states satisfying
+                  c, the states in nontrivial strongly connected components are
+                  found (these have an infinite c-path), and the formula is then
+                  propagated backwards from them through c-states.  Linear in
+                  the size of the model.
+                  > sf							index of EG subformula
+   */
+  private void markEG(int sf) {
+    long[] sub = labels_[sfChild0_[sf]];
+    long[] dest = labels_[sf];
+
+    if (option(OPT_WITNESS)) {
+      next_[sf] = witnessArray();
+      comp_[sf] = witnessArray();
+    }
+    nontrivialSCCs(sub, dest, false, comp_ == null ? null : comp_[sf]);
+    propagateEG(sub, dest, next_ == null ? null : next_[sf]);
+  }
+
+  /*	Propagate EG c backwards (breadth first) through the c-states,
+                  from the states already marked
+                  > sub							states satisfying c
+                  > dest						states marked so far
+                  > next						if not null, for each state added, stores its
+                                     successor on a shortest path to a state
+                                     initially marked
+   */
+  private void propagateEG(long[] sub, long[] dest, int[] next) {
+    Model m = model();
+    int[] queue = new int[m.states()];
+    int head = 0, tail = 0;
+
+    for (int i = nextSet(dest, 0); i >= 0; i = nextSet(dest, i + 1)) {
+      queue[tail++] = i;
+    }
+
+    while (head < tail) {
+      int s = queue[head++];
+      for (int j = m.predStart(s); j < m.predEnd(s); j++) {
+        int p = m.pred(j);
+        if (get(sub, p) && !get(dest, p)) {
+          set(dest, p);
+          queue[tail++] = p;
+          if (next != null) {
+            next[p] = s;
+          }
+        }
+      }
+    }
+  }
+
+  /*	Find the states of a subgraph that lie in nontrivial strongly
+                  connected components (ones with more than one state, or with
+                  a self loop).  Uses Tarjan's algorithm, with an explicit stack
+                  in place of recursion so deep models don't overflow the
+                  thread's stack.
+                  > sub							states of the subgraph; only edges between
+                                     these states are considered
+                  > out							bits are set for states in nontrivial
+                                     components
+                  > fair						if true, only components that contain a state
+                                     from every fairness constraint are included
+                  > comp						if not null, the states of each included
+                                     component are labelled with a distinct
+                                     component number
+   */
+  private void nontrivialSCCs(long[] sub, long[] out, boolean fair,
+                              int[] comp) {
+    Model m = model();
+    int n = m.states();
+
+    // dfs number (+1) of each state; 0 if not yet visited
+    int[] index = new int[n];
+    int[] low = new int[n];
+    long[] onStack = new long[nWords_];
+
+    // Tarjan's stack of states
+    int[] sccStack = new int[n];
+    int ssp = 0;
 
-        int ca = childFormula(root, 0);
-        int cb = childFormula(root, 1);
+    // dfs call stack: state, and position of next successor to examine
+    int[] callState = new int[n];
+    int[] callPos = new int[n];
+    int csp = 0;
 
-        boolean changed = true;
-        while (changed) {
-          changed = false;
-          for (int i = 0; i < m.states(); i++) {
-            int in = m.stateName(i);
+    int counter = 0;
 
-            if (getFlag(i, root)) {
-              continue;
+    for (int root = nextSet(sub, 0); root >= 0; root = nextSet(sub, root + 1)) {
+      if (index[root] != 0) {
+        continue;
+      }
+
+      index[root] = low[root] = ++counter;
+      sccStack[ssp++] = root;
+      set(onStack, root);
+      callState[csp] = root;
+      callPos[csp] = m.succStart(root);
+      csp++;
+
+      while (csp > 0) {
+        int v = callState[csp - 1];
+        int pos = callPos[csp - 1];
+
+        if (pos < m.succEnd(v)) {
+          callPos[csp - 1] = pos + 1;
+          int w = m.succ(pos);
+          if (!get(sub, w)) {
+            continue;
+          }
+          if (index[w] == 0) {
+            index[w] = low[w] = ++counter;
+            sccStack[ssp++] = w;
+            set(onStack, w);
+            callState[csp] = w;
+            callPos[csp] = m.succStart(w);
+            csp++;
+          }
+          else if (get(onStack, w)) {
+            low[v] = Math.min(low[v], index[w]);
+          }
+          continue;
+        }
+
+        // all successors of v examined; return to caller
+        csp--;
+        if (csp > 0) {
+          int u = callState[csp - 1];
+          low[u] = Math.min(low[u], low[v]);
+        }
+
+        if (low[v] != index[v]) {
+          continue;
+        }
+
+        // v is the root of a component; pop it (its states remain in
+        // sccStack[ssp ... ssp+size-1])
+        int size = 0;
+        int w;
+        do {
+          w = sccStack[--ssp];
+          clear(onStack, w);
+          size++;
+        }
+        while (w != v);
+
+        boolean nontrivial = size > 1;
+        if (!nontrivial) {
+          for (int j = m.succStart(v); j < m.succEnd(v); j++) {
+            if (m.succ(j) == v) {
+              nontrivial = true;
+              break;
             }
-            if (getFlag(i, cb)) {
-              changed = true;
-              markState(i, root);
-//							setFlag(i,root);
-              //						pr(("  +#%2d: %s\n",i,f_.s(root,true)));
-              continue;
+          }
+        }
+        if (nontrivial && fair) {
+          nontrivial = meetsFairSets(sccStack, ssp, size);
+        }
+        if (nontrivial) {
+          for (int k = 0; k < size; k++) {
+            set(out, sccStack[ssp + k]);
+            if (comp != null) {
+              comp[sccStack[ssp + k]] = v;
             }
+          }
+        }
+      }
+    }
+  }
 
-            // first part must be true in this state
-            if (!getFlag(i, ca)) {
-              continue;
-            }
+  /*	Determine if a strongly connected component contains a state
+                  from every fairness constraint
+                  > states					array containing the component's states
+                  > start, size			location of component in array
+   */
+  private boolean meetsFairSets(int[] states, int start, int size) {
+    Model m = model();
+    for (int k = 0; k < m.fairSets(); k++) {
+      long[] fs = m.fairStates(k);
+      boolean found = false;
+      for (int i = start; i < start + size; i++) {
+        if (get(fs, states[i])) {
+          found = true;
+          break;
+        }
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-            // check if second part is true in any successor
-            for (int j = m.degree(in) - 1; j >= 0; j--) {
-              int xs = m.next(in, j);
-              if (getFlag(m.stateId(xs, true), root)) {
-                changed = true;
-                markState(i, root);
-                break;
-              }
+  /*	If the model has fairness constraints, find the states that
+                  have a fair path (those satisfying EG true under fairness);
+                  the path quantifiers of the other connectives are then
+                  restricted to fair paths
+   */
+  private void findFairStates() {
+    fair_ = null;
+    if (model().fairSets() == 0) {
+      return;
+    }
+    long[] all = complement(new long[nWords_]);
+    long[] fair = new long[nWords_];
+    fairEG(all, fair, -1);
+    fair_ = fair;
+  }
+
+  /*	Find the states satisfying EG c under fairness constraints: those
+                  with a path through c-states that passes through every
+                  fairness constraint infinitely often
+                  > sub							states satisfying c
+                  > dest						where to store result
+                  > sf							subformula to record witness information for,
+                                     or -1
+   */
+  private void fairEG(long[] sub, long[] dest, int sf) {
+    if (sweep()) {
+      fairEGNested(sub, dest);
+    }
+    else {
+      int[] next = null, comp = null;
+      if (option(OPT_WITNESS) && sf >= 0) {
+        next = next_[sf] = witnessArray();
+        comp = comp_[sf] = witnessArray();
+      }
+      // restricted to c, the fair paths end up in nontrivial components
+      // that meet every constraint; propagate backwards from these
+      Arrays.fill(dest, 0);
+      nontrivialSCCs(sub, dest, true, comp);
+      propagateEG(sub, dest, next);
+    }
+  }
+
+  /*	Find the states satisfying EG c under fairness constraints, by
+                  Emerson and Lei's nested fixpoint:
+
+                    Z = c & (for each constraint F) EX E[c U (Z & F)]
+
+                  Quadratic in the worst case; used only for cross-checking
+                  the component-based method (OPT_SWEEP).
+                  > sub							states satisfying c
+                  > dest						where to store result
+   */
+  private void fairEGNested(long[] sub, long[] dest) {
+    Model m = model();
+    long[] z = copy(sub);
+    long[] y = new long[nWords_];
+
+    while (true) {
+      long[] z2 = copy(sub);
+      for (int k = 0; k < m.fairSets(); k++) {
+        euStates(sub, and(z, m.fairStates(k)), y, null);
+        for (int i = nextSet(z2, 0); i >= 0; i = nextSet(z2, i + 1)) {
+          boolean anyNb = false;
+          for (int j = m.succEnd(i) - 1; j >= m.succStart(i); j--) {
+            if (get(y, m.succ(j))) {
+              anyNb = true;
+              break;
             }
           }
+          if (!anyNb) {
+            clear(z2, i);
+          }
+        }
+      }
+      if (Arrays.equals(z, z2)) {
+        break;
+      }
+      z = z2;
+    }
+    System.arraycopy(z, 0, dest, 0, nWords_);
+  }
+
+  /*	Mark states satisfying AF c under fairness constraints, as the
+                  complement of EG !c
+                  > sf							index of AF subformula
+   */
+  private void markFairAF(int sf) {
+    long[] eg = new long[nWords_];
+    fairEG(complement(labels_[sfChild0_[sf]]), eg, sf);
+    System.arraycopy(complement(eg), 0, labels_[sf], 0, nWords_);
+  }
+
+  /*	Make a copy of a set of states
+   */
+  private long[] copy(long[] a) {
+    long[] r = new long[nWords_];
+    System.arraycopy(a, 0, r, 0, nWords_);
+    return r;
+  }
+
+  /*	Calculate the intersection of two sets of states
+   */
+  private long[] and(long[] a, long[] b) {
+    long[] r = new long[nWords_];
+    for (int w = 0; w < nWords_; w++) {
+      r[w] = a[w] & b[w];
+    }
+    return r;
+  }
+
+  /*	Calculate the complement of a set of states
+   */
+  private long[] complement(long[] a) {
+    long[] r = new long[nWords_];
+    for (int w = 0; w < nWords_; w++) {
+      r[w] = ~a[w];
+    }
+    int extra = model().states() & 63;
+    if (extra != 0) {
+      r[nWords_ - 1] &= (1L << extra) - 1;
+    }
+    return r;
+  }
+
+  /*	Mark states satisfying AF c by sweeping over every state until
+                  no more changes occur.  Quadratic in the worst case; used only
+                  for cross-checking markAF (OPT_SWEEP).
+                  > sf							index of AF subformula
+   */
+  private void sweepAF(int sf) {
+    Model m = model();
+    long[] c = labels_[sfChild0_[sf]];
+    long[] dest = labels_[sf];
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 0; i < m.states(); i++) {
+        if (get(dest, i)) {
+          continue;
+        }
+        if (get(c, i)) {
+          changed = true;
+          set(dest, i);
+          continue;
+        }
+
+        boolean allNb = true;
+        for (int j = m.succEnd(i) - 1; j >= m.succStart(i); j--) {
+          if (!get(dest, m.succ(j))) {
+            allNb = false;
+            break;
+          }
+        }
+        if (allNb) {
+          changed = true;
+          set(dest, i);
+        }
+      }
+    }
+  }
+
+  /*	Mark states satisfying EG c by repeatedly discarding c-states
+                  that have no successor remaining in the candidate set, until
+                  no more changes occur.  Quadratic in the worst case; used only
+                  for cross-checking markEG (OPT_SWEEP).
+                  > sf							index of EG subformula
+   */
+  private void sweepEG(int sf) {
+    Model m = model();
+    long[] dest = labels_[sf];
+    System.arraycopy(labels_[sfChild0_[sf]], 0, dest, 0, nWords_);
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = nextSet(dest, 0); i >= 0; i = nextSet(dest, i + 1)) {
+        boolean anyNb = false;
+        for (int j = m.succEnd(i) - 1; j >= m.succStart(i); j--) {
+          if (get(dest, m.succ(j))) {
+            anyNb = true;
+            break;
+          }
+        }
+        if (!anyNb) {
+          changed = true;
+          clear(dest, i);
+        }
+      }
+    }
+  }
+
+  /*	Mark states satisfying E[a U b] by sweeping over every state until
+                  no more changes occur.  Quadratic in the worst case; used only
+                  for cross-checking markEU (OPT_SWEEP).
+                  > sf							index of EU subformula
+   */
+  private void sweepEU(int sf) {
+    Model m = model();
+    long[] ca = labels_[sfChild0_[sf]];
+    long[] cb = labels_[sfChild1_[sf]];
+    long[] dest = labels_[sf];
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 0; i < m.states(); i++) {
+        if (get(dest, i)) {
+          continue;
+        }
+        if (get(cb, i) && (fair_ == null || get(fair_, i))) {
+          changed = true;
+          set(dest, i);
+          continue;
+        }
+
+        // first part must be true in this state
+        if (!get(ca, i)) {
+          continue;
+        }
+
+        // check if second part is true in any successor
+        for (int j = m.succEnd(i) - 1; j >= m.succStart(i); j--) {
+          if (get(dest, m.succ(j))) {
+            changed = true;
+            set(dest, i);
+            break;
+          }
         }
       }
-      break;
     }
   }
 
@@ -249,10 +909,9 @@ class CTLCheck
     }
 
     // determine if this formula already exists in list
-    for (int i = 0; i < sfOrder_.length(); i++) {
-      if (sfOrder_.getInt(i) == root) {
-        return;
-      }
+    int cls = sfClasses_.get(root, -1);
+    if (classReps_.get(cls, -1) == root) {
+      return;
     }
 
     // process child nodes first
@@ -261,13 +920,11 @@ class CTLCheck
       extractSubformulas(f_.child(root, i));
     }
 
-    int alias = root;
     // determine if subformula is identical to an existing one
-    for (int i = 0; i < sfOrder_.length(); i++) {
-      if (f_.equal(root, sfOrder_.getInt(i))) {
-        alias = sfOrder_.getInt(i);
-        break;
-      }
+    int alias = classReps_.get(cls, -1);
+    if (alias < 0) {
+      alias = root;
+      classReps_.put(cls, root);
     }
 
     sfAlias_.setInt(root, alias);
@@ -280,36 +937,413 @@ class CTLCheck
   }
 
   private void extractSubformulas() {
+    sfClasses_ = f_.nodeClasses();
+    classReps_.clear();
     extractSubformulas( -1);
   }
 
-  /*	Mark state
-                  > state						id of state
+  /*	Build tables describing each subformula in evaluation order:
+                  its connective, the positions of its children, and for prop.
+                  vars, the variable id.  Warnings about variables not used in
+                  the model are printed here.
+   */
+  private void buildTables() {
+    Model m = model();
+    int n = sfOrder_.length();
+
+    sfType_ = new int[n];
+    sfChild0_ = new int[n];
+    sfChild1_ = new int[n];
+    sfVar_ = new int[n];
+    labels_ = new long[n][];
+
+    for (int sf = 0; sf < n; sf++) {
+      int root = sfOrder_.getInt(sf);
+      sfPos_.setInt(root, sf);
+
+      int type = f_.nType(root);
+      sfType_[sf] = type;
+      int nc = f_.nChildren(root);
+      sfChild0_[sf] = nc > 0 ? sfPos_.getInt(childFormula(root, 0)) : -1;
+      sfChild1_[sf] = nc > 1 ? sfPos_.getInt(childFormula(root, 1)) : -1;
+      sfVar_[sf] = -1;
+
+      if (type == T_PROPVAR) {
+        Token t = f_.token(root);
+        int var = env.vars.var(t.text(), true);
+        sfVar_[sf] = var;
+        if (!m.propVarUsed(var)) {
+          if (!pvWarn_.get(var)) {
+            pvWarn_.set(var);
+            warn("Warning: Variable '" + t.text() + "' not used in model");
+          }
+        }
+      }
+    }
+  }
+
+  /*	Count, for each subformula, the number of references to it from
+                  the subformulas that are to be evaluated.  The final
+                  subformula gets an extra reference so it's never recycled.
    */
-  private void markState(int state, int root) {
-    setFlag(state, root);
-    if (showProgress_) {
-      Streams.out.println("  +" + Tools.f(model_.stateName(state), 2) + ": " +
-                          f_.toString(root));
+  private void countReferences() {
+    int n = sfOrder_.length();
+    refCount_ = new int[n];
+    for (int sf = 0; sf < n; sf++) {
+      if (sfChild0_[sf] >= 0) {
+        refCount_[sfChild0_[sf]]++;
+      }
+      if (sfChild1_[sf] >= 0) {
+        refCount_[sfChild1_[sf]]++;
+      }
     }
+    refCount_[n - 1]++;
   }
 
-  /*	Set flag for state
-                  > state						id of state
-                  > fi							bit to set
+  /*	Drop a subformula's references to its children, and recycle the
+                  vectors of any children no longer referenced
+                  > sf							subformula that has just been evaluated
    */
-  private void setFlag(int state, int fi) {
-    BitSet bf = stateFlag(state);
-    bf.set(fi);
+  private synchronized void releaseChildren(int sf) {
+    if (!recycle_) {
+      return;
+    }
+    release(sfChild0_[sf]);
+    release(sfChild1_[sf]);
   }
 
-  /*	Read flag for state
-                  > state						id of state
-                  > fi							bit to read
+  /*	Drop a reference to a subformula, and recycle its vector if
+                  it's no longer referenced
+                  > sf							index of subformula, or -1
    */
-  private boolean getFlag(int state, int fi) {
-    BitSet bf = stateFlag(state);
-    return bf.get(fi);
+  private void release(int sf) {
+    if (sf >= 0 && --refCount_[sf] == 0) {
+      freeVectors_.push(labels_[sf]);
+      labels_[sf] = null;
+    }
+  }
+
+  /*	Get an empty bit vector, with a bit for each state
+   */
+  private synchronized long[] newVector() {
+    long[] v;
+    if (!freeVectors_.isEmpty()) {
+      v = (long[]) freeVectors_.pop();
+      Arrays.fill(v, 0);
+    }
+    else {
+      v = new long[nWords_];
+    }
+    return v;
+  }
+
+  /*	Get an array with an entry for each state, initially -1, for
+                  recording witness information
+   */
+  private int[] witnessArray() {
+    int[] a = new int[model().states()];
+    Arrays.fill(a, -1);
+    return a;
+  }
+
+  /*	Construct a path from a state that shows why the formula last
+                  checked is true there (a witness) or false (a counterexample).
+                  The check must have been performed with OPT_WITNESS set.
+                  > id							id of state
+                  < the path, as a list of state names, with the repeating
+                      part of a lasso in {}*; null if the path consists of
+                      the state alone
+   */
+  public String witness(int id) {
+    DArray path = new DArray();
+    int rep = witness(id, path);
+    if (path.length() < 2 && rep < 0) {
+      return null;
+    }
+
+    StringBuffer sb = new StringBuffer();
+    for (int i = 0; i < path.length(); i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      if (i == rep) {
+        sb.append('{');
+      }
+      sb.append(path.get(i));
+    }
+    if (rep >= 0) {
+      sb.append("}*");
+    }
+    return sb.toString();
+  }
+
+  /*	Construct a witness or counterexample path from a state, as
+                  witness() does
+                  > id							id of state
+                  > path						names of states along path are appended
+                                      here, as Strings
+                  < position in path where the repeating part of a lasso
+                      starts, or -1 if path doesn't end in a lasso
+   */
+  public int witness(int id, DArray path) {
+    int sf = sfOrder_.length() - 1;
+    DArray ids = new DArray();
+    int rep = explain(sf, id, get(labels_[sf], id), ids);
+    for (int i = 0; i < ids.length(); i++) {
+      path.add("" + model().stateName(ids.getInt(i)));
+    }
+    return rep;
+  }
+
+  /*	Extend a path to show why a subformula is true or false in a
+                  state.  Paths are built for the existential connectives when
+                  true, and for their duals when false; otherwise the path ends
+                  at the state.
+                  > sf							index of subformula
+                  > s								id of state
+                  > pos							true if subformula is true in the state
+                  > path						path to append states to
+                  < position in path where the repeating part of a lasso starts,
+                      or -1 if path doesn't end in a lasso
+   */
+  private int explain(int sf, int s, boolean pos, DArray path) {
+    Model m = model();
+    int c0 = sfChild0_[sf], c1 = sfChild1_[sf];
+
+    switch (sfType_[sf]) {
+      case T_NEGATION:
+        return explain(c0, s, !pos, path);
+
+      case T_AND: {
+        // if true, show the first conjunct that has a path;
+        // if false, a conjunct that's false
+        int c = c0;
+        if (pos ? !hasPath(c0) : get(labels_[c0], s)) {
+          c = c1;
+        }
+        return explain(c, s, pos, path);
+      }
+
+      case T_EX:
+        path.addInt(s);
+        if (pos) {
+          for (int j = m.succStart(s); j < m.succEnd(s); j++) {
+            int t = m.succ(j);
+            if (get(labels_[c0], t) && (fair_ == null || get(fair_, t))) {
+              return explain(c0, t, true, path);
+            }
+          }
+        }
+        break;
+
+      case T_EXISTS_UNTIL:
+        if (pos) {
+          while (next_[sf][s] >= 0) {
+            path.addInt(s);
+            s = next_[sf][s];
+          }
+          return explain(c1, s, true, path);
+        }
+        path.addInt(s);
+        break;
+
+      case T_EG:
+        if (pos) {
+          return lasso(sf, s, path);
+        }
+        path.addInt(s);
+        break;
+
+      case T_AF:
+        if (!pos) {
+          if (fair_ != null) {
+            // the witness for EG !c was recorded
+            return lasso(sf, s, path);
+          }
+          // follow states that don't satisfy AF c until one repeats;
+          // each has a successor that doesn't
+          IntIntMap seen = new IntIntMap();
+          while (!seen.containsKey(s)) {
+            seen.put(s, path.length());
+            path.addInt(s);
+            for (int j = m.succStart(s); j < m.succEnd(s); j++) {
+              if (!get(labels_[sf], m.succ(j))) {
+                s = m.succ(j);
+                break;
+              }
+            }
+          }
+          return seen.get(s, -1);
+        }
+        path.addInt(s);
+        break;
+
+      default:
+        path.addInt(s);
+        break;
+    }
+    return -1;
+  }
+
+  /*	Determine if a subformula contains an existential connective,
+                  so explain() may produce a path for it
+   */
+  private boolean hasPath(int sf) {
+    switch (sfType_[sf]) {
+      case T_NEGATION:
+        return hasPath(sfChild0_[sf]);
+      case T_AND:
+        return hasPath(sfChild0_[sf]) || hasPath(sfChild1_[sf]);
+      case T_EX:
+      case T_EXISTS_UNTIL:
+      case T_EG:
+      case T_AF:
+        return true;
+    }
+    return false;
+  }
+
+  /*	Append a lasso for an EG subformula (or the EG !c computed for
+                  AF c under fairness): a shortest path to a component in which
+                  the subformula holds forever, followed by a cycle within it
+                  that passes through every fairness constraint
+                  > sf							index of subformula
+                  > s								id of starting state
+                  > path						path to append to
+                  < position in path where the cycle starts
+   */
+  private int lasso(int sf, int s, DArray path) {
+    int[] next = next_[sf], comp = comp_[sf];
+    while (comp[s] < 0) {
+      path.addInt(s);
+      s = next[s];
+    }
+
+    int rep = path.length();
+    path.addInt(s);
+    int cur = s;
+    if (fair_ != null) {
+      Model m = model();
+      for (int k = 0; k < m.fairSets(); k++) {
+        cur = pathWithin(cur, m.fairStates(k), -1, comp, path);
+      }
+    }
+    pathWithin(cur, null, s, comp, path);
+
+    // the cycle ends where it began
+    path.pop();
+    return rep;
+  }
+
+  /*	Append a shortest path, within a strongly connected component,
+                  from a state to a target
+                  > from						id of starting state
+                  > targets					if not null, the target states; if from is a
+                                     target, nothing is appended
+                  > target					if targets is null, the target state; the path
+                                     has at least one transition
+                  > comp						component numbers
+                  > path						path to append to (excluding from)
+                  < the target state reached
+   */
+  private int pathWithin(int from, long[] targets, int target, int[] comp,
+                         DArray path) {
+    if (targets != null && get(targets, from)) {
+      return from;
+    }
+    Model m = model();
+
+    // predecessor of each state reached by the search
+    IntIntMap parent = new IntIntMap();
+    DArray queue = new DArray();
+    queue.addInt(from);
+    parent.put(from, from);
+
+    for (int head = 0; ; head++) {
+      int s = queue.getInt(head);
+      for (int j = m.succStart(s); j < m.succEnd(s); j++) {
+        int t = m.succ(j);
+        if (comp[t] != comp[from]) {
+          continue;
+        }
+        if (targets != null ? get(targets, t) : t == target) {
+          DArray seg = new DArray();
+          for (int u = s; u != from; u = parent.get(u, -1)) {
+            seg.addInt(u);
+          }
+          for (int i = seg.length() - 1; i >= 0; i--) {
+            path.addInt(seg.getInt(i));
+          }
+          path.addInt(t);
+          return t;
+        }
+        if (!parent.containsKey(t)) {
+          parent.put(t, s);
+          queue.addInt(t);
+        }
+      }
+    }
+  }
+
+  /*	Print the states satisfying a subformula
+                  > sf							index of subformula in evaluation order
+   */
+  private void printMarked(int sf) {
+    if (out_ == null) {
+      return;
+    }
+    long[] v = labels_[sf];
+    String str = f_.toString(sfOrder_.getInt(sf));
+    for (int i = nextSet(v, 0); i >= 0; i = nextSet(v, i + 1)) {
+      out_.println("  +" + Tools.f(model_.stateName(i), 2) + ": " +
+                          str);
+    }
+  }
+
+  /*	Read bit from vector
+                  > v								bit vector
+                  > i								index of bit
+   */
+  private static boolean get(long[] v, int i) {
+    return (v[i >> 6] & (1L << i)) != 0;
+  }
+
+  /*	Set bit in vector
+                  > v								bit vector
+                  > i								index of bit
+   */
+  private static void set(long[] v, int i) {
+    v[i >> 6] |= 1L << i;
+  }
+
+  /*	Clear bit in vector
+                  > v								bit vector
+                  > i								index of bit
+   */
+  private static void clear(long[] v, int i) {
+    v[i >> 6] &= ~ (1L << i);
+  }
+
+  /*	Find next set bit in vector
+                  > v								bit vector
+                  > i								index to start search at
+                  < index of next set bit >= i, or -1 if none
+   */
+  private static int nextSet(long[] v, int i) {
+    int w = i >> 6;
+    if (w >= v.length) {
+      return -1;
+    }
+    long word = v[w] & ( -1L << i);
+    while (true) {
+      if (word != 0) {
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++w == v.length) {
+        return -1;
+      }
+      word = v[w];
+    }
   }
 
   /*	Get child node; translate by alias if required
@@ -332,18 +1366,67 @@ class CTLCheck
   // order of subformulas to check
   private DArray sfOrder_ = new DArray();
 
-  // flags for each state in model
-  private DArray stateFlags_ = new DArray();
-  private BitSet stateFlag(int i) {
-    return (BitSet) stateFlags_.get(i);
-  }
+  // class of each node of formula, where identical subformulas are in
+  // the same class (see Formula.nodeClasses), and the first subformula
+  // in sfOrder_ of each class
+  private IntIntMap sfClasses_;
+  private IntIntMap classReps_ = new IntIntMap();
+
+  // position of each subformula in sfOrder_ (indexed by node id)
+  private DArray sfPos_ = new DArray();
+
+  // for each subformula in sfOrder_:  its connective (token id), the
+  // positions of its (aliased) children in sfOrder_, or -1, and for
+  // prop. vars, the variable id
+  private int[] sfType_, sfChild0_, sfChild1_, sfVar_;
+
+  // satisfaction set of each subformula in sfOrder_: a bit vector with
+  // a bit for each state; null if not evaluated yet, or recycled
+  private long[][] labels_;
+
+  // states with a fair path, if the model has fairness constraints;
+  // otherwise null
+  private long[] fair_;
+
+  // when OPT_WITNESS is set:  for each EU and EG subformula (and AF,
+  // if the model has fairness constraints), the successor of each state
+  // on a shortest path towards the target (the b-states for EU, the
+  // components of comp_ for EG), or -1
+  private int[][] next_;
+  // for each EG subformula (and AF, as above), the component number of
+  // each state in a nontrivial component where it holds forever, or -1
+  private int[][] comp_;
+
+  // number of words in each bit vector
+  private int nWords_;
+
+  // true if vectors are to be recycled
+  private boolean recycle_;
+
+  // number of unevaluated subformulas referring to each subformula
+  private int[] refCount_;
+
+  // tasks for evaluating each subformula, when OPT_PARALLEL set
+  private EvalTask[] tasks_;
+
+  // number of words of a vector to compute in a single task
+  private static final int GRAIN_WORDS = 1024;
+
+  // vectors of subformulas no longer referenced, available for reuse
+  private DArray freeVectors_ = new DArray();
 
   // flags indicating which vars we've printed warnings about
   private BitSet pvWarn_ = new BitSet();
 
   // symbol table
   private Environment env;
+  // where output is printed; null to print nothing
+  private PrintStream out_ = Streams.out;
+  // warnings produced by the last check
+  private DArray warnings_ = new DArray();
 
   // true if we're to display formulas as they're marked in states
   private boolean showProgress_;
+
+  private int options_;
 }
@@ -0,0 +1,219 @@
+package mcheck;
+
+import base.*;
+
+/**
+ * The result of checking a formula against a model, or of comparing two
+ * LTL formulas.  A result is complete when it's returned, and isn't
+ * modified afterwards, so it can be passed freely between threads.
+ *
+ * A result may include up to two paths, each a sequence of labels of
+ * model states (or, for comparisons, of the prop. var values read), whose
+ * final part may be repeated forever:
+ *
+ *   LTL check:  path 0 is a counterexample, if the formula isn't satisfied
+ *   CTL check:  path 0 is a witness or counterexample from the first
+ *               failing start state (or the first start state, if none
+ *               fail), if one was requested
+ *   comparison: path 0 is allowed by the first formula but not the
+ *               second; path 1 by the second but not the first
+ */
+public class CheckResult {
+
+  public static final int
+      CTL = 0,
+      LTL = 1,
+      COMPARE = 2;
+
+  /**
+   * Constructor
+   * @param kind : CTL, LTL, or COMPARE
+   * @param formula : formula checked (or both formulas compared, separated
+   *   by " : ")
+   */
+  CheckResult(int kind, String formula) {
+    kind_ = kind;
+    formula_ = formula;
+  }
+
+  /**
+   * Get the kind of check performed
+   * @return CTL, LTL, or COMPARE
+   */
+  public int kind() {
+    return kind_;
+  }
+
+  /**
+   * Get the formula checked
+   * @return String
+   */
+  public String formula() {
+    return formula_;
+  }
+
+  /**
+   * Get the verdict
+   * @return true if every start state satisfies the formula (or for a
+   *   comparison, if the formulas are equivalent)
+   */
+  public boolean holds() {
+    return holds_;
+  }
+
+  /**
+   * Get the start states that don't satisfy the formula (CTL only)
+   * @return names of states, in increasing order; empty if none (or if
+   *   not a CTL check)
+   */
+  public int[] failedStates() {
+    return failed_.clone();
+  }
+
+  /**
+   * Get a path
+   * @param i : index of path (0 or 1)
+   * @return labels of states along path, or null if there is no such path
+   */
+  public String[] path(int i) {
+    return paths_[i] == null ? null : paths_[i].clone();
+  }
+
+  /**
+   * Get the position where the repeating part of a path starts
+   * @param i : index of path (0 or 1)
+   * @return index of first label in repeating part, or -1 if path doesn't
+   *   repeat (or doesn't exist)
+   */
+  public int loopStart(int i) {
+    return loops_[i];
+  }
+
+  /**
+   * Get the number of states the check explored:  for LTL checks and
+   * comparisons, the product automaton states generated by the emptiness
+   * search(es); for CTL checks, the model's states
+   * @return int
+   */
+  public int statesExplored() {
+    return explored_;
+  }
+
+  /**
+   * Get the time taken by the check
+   * @return milliseconds
+   */
+  public long millis() {
+    return millis_;
+  }
+
+  /**
+   * Get any warnings produced by the check (e.g., about prop. vars that
+   * the model doesn't use)
+   * @return array of messages
+   */
+  public String[] warnings() {
+    return warnings_.clone();
+  }
+
+  /**
+   * Format a path as mch prints it:  labels separated by spaces, with the
+   * repeating part in {}*
+   * @param i : index of path
+   * @return String, or null if there is no such path
+   */
+  public String pathString(int i) {
+    String[] p = paths_[i];
+    if (p == null) {
+      return null;
+    }
+    StringBuffer sb = new StringBuffer();
+    for (int j = 0; j < p.length; j++) {
+      if (j > 0) {
+        sb.append(' ');
+      }
+      if (j == loops_[i]) {
+        sb.append('{');
+      }
+      sb.append(p[j]);
+    }
+    if (loops_[i] >= 0) {
+      sb.append("}*");
+    }
+    return sb.toString();
+  }
+
+  public String toString() {
+    StringBuffer sb = new StringBuffer();
+    sb.append(formula_);
+    sb.append(": ");
+    switch (kind_) {
+      case COMPARE:
+        sb.append(holds_ ? "equivalent" : "not equivalent");
+        break;
+      default:
+        sb.append(holds_ ? "satisfied" : "not satisfied");
+        break;
+    }
+    for (int i = 0; i < paths_.length; i++) {
+      if (paths_[i] != null) {
+        sb.append("\n  ");
+        sb.append(pathString(i));
+      }
+    }
+    return sb.toString();
+  }
+
+  // the following are set by the checkers that construct the result
+
+  void setHolds(boolean f) {
+    holds_ = f;
+  }
+
+  void setFailedStates(OrdSet names) {
+    failed_ = new int[names.length()];
+    for (int i = 0; i < failed_.length; i++) {
+      failed_[i] = names.get(i);
+    }
+  }
+
+  /**
+   * Set a path
+   * @param i : index of path
+   * @param labels : labels of states (Strings)
+   * @param loop : index of first label in repeating part, or -1
+   */
+  void setPath(int i, DArray labels, int loop) {
+    paths_[i] = new String[labels.length()];
+    for (int j = 0; j < labels.length(); j++) {
+      paths_[i][j] = (String) labels.get(j);
+    }
+    loops_[i] = loop;
+  }
+
+  void addExplored(int n) {
+    explored_ += n;
+  }
+
+  void setMillis(long ms) {
+    millis_ = ms;
+  }
+
+  void setWarnings(DArray w) {
+    warnings_ = new String[w.length()];
+    for (int i = 0; i < warnings_.length; i++) {
+      warnings_[i] = (String) w.get(i);
+    }
+  }
+
+  private int kind_;
+  private String formula_;
+  private boolean holds_;
+  private int[] failed_ = new int[0];
+  private String[][] paths_ = new String[2][];
+  private int[] loops_ = {
+      -1, -1};
+  private int explored_;
+  private long millis_;
+  private String[] warnings_ = new String[0];
+}
@@ -0,0 +1,315 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+
+/**
+ * Answers check and compare requests over a local socket, against models
+ * that stay loaded between requests; so the cost of starting the JVM,
+ * loading the tokenizer, and parsing each model is paid once, instead of
+ * once per check.
+ *
+ * Clients connect to the loopback address.  Each connection is served by
+ * its own thread, and its requests are answered in order.  A request is a
+ * single line:
+ *
+ *   define <name> <model>          define a model; e.g. define m { >0 1 p 1 0 q }
+ *   drop <name>                    discard a model
+ *   list                           list the models, and their numbers of states
+ *   check <name> {-<opt>}* <form>  check a CTL or LTL formula against a model;
+ *                                    opts are w (witness), d (bdd), j (parallel),
+ *                                    n (nested)
+ *   compare <form> : <form>        compare two LTL formulas
+ *   quit                           close the connection
+ *   shutdown                       stop the server
+ *
+ * Defining a model replaces any existing model of the same name; checks
+ * already in progress on the old one are unaffected.  Models in files are
+ * loaded when the server is started (see mch --serve), not by requests, so
+ * clients can't make the server read arbitrary files.
+ *
+ * Each response is one or more lines, followed by an empty line.  The
+ * first line is "ok", followed by the verdict if any, or "error", followed
+ * by a message.  For checks and comparisons, it may be followed by:
+ *
+ *   failed <state>*                start states not satisfying a CTL formula
+ *   path <path>                    a counterexample or witness, as mch prints it
+ *   warning <message>
+ *   stats <states explored> <milliseconds>
+ */
+public class CheckServer {
+
+  /**
+   * Constructor
+   * @param port : port to listen on; if 0, one is chosen
+   */
+  public CheckServer(int port) throws IOException {
+    socket_ = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+  }
+
+  /**
+   * Get the port the server is listening on
+   * @return int
+   */
+  public int port() {
+    return socket_.getLocalPort();
+  }
+
+  /**
+   * Add a model, replacing any existing one of the same name
+   * @param name : name of model
+   * @param c : Checker for the model
+   */
+  public void define(String name, Checker c) {
+    models_.put(name, c);
+  }
+
+  /**
+   * Accept connections until a shutdown request is received
+   */
+  public void serve() throws IOException {
+    // a failed assertion while answering a request is reported to the
+    // client, rather than ending the server
+    Tools.setExitOnAssert(false);
+    ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      while (true) {
+        final Socket s;
+        try {
+          s = socket_.accept();
+        }
+        catch (SocketException e) {
+          // socket was closed by a shutdown request
+          if (socket_.isClosed()) {
+            break;
+          }
+          throw e;
+        }
+        pool.execute(new Runnable() {
+          public void run() {
+            try {
+              serve(s);
+            }
+            catch (IOException e) {
+              // connection lost; nothing to report it to
+            }
+            finally {
+              try {
+                s.close();
+              }
+              catch (IOException e) {
+              }
+            }
+          }
+        });
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Answer the requests of a single connection
+   * @param s : socket of connection
+   */
+  private void serve(Socket s) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(s.
+        getInputStream(), "UTF-8"));
+    PrintWriter out = new PrintWriter(new BufferedWriter(new
+        OutputStreamWriter(s.getOutputStream(), "UTF-8")));
+    while (true) {
+      String line = in.readLine();
+      if (line == null) {
+        break;
+      }
+      line = line.trim();
+      if (line.length() == 0) {
+        continue;
+      }
+      String cmd = word(line);
+      String rest = line.substring(cmd.length()).trim();
+      if (cmd.equals("quit")) {
+        break;
+      }
+      if (cmd.equals("shutdown")) {
+        out.print("ok\n\n");
+        out.flush();
+        socket_.close();
+        break;
+      }
+
+      DArray resp = new DArray();
+      try {
+        request(cmd, rest, resp);
+      }
+      catch (RuntimeException e) {
+        error(e, resp);
+      }
+      for (int i = 0; i < resp.length(); i++) {
+        out.print(resp.get(i));
+        out.print('\n');
+      }
+      out.print('\n');
+      out.flush();
+    }
+  }
+
+  /**
+   * Process a request
+   * @param cmd : command (first word of request)
+   * @param rest : remainder of request
+   * @param resp : lines of response are added here
+   */
+  private void request(String cmd, String rest, DArray resp) {
+    if (cmd.equals("define")) {
+      String name = word(rest);
+      String arg = rest.substring(name.length()).trim();
+      if (name.length() == 0 || arg.length() == 0) {
+        throw new IllegalArgumentException("Missing name or model");
+      }
+      Checker c = new Checker(arg);
+      define(name, c);
+      resp.add("ok " + c.states() + " states");
+    }
+    else if (cmd.equals("drop")) {
+      if (models_.remove(rest) == null) {
+        throw new IllegalArgumentException("No such model: " + rest);
+      }
+      resp.add("ok");
+    }
+    else if (cmd.equals("list")) {
+      resp.add("ok " + models_.size() + " models");
+      for (Map.Entry<String, Checker> e :
+           new TreeMap<String, Checker>(models_).entrySet()) {
+        resp.add(e.getKey() + " " + e.getValue().states());
+      }
+    }
+    else if (cmd.equals("check")) {
+      String name = word(rest);
+      Checker c = models_.get(name);
+      if (c == null) {
+        throw new IllegalArgumentException("No such model: " + name);
+      }
+      rest = rest.substring(name.length()).trim();
+      int options = 0;
+      while (rest.startsWith("-") && !rest.startsWith("--")) {
+        String opt = word(rest);
+        for (int i = 1; i < opt.length(); i++) {
+          switch (opt.charAt(i)) {
+            case 'w':
+              options |= Checker.OPT_WITNESS;
+              break;
+            case 'd':
+              options |= Checker.OPT_SYMBOLIC;
+              break;
+            case 'j':
+              options |= Checker.OPT_PARALLEL;
+              break;
+            case 'n':
+              options |= Checker.OPT_NESTED;
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown option: " + opt);
+          }
+        }
+        rest = rest.substring(opt.length()).trim();
+      }
+      result(c.check(rest, options), resp);
+    }
+    else if (cmd.equals("compare")) {
+      int sep = rest.indexOf(':');
+      if (sep < 0) {
+        throw new IllegalArgumentException("Missing ':'");
+      }
+      result(compareChecker_.compare(rest.substring(0, sep),
+                                     rest.substring(sep + 1)), resp);
+    }
+    else {
+      throw new IllegalArgumentException("Unknown request: " + cmd);
+    }
+  }
+
+  /**
+   * Add the lines describing a result to a response
+   * @param r : CheckResult
+   * @param resp : response
+   */
+  private static void result(CheckResult r, DArray resp) {
+    if (r.kind() == CheckResult.COMPARE) {
+      resp.add(r.holds() ? "ok equivalent" : "ok not equivalent");
+    }
+    else {
+      resp.add(r.holds() ? "ok satisfied" : "ok not satisfied");
+    }
+    int[] failed = r.failedStates();
+    if (failed.length > 0) {
+      StringBuffer sb = new StringBuffer("failed");
+      for (int i = 0; i < failed.length; i++) {
+        sb.append(' ');
+        sb.append(failed[i]);
+      }
+      resp.add(sb.toString());
+    }
+    for (int i = 0; i < 2; i++) {
+      if (r.path(i) != null) {
+        resp.add("path " + r.pathString(i));
+      }
+    }
+    String[] w = r.warnings();
+    for (int i = 0; i < w.length; i++) {
+      resp.add("warning " + w[i]);
+    }
+    resp.add("stats " + r.statesExplored() + " " + r.millis());
+  }
+
+  /**
+   * Add the lines describing an error to a response; lines of the
+   * message that are empty are omitted, since an empty line ends the
+   * response
+   * @param e : exception describing error
+   * @param resp : response
+   */
+  private static void error(Exception e, DArray resp) {
+    String msg = e.getMessage();
+    if (msg == null) {
+      msg = e.toString();
+    }
+    String prefix = "error ";
+    StringTokenizer st = new StringTokenizer(msg, "\n");
+    while (st.hasMoreTokens()) {
+      String s = st.nextToken();
+      if (s.trim().length() == 0) {
+        continue;
+      }
+      resp.add(prefix + s);
+      prefix = "";
+    }
+    if (prefix.length() > 0) {
+      resp.add("error");
+    }
+  }
+
+  /**
+   * Get the first word of a string
+   * @param s : string, with no leading whitespace
+   * @return characters up to the first whitespace
+   */
+  private static String word(String s) {
+    int i = 0;
+    while (i < s.length() && !Character.isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    return s.substring(0, i);
+  }
+
+  private ServerSocket socket_;
+  // resident models, by name
+  private Map<String, Checker> models_ =
+      new ConcurrentHashMap<String, Checker>();
+  // for comparisons, which don't use a model
+  private Checker compareChecker_ = new Checker();
+}
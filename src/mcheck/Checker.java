@@ -0,0 +1,254 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * Checks formulas against a Kripke model, for use as a library.
+ *
+ * The model is parsed (or loaded) once, when the Checker is constructed,
+ * and is not modified afterwards.  Each call to check() or compare()
+ * constructs its own environment (with a copy of the model's prop. vars),
+ * formulas, and checkers, and prints nothing; so any number of threads may
+ * call them at once on the same Checker.  The outcome of each call is
+ * returned as a CheckResult.
+ */
+public class Checker
+    implements IScript {
+
+  public static final int OPT_WITNESS = 0x0001,
+      OPT_SYMBOLIC = 0x0002,
+      OPT_PARALLEL = 0x0004,
+      OPT_NESTED = 0x0008;
+
+  /**
+   * Constructor
+   * @param modelText : model definition, e.g. "{ >0 1 p 1 1 q }"
+   */
+  public Checker(String modelText) {
+    this(new StringReader(modelText), "");
+  }
+
+  /**
+   * Constructor
+   * @param r : reader to read model definition from
+   * @param description : name of source, for error messages
+   */
+  public Checker(Reader r, String description) {
+    env_ = new Environment();
+    env_.dfa = dfa();
+    model_ = new Model(env_);
+
+    base.Scanner scan = new base.Scanner(r, description, env_.dfa,
+                                         T_WHITESPACE);
+    if (!scan.peek().id(T_MODELOP)) {
+      throw new ScanException("Model definition expected", scan.peek());
+    }
+    model_.parse(scan);
+    if (!scan.eof()) {
+      throw new ScanException("Unexpected input after model", scan.peek());
+    }
+  }
+
+  /**
+   * Constructor, for a Checker without a model; it can only compare
+   * formulas
+   */
+  public Checker() {
+    env_ = new Environment();
+    env_.dfa = dfa();
+    model_ = new Model(env_);
+  }
+
+  /**
+   * Construct a Checker for a model saved in a binary file (see
+   * Model.write())
+   * @param f : file to read
+   * @return Checker
+   */
+  public static Checker load(File f) throws IOException {
+    Checker c = new Checker();
+    c.model_.read(f);
+    return c;
+  }
+
+  /**
+   * Save the model to a binary file, which load() can read
+   * @param f : file to write
+   */
+  public void save(File f) throws IOException {
+    if (!model_.defined()) {
+      throw new IllegalStateException("No model defined");
+    }
+    model_.write(f);
+  }
+
+  /**
+   * Get the number of states in the model
+   * @return int
+   */
+  public int states() {
+    return model_.states();
+  }
+
+  /**
+   * Check a formula against the model
+   * @param formula : CTL or LTL formula
+   * @return CheckResult
+   */
+  public CheckResult check(String formula) {
+    return check(formula, 0);
+  }
+
+  /**
+   * Check a formula against the model
+   * @param formula : CTL or LTL formula
+   * @param options : OPT_xxx flags
+   * @return CheckResult
+   */
+  public CheckResult check(String formula, int options) {
+    long start = System.currentTimeMillis();
+    if (!model_.defined()) {
+      throw new IllegalStateException("No model defined");
+    }
+    Environment env = environment();
+    Formula f = parse(env, formula);
+
+    if (f.isCTL() && !f.isLTL()) {
+      return checkCTL(env, f, options, start);
+    }
+    if (f.isLTL()) {
+      LTLCheck c = new LTLCheck(env,
+                                (options & OPT_NESTED) != 0
+                                ? LTLCheck.OPT_DEGENERALIZE : 0, 0);
+      c.setOutput(null);
+      return c.check(model_, f);
+    }
+    throw new IllegalArgumentException(
+        "Cannot check mixed CTL/LTL formula: " + formula);
+  }
+
+  /**
+   * Compare two LTL formulas; the model isn't used
+   * @param f1 : first formula
+   * @param f2 : second formula
+   * @return CheckResult
+   */
+  public CheckResult compare(String f1, String f2) {
+    Environment env = environment();
+    Formula g1 = parse(env, f1);
+    Formula g2 = parse(env, f2);
+    LTLCheck c = new LTLCheck(env, 0, 0);
+    c.setOutput(null);
+    return c.compare(g1, g2);
+  }
+
+  /**
+   * Check a CTL formula, as mch does
+   * @param env : environment for this check
+   * @param f : formula
+   * @param options : OPT_xxx flags
+   * @param start : time check started
+   * @return CheckResult
+   */
+  private CheckResult checkCTL(Environment env, Formula f, int options,
+                               long start) {
+    CheckResult r = new CheckResult(CheckResult.CTL, f.toString(false));
+    boolean witness = (options & OPT_WITNESS) != 0;
+
+    BitSet sat = new BitSet();
+    CTLCheck c = null;
+    if ( (options & OPT_SYMBOLIC) != 0 && !witness) {
+      SymbolicCTLCheck s = new SymbolicCTLCheck();
+      s.setOutput(null);
+      s.check(env, model_, f, sat, false, false);
+      r.setWarnings(s.warnings());
+    }
+    else {
+      c = new CTLCheck( ( (options & OPT_PARALLEL) != 0
+                         ? CTLCheck.OPT_PARALLEL : 0)
+                       | (witness ? CTLCheck.OPT_WITNESS : 0));
+      c.setOutput(null);
+      c.check(env, model_, f, sat, false, false);
+      r.setWarnings(c.warnings());
+    }
+
+    OrdSet is = model_.initialStates();
+    OrdSet failed = new OrdSet();
+    for (int i = 0; i < is.length(); i++) {
+      if (!sat.get(model_.stateId(is.get(i)))) {
+        failed.add(is.get(i));
+      }
+    }
+    r.setFailedStates(failed);
+    r.setHolds(failed.isEmpty());
+
+    // path from the first failing start state, or if there are none,
+    // from the first start state
+    if (witness && is.length() > 0) {
+      int iName = failed.isEmpty() ? is.get(0) : failed.get(0);
+      DArray path = new DArray();
+      int rep = c.witness(model_.stateId(iName), path);
+      if (path.length() >= 2 || rep >= 0) {
+        r.setPath(0, path, rep);
+      }
+    }
+
+    r.addExplored(model_.states());
+    r.setMillis(System.currentTimeMillis() - start);
+    return r;
+  }
+
+  /**
+   * Construct an environment for a single check
+   * @return Environment, with a copy of the model's prop. vars
+   */
+  private Environment environment() {
+    Environment env = new Environment();
+    env.dfa = env_.dfa;
+    env.vars = env_.vars.copy();
+    return env;
+  }
+
+  /**
+   * Parse a formula
+   * @param env : environment to parse it within
+   * @param s : formula
+   * @return Formula
+   */
+  private static Formula parse(Environment env, String s) {
+    base.Scanner scan = new base.Scanner(new StringReader(s), "", env.dfa,
+                                         T_WHITESPACE);
+    Formula f = new Formula(env, scan);
+    if (!scan.eof()) {
+      throw new ScanException("Unexpected input after formula", scan.peek());
+    }
+    return f;
+  }
+
+  /**
+   * Get the tokenizer, loading it if necessary; it's shared by all
+   * Checkers, since recognizing tokens doesn't modify it
+   * @return DFA
+   */
+  private static synchronized DFA dfa() {
+    if (dfa == null) {
+      try {
+        dfa = new DFA(Streams.openResource(Checker.class, "mcheck.dfa"));
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return dfa;
+  }
+
+  private static DFA dfa;
+
+  // environment the model was read within; its prop. vars aren't
+  // modified after construction
+  private Environment env_;
+  // the model; not modified after construction
+  private Model model_;
+}
@@ -0,0 +1,295 @@
+package mcheck;
+
+import java.util.*;
+
+/**
+ * A conjunction of literals (prop. vars, or their negations), used as the
+ * guard that the input read by a transition of a Buchi automaton must
+ * satisfy.  Cubes are immutable, so automata derived from one another can
+ * share them.
+ *
+ * The vars that appear are recorded in one bit vector, and the values
+ * they must have in another, so two cubes can be tested for compatibility
+ * a word at a time, without constructing their conjunction.  A var that
+ * has been required to be both true and false is recorded in a third
+ * vector; a cube containing such a var is unsatisfiable.
+ */
+class Cube {
+
+  /**
+   * Constructor, for a cube with no literals (i.e., true)
+   */
+  public Cube() {
+    care_ = value_ = EMPTY;
+  }
+
+  /**
+   * Construct a cube that assigns a value to each of a range of vars
+   * @param nVars : number of vars; vars 0..nVars-1 are assigned values
+   * @param words : bit vector of vars that are true; the rest are false
+   * @param offset : position of the vector's first word in the array
+   * @param len : number of words in the vector
+   * @return Cube
+   */
+  public static Cube valuation(int nVars, long[] words, int offset, int len) {
+    Cube c = new Cube();
+    int nw = words(nVars);
+    c.care_ = new long[nw];
+    c.value_ = new long[nw];
+    for (int w = 0; w < nw; w++) {
+      c.care_[w] = -1L;
+      if (w < len) {
+        c.value_[w] = words[offset + w];
+      }
+    }
+    if ( (nVars & 63) != 0) {
+      c.care_[nw - 1] = (1L << nVars) - 1;
+      c.value_[nw - 1] &= c.care_[nw - 1];
+    }
+    return c;
+  }
+
+  /**
+   * Construct the conjunction of this cube with a literal
+   * @param var : index of prop. var
+   * @param value : value it must have
+   * @return Cube
+   */
+  public Cube with(int var, boolean value) {
+    Cube d = new Cube();
+    d.care_ = care_.clone();
+    d.value_ = value_.clone();
+    if (conflict_ != null) {
+      d.conflict_ = conflict_.clone();
+    }
+    d.add(var, value);
+    return d;
+  }
+
+  /**
+   * Add a literal
+   * @param var : index of prop. var
+   * @param value : value it must have
+   */
+  private void add(int var, boolean value) {
+    int w = var >> 6;
+    long bit = 1L << var;
+    if (w >= care_.length) {
+      care_ = grow(care_, w + 1);
+      value_ = grow(value_, w + 1);
+    }
+    if ( (care_[w] & bit) != 0) {
+      if ( ( (value_[w] & bit) != 0) != value) {
+        if (conflict_ == null) {
+          conflict_ = new long[care_.length];
+        }
+        else if (w >= conflict_.length) {
+          conflict_ = grow(conflict_, care_.length);
+        }
+        conflict_[w] |= bit;
+      }
+      return;
+    }
+    care_[w] |= bit;
+    if (value) {
+      value_[w] |= bit;
+    }
+  }
+
+  /**
+   * Determine if cube contains a literal
+   * @param var : index of prop. var
+   * @param value : value of literal
+   * @return true if cube requires var to have value
+   */
+  public boolean literal(int var, boolean value) {
+    int w = var >> 6;
+    long bit = 1L << var;
+    if (w >= care_.length || (care_[w] & bit) == 0) {
+      return false;
+    }
+    if (conflict_ != null && w < conflict_.length
+        && (conflict_[w] & bit) != 0) {
+      return true;
+    }
+    return ( (value_[w] & bit) != 0) == value;
+  }
+
+  /**
+   * Get the number of vars the cube may refer to
+   * @return one more than the highest index of any var in the cube
+   */
+  public int length() {
+    for (int w = care_.length - 1; w >= 0; w--) {
+      if (care_[w] != 0) {
+        return (w << 6) + 64 - Long.numberOfLeadingZeros(care_[w]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the vars that appear in the cube
+   * @return BitSet
+   */
+  public BitSet vars() {
+    return BitSet.valueOf(care_);
+  }
+
+  /**
+   * Determine if cube is unsatisfiable; i.e., if it requires some var to
+   * be both true and false
+   * @return boolean
+   */
+  public boolean empty() {
+    return conflict_ != null;
+  }
+
+  /**
+   * Determine if the conjunction of this cube with another is satisfiable
+   * @param c : other cube
+   * @return boolean
+   */
+  public boolean compatible(Cube c) {
+    if (conflict_ != null || c.conflict_ != null) {
+      return false;
+    }
+    long[] c1 = care_, c2 = c.care_;
+    int nw = Math.min(c1.length, c2.length);
+    for (int w = 0; w < nw; w++) {
+      if ( (c1[w] & c2[w] & (value_[w] ^ c.value_[w])) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if the cube is satisfied by an assignment to a range of vars
+   * (i.e., if it's compatible with the cube constructed by valuation())
+   * @param nVars : number of vars; vars 0..nVars-1 are assigned values
+   * @param words : bit vector of vars that are true; the rest are false
+   * @param offset : position of the vector's first word in the array
+   * @param len : number of words in the vector
+   * @return boolean
+   */
+  public boolean consistent(int nVars, long[] words, int offset, int len) {
+    if (conflict_ != null) {
+      return false;
+    }
+    int last = words(nVars) - 1;
+    int nw = Math.min(care_.length, last + 1);
+    for (int w = 0; w < nw; w++) {
+      long care = care_[w];
+      if (w == last && (nVars & 63) != 0) {
+        care &= (1L << nVars) - 1;
+      }
+      long v = (w < len) ? words[offset + w] : 0;
+      if ( (care & (value_[w] ^ v)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if this cube implies another; i.e., if every literal of the
+   * other is a literal of this one
+   * @param c : other cube
+   * @return boolean
+   */
+  public boolean implies(Cube c) {
+    for (int w = 0; w < c.care_.length; w++) {
+      long cc = c.care_[w];
+      if (cc == 0) {
+        continue;
+      }
+      if (w >= care_.length) {
+        return false;
+      }
+      long both = word(conflict_, w);
+      long cBoth = word(c.conflict_, w);
+      // literals of c that this cube doesn't contain
+      long missing = (cc & ~care_[w])
+          | (cc & ~both & (value_[w] ^ c.value_[w]))
+          | (cBoth & ~both);
+      if (missing != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Construct the conjunction of this cube with another
+   * @param c : other cube
+   * @return Cube
+   */
+  public Cube and(Cube c) {
+    Cube d = new Cube();
+    int nw = Math.max(care_.length, c.care_.length);
+    d.care_ = new long[nw];
+    d.value_ = new long[nw];
+    long[] conflict = null;
+    for (int w = 0; w < nw; w++) {
+      long c1 = word(care_, w), c2 = word(c.care_, w);
+      long v1 = word(value_, w), v2 = word(c.value_, w);
+      d.care_[w] = c1 | c2;
+      d.value_[w] = v1 | v2;
+      long x = (c1 & c2 & (v1 ^ v2)) | word(conflict_, w)
+          | word(c.conflict_, w);
+      if (x != 0) {
+        if (conflict == null) {
+          conflict = new long[nw];
+        }
+        conflict[w] = x;
+      }
+    }
+    d.conflict_ = conflict;
+    return d;
+  }
+
+  /**
+   * Construct a copy of this cube, renumbering its vars
+   * @param varMap : new index of each var
+   * @return Cube
+   */
+  public Cube remap(int[] varMap) {
+    Cube d = new Cube();
+    for (int w = 0; w < care_.length; w++) {
+      for (long bits = care_[w]; bits != 0; bits &= bits - 1) {
+        int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+        boolean both = (word(conflict_, w) & (1L << v)) != 0;
+        boolean value = (value_[w] & (1L << v)) != 0;
+        d.add(varMap[v], value);
+        if (both) {
+          d.add(varMap[v], !value);
+        }
+      }
+    }
+    return d;
+  }
+
+  private static long word(long[] a, int w) {
+    return (a != null && w < a.length) ? a[w] : 0;
+  }
+
+  private static int words(int nBits) {
+    return (nBits + 63) >> 6;
+  }
+
+  private static long[] grow(long[] a, int len) {
+    long[] b = new long[Math.max(len, a.length * 2)];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private static final long[] EMPTY = new long[0];
+
+  // bit i is set if var i appears in the cube
+  private long[] care_;
+  // bit i is set if var i must be true
+  private long[] value_;
+  // bit i is set if var i must be both true and false; null if none
+  private long[] conflict_;
+}
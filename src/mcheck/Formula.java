@@ -2,6 +2,7 @@ package mcheck;
 
 import base.*;
 import java.io.*;
+import java.util.HashMap;
 
 class Formula
     implements IScript { //, /*IForest,*/ NodeData {
@@ -282,7 +283,7 @@ class Formula
     return ( (Token) (env.tokens.get(index)));
   }
 
-  private String printNode(int root, int priority, StringBuffer sb) {
+  private void printNode(int root, int priority, StringBuffer sb) {
 
     final boolean db = false;
     if (db) {
@@ -372,7 +373,6 @@ class Formula
     if (par) {
       sb.append(")");
     }
-    return sb.toString();
   }
 
   private static String[] types = {"C/L ", "LTL ", "CTL ", "CTL*"};
@@ -726,40 +726,12 @@ class Formula
 //    printNode(root, dest);
 //  }
 
-  /**
-   * Perform initialization on a node
-   * @param node : node to initialize
-   * @param c : script character
-   */
-  private void initNode(int node, char c) {
-    Token t = new Token(charToId(c));
-//    t.setText(env.dfa.tokenName(t.id()));
-    tokens().set(node, t);
-  }
-
-  /**
-   * Get script character representation of a node
-   * @param tokenId int
-   * @return char
-   */
-  private char nodeToChar(int node) {
-    Token t = token(node);
-    char out = '?';
-    for (int i = 0; i < ids.length; i += 2) {
-      if (ids[i + 1] == t.id()) {
-        out = ids[i + 0];
-        break;
-      }
-    }
-    return out;
-  }
-
   /**
    * Get token id of script character
    * @param c char
    * @return token id
    */
-  private int charToId(char c) {
+  private static int charToId(char c) {
     int id = -1;
     for (int i = 0; i < ids.length; i += 2) {
       if (ids[i + 0] == c) {
@@ -776,6 +748,10 @@ class Formula
 
     boolean match = false;
     do {
+      if (root1 == root2) {
+        match = true;
+        break;
+      }
       Token t1 = token(root1), t2 = token(root2);
       if (t1.id() != t2.id()) {
         break;
@@ -820,8 +796,8 @@ class Formula
       "mT", "B u ! d",
       // AG		(symbol = E)
       "mE", "r0 u ! d u B u ! d u D d d u ! d",
-      // EG		(symbol = H)
-      "mH", "r0 u ! d u I d u ! d",
+      // EG		(symbol = H) is evaluated directly by CTLCheck, so it's
+      // not rewritten in terms of AF
       // EF		(symbol = J)
       "mJ", "r0 u B u ! d u D d d",
       // AX		(symbol = K)
@@ -858,7 +834,7 @@ class Formula
   /*	Reduce formula so it uses only a minimal sufficient set of
                   connectives.
 
-                  For CTL, this means only using B,!,&,AF,EU,EX.
+                  For CTL, this means only using B,!,&,AF,EG,EU,EX.
                   For LTL, reduce according to 'Model Checking, p. 132'; also
                                   see notes Apr 7 p.1
                   For CTL*,no change performed.
@@ -873,32 +849,19 @@ class Formula
                           isLTL() + " isCTL=" + isCTL());
     }
 
-    // repeat until fixed point reached.
-    while (true) {
-      boolean mods = false;
-
-      String[] scr = null;
+    int[][] scr = null;
 
-      if (isLTL()) {
-        scr = scriptsLTL;
-      }
-      else if (isCTL()) {
-        scr = scriptsCTL;
-      }
-
-      if (dbr) {
-        Streams.out.println(" attempting rewrite, root is " + root() +
-                            ", formula=" + toString());
-      }
-
-      if (scr != null
-          && rewrite(root(), scr)) {
-        mods = true;
-      }
+    if (isLTL()) {
+      scr = compiledScripts(scriptsLTL);
+    }
+    else if (isCTL()) {
+      scr = compiledScripts(scriptsCTL);
+    }
 
-      if (!mods) {
-        break;
-      }
+    // rewrite in a single bottom-up pass; each subformula is reduced
+    // only once, even if it's shared
+    if (scr != null && !isEmpty()) {
+      setRoot(rewrite(root(), scr, new IntIntMap()));
     }
 
     if (dbr) {
@@ -925,13 +888,56 @@ class Formula
     return f;
   }
 
+  /**
+   * Partition the nodes of the formula into classes of identical
+   * subformulas (those for which equal() is true) by hash consing:
+   * each node is keyed by its connective, its prop. var (if any), and
+   * the classes of its children.  This takes linear time, whereas
+   * comparing every pair of nodes with equal() takes quadratic time.
+   * @return map of node ids to class numbers
+   */
+  public IntIntMap nodeClasses() {
+    IntIntMap classes = new IntIntMap();
+    if (root() >= 0) {
+      nodeClass(root(), classes, new HashMap<String, Integer>());
+    }
+    return classes;
+  }
+
+  private int nodeClass(int node, IntIntMap classes,
+                        HashMap<String, Integer> keys) {
+    int c = classes.get(node, -1);
+    if (c < 0) {
+      Token t = token(node);
+      StringBuffer sb = new StringBuffer();
+      sb.append(t.id());
+      if (t.id(T_PROPVAR)) {
+        sb.append(' ');
+        sb.append(t.text());
+      }
+      for (int i = 0; i < nChildren(node); i++) {
+        sb.append(',');
+        sb.append(nodeClass(child(node, i), classes, keys));
+      }
+      String key = sb.toString();
+      Integer k = keys.get(key);
+      if (k == null) {
+        k = Integer.valueOf(keys.size());
+        keys.put(key, k);
+      }
+      c = k.intValue();
+      classes.put(node, c);
+    }
+    return c;
+  }
+
   private void convertToDAG() {
     //WARN("not cvt to dag");return;
     Forest f = forest();
 
     /*
             build list of nodes in formula
-            compare nodes i to nodes j (j > i), and if equal, alias j = i
+            alias each node to the first node (by id) that is equal to it
             modify nodes to redirect aliased nodes
      */
 
@@ -940,24 +946,19 @@ class Formula
     //	build list of formula nodes; put list in nl
     DArray nl = f.getNodeList(root());
 
-    // compare nodes j to i, building alias list in alias
+    IntIntMap classes = nodeClasses();
+    // first node of each class
+    IntIntMap first = new IntIntMap();
 
     for (int i = 0; i < nl.length(); i++) {
-      int al = nl.getInt(i);
-      int orig = al;
-      for (int j = 0; j < i; j++) {
-        int nn = nl.getInt(j);
-        if (alias.getInt(nn) != nn) {
-          continue;
-        }
-        if (!equal(al, nn)) {
-          continue;
-        }
-        al = nn;
-        break;
+      int orig = nl.getInt(i);
+      int cls = classes.get(orig, -1);
+      int al = first.get(cls, -1);
+      if (al < 0) {
+        al = orig;
+        first.put(cls, al);
       }
-//      Tools.warn("not sure if alias is set properly");
-      alias.setInt(orig, al); //
+      alias.setInt(orig, al);
     }
 
     // redirect all children nodes to aliases
@@ -973,6 +974,32 @@ class Formula
     }
   }
 
+  /**
+   * Get a canonical description of the formula:  its nodes in prefix
+   * order, with prop. vars identified by name rather than by index,
+   * so it doesn't depend on the order in which vars were declared
+   * @return String
+   */
+  public String canonical() {
+    StringBuffer sb = new StringBuffer();
+    canonical(root(), sb);
+    return sb.toString();
+  }
+
+  private void canonical(int node, StringBuffer sb) {
+    Token t = token(node);
+    sb.append('(');
+    sb.append(t.id());
+    if (t.id(T_PROPVAR)) {
+      sb.append(' ');
+      sb.append(t.text());
+    }
+    for (int i = 0; i < nChildren(node); i++) {
+      canonical(child(node, i), sb);
+    }
+    sb.append(')');
+  }
+
   public Formula reduced() {
     Formula f2 = deepCopy();
     f2.reduce();
@@ -995,167 +1022,209 @@ class Formula
 
   /*	Rewrite a tree
                   > root						root of tree
-                  > scripts					array of string pointers (pairs of strings,
-   with 0 marking end of array)
-                  > cbFunc					callback function
-                  < root if changes made, or -1
-
-                  Strings are stored in pairs of recognizer + rewriter.
+                  > scripts					compiled scripts, indexed by the token id
+                                    that their recognizers match the root
+                                    with (see compiledScripts)
+                  > done						map of nodes already rewritten to their
+                                    rewritten versions
+                  < root of rewritten tree
+
+                  Scripts are stored in pairs of recognizer + rewriter.
                   The recognizer script returns true if the tree is a match
                   for the following rewriter script, which is then applied.
+                  The children of a tree are rewritten (in place) before the
+                  tree itself, and the result of applying a rewriter is
+                  rewritten again, so the result is fully reduced.
    */
-  private boolean rewrite(int root, String[] scripts) {
-    boolean changed = false;
-
-    if (dbr) {
-//    Streams.out.println("rewrite root=" + root);
+  private int rewrite(int root, int[][] scripts, IntIntMap done) {
+    int result = done.get(root, -1);
+    if (result >= 0) {
+      return result;
     }
 
-//    int newRoot = -1;
-
     // rewrite the children
     int nc = nChildren(root);
     for (int i = 0; i < nc; i++) {
-      int r = child(root, i);
-      Formula fc = new Formula(env, typeFlags_, r);
-
-      if (dbr) {
-        Streams.out.println("rewriting root " + root + ", child #" + i + ": " +
-                            r + ": " + fc);
-      }
-
-      if (fc.rewrite(fc.root(), scripts)) {
-        changed = true;
-        // replace child with new child root in case it's changed
-        forest().insertChild(root, fc.root(), i, true);
+      int c = child(root, i);
+      int r = rewrite(c, scripts, done);
+      if (r != c) {
+        // replace child with new child root
+        forest().insertChild(root, r, i, true);
       }
     }
 
-    for (int s = 0; s < scripts.length; s += 2) {
-      int r = patternMatch(root, scripts[s]);
-      if (r < 0) {
-        continue;
-      }
-
-      r = patternMatch(root, scripts[s + 1]);
-      if (dbr) {
-        Streams.out.println(" matched script " + scripts[s] + ", old root " +
-                            root + ", new " + r);
+    result = root;
+    int type = nType(root);
+    int[] scr = (type >= 0 && type < scripts.length) ? scripts[type] : null;
+    if (scr != null) {
+      for (int s = 0; s < scr.length; s += 2) {
+        if (patternMatch(root, scriptOp(scr[s])) < 0) {
+          continue;
+        }
+        int r = patternMatch(root, scriptOp(scr[s + 1]));
+        if (dbr) {
+          Streams.out.println(" matched script " + scr[s] + ", old root " +
+                              root + ", new " + r);
+        }
+        result = rewrite(r, scripts, done);
+        break;
       }
-      setRoot(r);
-      changed = true;
     }
-    return changed;
+    done.put(root, result);
+    return result;
   }
 
-  private int patternMatch(int root, String script) {
-    final boolean dbr = false;
-
-    DArray stack = new DArray();
+  // operations of compiled scripts:  each is an opcode followed by an
+  // argument
+  private static final int
+      OP_MATCH = 0 // match node with token id (script 'm')
+      , OP_CHILD = 1 // descend to child (script 'c')
+      , OP_ROOTCHILD = 2 // set node to child of original (script 'r')
+      , OP_PUSH = 3 // push node, create new node (script 'u')
+      , OP_ATTACH = 4 // pop node, attach as rightmost child (script 'd')
+      , OP_INIT = 5 // initialize node with token id
+      ;
 
-    // current node
-    int node = root;
+  // compiled scripts, indexed by script number; and for each array of
+  // scripts, the compiled version (see compiledScripts)
+  private static DArray scriptOps = new DArray();
+  private static HashMap<String[], int[][]> compiled =
+      new HashMap<String[], int[][]>();
 
-    boolean result = true;
+  /**
+   * Get a compiled script; synchronized, since other threads may be
+   * adding to the list of scripts
+   * @param n : script number
+   * @return compiled script
+   */
+  private static synchronized int[] scriptOp(int n) {
+    return (int[]) scriptOps.get(n);
+  }
 
-    if (dbr) {
-      Streams.out.println("matching: " + root + "\n with pattern: " +
-                          script);
+  /**
+   * Get the compiled version of an array of scripts
+   * @param scripts : pairs of recognizer + rewriter scripts
+   * @return array, indexed by token id, of the pairs of script numbers
+   *   whose recognizers start by matching the root with that id
+   *   (or null if there are none)
+   */
+  private static synchronized int[][] compiledScripts(String[] scripts) {
+    int[][] c = compiled.get(scripts);
+    if (c == null) {
+      DArray byType = new DArray();
+      for (int s = 0; s < scripts.length; s += 2) {
+        int[] rec = compile(scripts[s]);
+        Tools.ASSERT(rec.length >= 2 && rec[0] == OP_MATCH);
+        int type = rec[1];
+        DArray list = byType.exists(type) ? (DArray) byType.get(type) : null;
+        if (list == null) {
+          list = new DArray();
+          byType.set(type, list);
+        }
+        list.addInt(scriptOps.length());
+        scriptOps.add(rec);
+        list.addInt(scriptOps.length());
+        scriptOps.add(compile(scripts[s + 1]));
+      }
+      c = new int[byType.length()][];
+      for (int t = 0; t < c.length; t++) {
+        if (byType.exists(t)) {
+          DArray list = (DArray) byType.get(t);
+          c[t] = new int[list.length()];
+          for (int i = 0; i < list.length(); i++) {
+            c[t][i] = list.getInt(i);
+          }
+        }
+      }
+      compiled.put(scripts, c);
     }
+    return c;
+  }
 
-    for (int k = 0; result && k < script.length(); ) {
+  /**
+   * Compile a script
+   * @param script : script string
+   * @return array of operations
+   */
+  private static int[] compile(String script) {
+    DArray ops = new DArray();
+    for (int k = 0; k < script.length(); ) {
       char c = script.charAt(k++);
-      if (c == ' ') {
-        continue;
-      }
-      if (dbr) {
-        Streams.out.println("script char=" + c);
+      int op, arg = 0;
+      switch (c) {
+        case ' ':
+          continue;
+        case 'm':
+          op = OP_MATCH;
+          arg = charToId(script.charAt(k++));
+          break;
+        case 'c':
+          op = OP_CHILD;
+          arg = script.charAt(k++) - '0';
+          break;
+        case 'r':
+          op = OP_ROOTCHILD;
+          arg = script.charAt(k++) - '0';
+          break;
+        case 'u':
+          op = OP_PUSH;
+          break;
+        case 'd':
+          op = OP_ATTACH;
+          break;
+        default:
+          // convert character to node type
+          op = OP_INIT;
+          arg = charToId(c);
+          break;
       }
+      ops.addInt(op);
+      ops.addInt(arg);
+    }
+    int[] a = new int[ops.length()];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = ops.getInt(i);
+    }
+    return a;
+  }
 
-      switch (c) {
-        case 'm': {
-          // get character associated with root
-          char c2 = script.charAt(k++);
-
-          char sym = nodeToChar(node); //)cbFunc.process(CMD_GETSYM, node, 0);
-          if (dbr) {
-            Streams.out.println("matching character for root " + node + ", c2=" +
-                                c2 + " symbol=" + sym);
-          }
-          // match with argument
-          if (sym != c2) {
-            result = false;
-            break;
-          }
-        }
-        break;
+  private int patternMatch(int root, int[] ops) {
+    DArray stack = null;
 
-        case 'c': {
-          // descend to a particular child
-          char c2 = script.charAt(k++);
-          int ci = c2 - '0';
-          node = child(node, ci);
-          if (dbr) {
-            Streams.out.println("set node to child #" + ci + " = " + node);
-          }
-        }
-        break;
+    // current node
+    int node = root;
 
-        case 'd': {
-          // pop node, attach as rightmost child
-          int n = stack.popInt();
-          forest().addChild(node, n);
-          if (dbr) {
-            Streams.out.println("popped rightmost child " + n);
+    for (int k = 0; k < ops.length; k += 2) {
+      int arg = ops[k + 1];
+      switch (ops[k]) {
+        case OP_MATCH:
+          if (nType(node) != arg) {
+            return -1;
           }
-        }
-        break;
-        case 'u': {
-          if (dbr) {
-            Streams.out.println("pushing node " + node);
+          break;
+        case OP_CHILD:
+          node = child(node, arg);
+          break;
+        case OP_ROOTCHILD:
+          node = child(root, arg);
+          break;
+        case OP_PUSH:
+          if (stack == null) {
+            stack = new DArray();
           }
-          // push current node on stack
           stack.pushInt(node);
-          // create new node
           node = forest().newNode();
-          if (dbr) {
-            Streams.out.println(" created new node " + node);
-          }
-        }
-        break;
-        case 'r': {
-          char c2 = script.charAt(k++);
-          // set node as child of original
-          int childNum = c2 - '0';
-          node = child(root, childNum);
-          if (dbr) {
-            Streams.out.println("set node to child #" + childNum +
-                                " of original= " + node);
-          }
-        }
-        break;
-        default: {
-          // convert character to node type, create new node
-          //int tokenType = cbFunc(CMD_GETCODE,c,-1);
-          //ASSERT(tokenType >= 0);
-//          k++;
+          break;
+        case OP_ATTACH:
+          forest().addChild(node, stack.popInt());
+          break;
+        case OP_INIT:
           node = forest().newNode();
-          initNode(node, c);
-
-//          cbFunc.process(CMD_INITNODE, node, c);
-          if (dbr) {
-            Streams.out.println("did INITNODE for " + node + " with char " + c);
-          }
-          //int sym = cbFunc(CMD_GETSYM, node, 0);
-
-          //Token t(tokenType);
-          //Formula::tokens().add(t,node);
-        }
-        break;
+          tokens().set(node, new Token(arg));
+          break;
       }
     }
-//    root = node;
-    return result ? node : -1;
+    return node;
   }
 
 }
@@ -0,0 +1,95 @@
+package mcheck;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A read-only table of ints, held either in an array, or in a file that's
+ * mapped into memory.  A single mapping can't exceed 2GB, so a mapped
+ * table is split into segments of SEG_INTS ints, each mapped separately;
+ * the file as a whole may be larger.
+ */
+abstract class IntTable {
+
+  /**
+   * Get an entry of the table
+   * @param i : index of entry, 0..length()-1
+   * @return int
+   */
+  public abstract int get(int i);
+
+  /**
+   * Get the number of entries in the table
+   * @return int
+   */
+  public abstract int length();
+
+  /**
+   * Construct a table that reads from an array; the array isn't copied
+   * @param a : array
+   * @return IntTable
+   */
+  public static IntTable wrap(int[] a) {
+    return new ArrayTable(a);
+  }
+
+  /**
+   * Construct a table that reads from part of a file, without copying it
+   * @param ch : channel of file
+   * @param pos : position of the table's first entry in the file; the
+   *   entries are big-endian
+   * @param len : number of entries
+   * @return IntTable
+   */
+  public static IntTable map(FileChannel ch, long pos, int len) throws
+      IOException {
+    IntBuffer[] segs = new IntBuffer[ (int) ( ( (long) len + SEG_INTS - 1)
+                                             >> SEG_SHIFT)];
+    for (int k = 0; k < segs.length; k++) {
+      int segLen = Math.min(SEG_INTS, len - (k << SEG_SHIFT));
+      segs[k] = ch.map(FileChannel.MapMode.READ_ONLY,
+                       pos + 4L * (k << SEG_SHIFT), 4L * segLen)
+          .asIntBuffer();
+    }
+    return new MappedTable(segs, len);
+  }
+
+  private static final int SEG_SHIFT = 28, SEG_INTS = 1 << SEG_SHIFT;
+
+  private static class ArrayTable
+      extends IntTable {
+    ArrayTable(int[] a) {
+      a_ = a;
+    }
+
+    public int get(int i) {
+      return a_[i];
+    }
+
+    public int length() {
+      return a_.length;
+    }
+
+    private int[] a_;
+  }
+
+  private static class MappedTable
+      extends IntTable {
+    MappedTable(IntBuffer[] segs, int len) {
+      segs_ = segs;
+      len_ = len;
+    }
+
+    public int get(int i) {
+      return segs_[i >>> SEG_SHIFT].get(i & (SEG_INTS - 1));
+    }
+
+    public int length() {
+      return len_;
+    }
+
+    private IntBuffer[] segs_;
+    private int len_;
+  }
+}
@@ -0,0 +1,107 @@
+package mcheck;
+
+import base.*;
+
+/**
+ * A read-only view of a Kripke model as a Buchi automaton, equivalent to
+ * the one constructed by Buchi.convertKripke, but whose states and
+ * transitions are read from the model's frozen tables as they're needed.
+ * Together with LazyProduct, this lets an LTL check explore only the
+ * part of the model the emptiness search reaches, and stop at the first
+ * accepting cycle, without converting the whole model first.
+ *
+ * State 0 is an initial state with a transition to each of the model's
+ * initial states; state i+1 is the model state with id i, and the
+ * transitions to it require every variable to have its value in that
+ * state.  Every state is accepting.
+ */
+class KripkeBuchi extends Buchi {
+
+  /**
+   * Constructor
+   * @param env Environment
+   * @param m : model; its tables must be frozen
+   */
+  public KripkeBuchi(Environment env, Model m) {
+    super(env);
+    model = m;
+    totVars = env.vars.length();
+    words = new long[m.stateVarWords()];
+    OrdSet mInit = m.initialStates();
+    initTargets = new int[mInit.length()];
+    for (int i = 0; i < initTargets.length; i++) {
+      initTargets[i] = 1 + m.stateId(mInit.get(i));
+    }
+    init.add(0);
+  }
+
+  public int nStates() {
+    return model.states() + 1;
+  }
+
+  public int nAcceptSets() {
+    return 1;
+  }
+
+  public boolean general() {
+    return false;
+  }
+
+  public boolean accepting(int state) {
+    return true;
+  }
+
+  public boolean accepting(int state, int set) {
+    return true;
+  }
+
+  public OrdSet initialStates() {
+    return init;
+  }
+
+  public int degree(int state) {
+    if (state == 0) {
+      return initTargets.length;
+    }
+    return model.succEnd(state - 1) - model.succStart(state - 1);
+  }
+
+  public int next(int state, int index) {
+    if (state == 0) {
+      return initTargets[index];
+    }
+    return 1 + model.succ(model.succStart(state - 1) + index);
+  }
+
+  public String stateLabel(int state) {
+    return state == 0 ? null : "" + model.stateName(state - 1);
+  }
+
+  public Cube guard(int state, int index) {
+    model.stateVars(next(state, index) - 1, words);
+    return Cube.valuation(totVars, words, 0, words.length);
+  }
+
+  public boolean contradicts(int state, int index, Buchi b2, int state2,
+                             int index2) {
+    // test the other guard against the model state's vars, without
+    // constructing this transition's guard
+    model.stateVars(next(state, index) - 1, words);
+    return !b2.guard(state2, index2).consistent(totVars, words, 0,
+                                                words.length);
+  }
+
+  public String toString() {
+    return "Kripke model with " + model.states() + " states\n";
+  }
+
+  private Model model;
+  // number of variables each state assigns values to
+  private int totVars;
+  // the vars of the model state last read by guard() or contradicts()
+  private long[] words;
+  // initial state
+  private OrdSet init = new OrdSet();
+  // states the initial state has transitions to
+  private int[] initTargets;
+}
@@ -21,15 +21,39 @@ class LTLCheck
    * @param options OPT_xxx flags
    */
   public LTLCheck(Environment env, int options) {
+    this(env, options, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructor
+   * @param env Environment
+   * @param options OPT_xxx flags
+   * @param cacheSize : number of formula automata to cache
+   */
+  public LTLCheck(Environment env, int options, int cacheSize) {
     this.env = env;
     options_ = options;
+    cache_ = new AutomatonCache(env, cacheSize);
+  }
+
+  public static final int DEFAULT_CACHE_SIZE = 32;
+
+  /**
+   * Get the cache of formula automata
+   * @return AutomatonCache
+   */
+  public AutomatonCache cache() {
+    return cache_;
   }
 
   private static final boolean db = false;
 
   public static final int OPT_PRINTSTATES = 0x0001,
       OPT_PRINTFULLSEQ = 0x0002,
-      OPT_PRINTBUCHI = 0x0004;
+      OPT_PRINTBUCHI = 0x0004,
+      OPT_DEGENERALIZE = 0x0008,
+      OPT_NOSIMPLIFY = 0x0010,
+      OPT_STATS = 0x0020;
 
   /**
    * Find the point at which a sequence of integers starts to repeat.
@@ -49,76 +73,118 @@ class LTLCheck
     return rep;
   }
 
+  /**
+   * Set the stream that results (and the automata, if OPT_PRINTxxx
+   * options are set) are printed to
+   * @param out : PrintStream, or null to print nothing
+   */
+  public void setOutput(PrintStream out) {
+    out_ = out;
+  }
+
   /**
    * Check a formula
    * @param model Model to check
    * @param f specification (LTL formula)
+   * @return CheckResult
    */
-  public void check(Model model, Formula f) {
-    PrintStream out = Streams.out;
+  public CheckResult check(Model model, Formula f) {
+    long start = System.currentTimeMillis();
+    CheckResult r = new CheckResult(CheckResult.LTL, f.toString(false));
 
     Buchi ngb = new Buchi(env);
     constructAutomaton(f, true, ngb);
     if (option(OPT_PRINTBUCHI)) {
-      out.println("Formula automaton:\n" + ngb);
+      println("Formula automaton:\n" + ngb);
     }
 
     Tools.ASSERT(model.defined());
 
-    // convert model to Buchi automaton
-    Buchi bModel = new Buchi(env);
-    bModel.convertKripke(model);
-    if (option(OPT_PRINTBUCHI)) {
-      out.println("Model automaton:\n" + bModel);
+    // fairness constraints aren't applied to LTL checks yet; say so,
+    // since a counterexample found may be unfair
+    DArray warnings = new DArray();
+    if (model.fairSets() > 0) {
+      String msg = "Warning: fairness constraints are ignored by LTL checks";
+      warnings.add(msg);
+      println(msg);
     }
+    r.setWarnings(warnings);
 
-    Buchi bProd = new Buchi(env);
-    Buchi bProd0 = new Buchi(env);
-    bProd0.calcProduct(bModel, ngb);
-    bProd0.reduce(bProd);
+    // convert model to Buchi automaton; unless it's to be printed, its
+    // states are read from the model only as the search reaches them
+    Buchi bModel;
+    if (option(OPT_PRINTBUCHI)) {
+      bModel = new Buchi(env);
+      bModel.convertKripke(model);
+      println("Model automaton:\n" + bModel);
+    }
+    else {
+      bModel = new KripkeBuchi(env, model);
+    }
 
+    // unless it's to be printed, explore only as much of the product
+    // as the emptiness search requires
+    boolean general = !option(OPT_DEGENERALIZE);
+    Buchi bProd = null;
+    LazyProduct lazy = null;
+    DArray seq;
     if (option(OPT_PRINTBUCHI)) {
-      out.println("Product automaton:\n" + bProd);
+      bProd = new Buchi(env);
+      Buchi bProd0 = new Buchi(env);
+      bProd0.calcProduct(bModel, ngb, general);
+      bProd0.reduce(bProd);
+      println("Product automaton:\n" + bProd);
+    }
+    if (bProd != null && !general) {
+      seq = bProd.nonEmpty();
+    }
+    else {
+      lazy = new LazyProduct(bModel, ngb, general);
+      seq = lazy.nonEmpty();
+    }
+    r.addExplored(lazy != null ? lazy.statesGenerated() : bProd.nStates());
+    if (option(OPT_STATS)) {
+      println("Product states explored: " + r.statesExplored());
     }
 
-    StringBuffer w = new StringBuffer();
-    DArray seq = bProd.nonEmpty();
+    r.setHolds(seq == null);
     if (seq != null) {
-      w.append("Not satisfied; counterexample:\n  ");
-      int rep = repeatPoint(seq);
+      // omit the product's initial state, which doesn't correspond to a
+      // model state
+      int rep = (lazy != null) ? lazy.repeatPoint(seq) : repeatPoint(seq);
+      DArray labels = new DArray();
       for (int i = 1; i < seq.length(); i++) {
         int s = seq.getInt(i);
-        if (i > 1) {
-          w.append(' ');
-        }
-        if (i == rep) {
-          w.append('{');
-        }
-        w.append(bProd.stateLabel(s));
+        labels.add(lazy != null ? lazy.stateLabel(s) : bProd.stateLabel(s));
       }
-      if (rep >= 0) {
-        w.append("}*");
-      }
-    }
-    else {
-      w.append("Satisfied.");
+      r.setPath(0, labels, rep > 0 ? rep - 1 : -1);
     }
-    String str = w.toString();
+    r.setMillis(System.currentTimeMillis() - start);
 
-    if (!option(OPT_PRINTFULLSEQ)) {
-      str = Tools.trimLength(str, 75, true);
+    if (out_ != null) {
+      String str;
+      if (seq != null) {
+        str = "Not satisfied; counterexample:\n  " + r.pathString(0);
+      }
+      else {
+        str = "Satisfied.";
+      }
+      if (!option(OPT_PRINTFULLSEQ)) {
+        str = Tools.trimLength(str, 75, true);
+      }
+      println(str + "\n");
     }
-
-    out.println(str + "\n");
+    return r;
   }
 
   /**
    * Compare two LTL formulas
    * @param f1 Formula
    * @param f2 Formula
+   * @return CheckResult
    */
-  public void compare(Formula f1, Formula f2) {
-    compare(f1, f2, false);
+  public CheckResult compare(Formula f1, Formula f2) {
+    return compare(f1, f2, false);
   }
 
   /**
@@ -126,18 +192,24 @@ class LTLCheck
    * @param f1 Formula
    * @param f2 Formula
    * @param printReduced : true to print reduced formulas
+   * @return CheckResult
    */
-  public void compare(Formula f1, Formula f2, boolean printReduced) {
-    Streams.out.println("Comparing: " + f1);
+  public CheckResult compare(Formula f1, Formula f2, boolean printReduced) {
+    long start = System.currentTimeMillis();
+    CheckResult r = new CheckResult(CheckResult.COMPARE,
+                                    f1.toString(false) + " : "
+                                    + f2.toString(false));
+
+    println("Comparing: " + f1);
     if (printReduced) {
-      Streams.out.println(Tools.sp(11) + f1.reduced());
+      println(Tools.sp(11) + f1.reduced());
     }
 
-    Streams.out.println("     with: " + f2);
+    println("     with: " + f2);
     if (printReduced) {
-      Streams.out.println(Tools.sp(11) + f2.reduced());
+      println(Tools.sp(11) + f2.reduced());
     }
-    Streams.out.println();
+    println("");
 
     Buchi b1 = new Buchi(env), b2 = new Buchi(env);
 
@@ -147,21 +219,21 @@ class LTLCheck
 
       if (pass == 0) {
         if (option(OPT_PRINTSTATES)) {
-          Streams.out.print("First automaton:\n");
+          print("First automaton:\n");
         }
         constructAutomaton(f1, false, b1);
         if (option(OPT_PRINTSTATES)) {
-          Streams.out.print("Second automaton:\n");
+          print("Second automaton:\n");
         }
         constructAutomaton(f2, true, b2);
       }
       else {
         if (option(OPT_PRINTSTATES)) {
-          Streams.out.print("First automaton:\n");
+          print("First automaton:\n");
         }
         constructAutomaton(f2, false, b1);
         if (option(OPT_PRINTSTATES)) {
-          Streams.out.print("Second automaton:\n");
+          print("Second automaton:\n");
         }
         constructAutomaton(f1, true, b2);
       }
@@ -170,62 +242,74 @@ class LTLCheck
       b1.setPropVarLabels();
 
       if (option(OPT_PRINTBUCHI)) {
-        Streams.out.println("First automaton:\n" + b1);
-        Streams.out.println("Second automaton:\n" + b2);
+        println("First automaton:\n" + b1);
+        println("Second automaton:\n" + b2);
       }
 
-      Buchi prod = new Buchi(env);
-      Buchi prod0 = new Buchi(env);
-      prod0.calcProduct(b1, b2);
-      prod0.reduce(prod);
+      boolean general = !option(OPT_DEGENERALIZE);
+      Buchi prod = null;
+      LazyProduct lazy = null;
+      DArray seq;
       if (option(OPT_PRINTBUCHI | OPT_PRINTSTATES)) {
-        Streams.out.println("Product automaton:\n" + prod);
+        prod = new Buchi(env);
+        Buchi prod0 = new Buchi(env);
+        prod0.calcProduct(b1, b2, general);
+        prod0.reduce(prod);
+        println("Product automaton:\n" + prod);
       }
-
-      DArray seq = prod.nonEmpty();
+      if (prod != null && !general) {
+        seq = prod.nonEmpty();
+      }
+      else {
+        lazy = new LazyProduct(b1, b2, general);
+        seq = lazy.nonEmpty();
+      }
+      r.addExplored(lazy != null ? lazy.statesGenerated() : prod.nStates());
       if (seq != null) {
 
         if (equiv) {
           equiv = false;
-          Streams.out.print("Not equivalent.\n");
+          print("Not equivalent.\n");
         }
 
-        StringBuffer sb = new StringBuffer("\n");
-        {
-          sb.append( (pass == 0 ? " first" : "second"));
-          sb.append(" allows: ");
-
-          // find repeat point
-          int rep = repeatPoint(seq);
-          for (int i = 0; i < seq.length(); i++) {
-            int s = seq.getInt(i);
-            if (i > 0) {
-              sb.append(' ');
-            }
-
-            if (i == rep) {
-              sb.append("{");
-            }
-            sb.append(prod.stateLabel(s));
-          }
-          sb.append("}*");
+        // find repeat point
+        int rep = (lazy != null) ? lazy.repeatPoint(seq) : repeatPoint(seq);
+        DArray labels = new DArray();
+        for (int i = 0; i < seq.length(); i++) {
+          int s = seq.getInt(i);
+          labels.add(lazy != null ? lazy.stateLabel(s) : prod.stateLabel(s));
         }
-        String str = sb.toString();
-        if (!option(OPT_PRINTFULLSEQ)) {
-          if (false) {
-            Tools.warn("not truncating");
-          }
-          else {
+        r.setPath(pass, labels, rep);
+
+        if (out_ != null) {
+          String str = "\n" + (pass == 0 ? " first" : "second")
+              + " allows: " + r.pathString(pass);
+          if (!option(OPT_PRINTFULLSEQ)) {
             str = Tools.trimLength(str, 75, true);
           }
+          println(str);
         }
-        Streams.out.println(str);
       }
     }
+    r.setHolds(equiv);
     if (equiv) {
-      Streams.out.print("Equivalent.\n");
+      print("Equivalent.\n");
+    }
+    println("");
+    r.setMillis(System.currentTimeMillis() - start);
+    return r;
+  }
+
+  private void print(String s) {
+    if (out_ != null) {
+      out_.print(s);
+    }
+  }
+
+  private void println(String s) {
+    if (out_ != null) {
+      out_.println(s);
     }
-    Streams.out.println();
   }
 
   /**
@@ -271,13 +355,46 @@ class LTLCheck
       Streams.out.println(" reduced: " + f);
     }
 
+    // if the tableau is to be printed, it must be constructed
+    String key = null;
+    if (!option(OPT_PRINTSTATES)) {
+      key = f.canonical();
+      if (cache_.get(key, b)) {
+        return;
+      }
+    }
+
     createGraph(f);
 
     Buchi bg = constructBuchi(f);
 
-    Buchi bg2 = new Buchi(env);
-    bg.convertGeneralized(bg2);
-    bg2.reduce(b);
+    // every state of the formula automaton multiplies the size of the
+    // product, so it's worth simplifying
+    boolean simplify = !option(OPT_NOSIMPLIFY);
+    Buchi br = simplify ? new Buchi(env) : b;
+
+    // the emptiness check works directly on generalized automata, unless
+    // the nested depth first search is to be used
+    if (option(OPT_DEGENERALIZE)) {
+      Buchi bg2 = new Buchi(env);
+      bg.convertGeneralized(bg2);
+      bg2.reduce(br);
+    }
+    else {
+      bg.reduce(br);
+    }
+
+    if (simplify) {
+      br.simplify(b);
+      if (option(OPT_PRINTBUCHI | OPT_PRINTSTATES)) {
+        println("Simplified formula automaton from "
+                + br.nStates() + " to " + b.nStates() + " states");
+      }
+    }
+
+    if (key != null) {
+      cache_.put(key, b);
+    }
   }
 
   /**
@@ -287,10 +404,123 @@ class LTLCheck
    */
   private int newNode() {
     int node = nForest_.newNode();
-    forestNodes.set(node - Forest.IDBASE, new Node());
+    forestNodes.set(node - Forest.IDBASE, new Node(sfWords_));
     return node;
   }
 
+  /**
+   * Number the subformulas of a formula densely, in order of node id,
+   * so sets of them can be represented as bit sets
+   * @param f formula
+   */
+  private void numberSubformulas(Formula f) {
+    sfNodes_ = env.forest.getNodeList(f.root());
+    int n = sfNodes_.length();
+    sfWords_ = (n + 63) >> 6;
+    sfNumbers_.clear();
+    for (int i = 0; i < n; i++) {
+      sfNumbers_.put(sfNodes_.getInt(i), i);
+    }
+    sfType_ = new int[n];
+    sfChild0_ = new int[n];
+    sfChild1_ = new int[n];
+    sfLiteral_ = new int[n];
+    for (int i = 0; i < n; i++) {
+      int node = sfNodes_.getInt(i);
+      sfType_[i] = f.nType(node);
+      int nc = f.nChildren(node);
+      sfChild0_[i] = nc > 0 ? sfIndex(f.child(node, 0)) : -1;
+      sfChild1_[i] = nc > 1 ? sfIndex(f.child(node, 1)) : -1;
+      sfLiteral_[i] = UNKNOWN_LITERAL;
+    }
+  }
+
+  /**
+   * Get the number of a subformula
+   * @param node : id of subformula's node
+   * @return number of subformula
+   */
+  private int sfIndex(int node) {
+    return sfNumbers_.get(node, -1);
+  }
+
+  /**
+   * Get the literal code of a subformula (see Environment.getLiteralCode)
+   * @param sf : number of subformula
+   * @return literal code
+   */
+  private int literalCode(int sf) {
+    int code = sfLiteral_[sf];
+    if (code == UNKNOWN_LITERAL) {
+      code = env.getLiteralCode(sfNodes_.getInt(sf));
+      sfLiteral_[sf] = code;
+    }
+    return code;
+  }
+
+  private static final int UNKNOWN_LITERAL = Integer.MIN_VALUE;
+
+  private static boolean get(long[] set, int i) {
+    return (set[i >> 6] & (1L << i)) != 0;
+  }
+
+  private static void set(long[] set, int i) {
+    set[i >> 6] |= 1L << i;
+  }
+
+  private static boolean isEmpty(long[] set) {
+    for (int w = 0; w < set.length; w++) {
+      if (set[w] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remove the highest member of a set
+   * @param set : bit set, not empty
+   * @return the member removed
+   */
+  private static int removeLast(long[] set) {
+    int w = set.length - 1;
+    while (set[w] == 0) {
+      w--;
+    }
+    int i = (w << 6) + 63 - Long.numberOfLeadingZeros(set[w]);
+    set[w] &= ~(1L << i);
+    return i;
+  }
+
+  private static long[] copy(long[] set) {
+    return set.clone();
+  }
+
+  /**
+   * Get string describing a set of subformulas, by node id
+   * @param set : bit set of subformula numbers
+   * @return String
+   */
+  private String setString(long[] set) {
+    OrdSet s = new OrdSet();
+    for (int w = 0; w < set.length; w++) {
+      for (long bits = set[w]; bits != 0; bits &= bits - 1) {
+        s.add(sfNodes_.getInt( (w << 6) + Long.numberOfTrailingZeros(bits)));
+      }
+    }
+    return s.toString();
+  }
+
+  /**
+   * Calculate the hash code used to look up a tableau node by its Old and
+   * Next sets
+   * @param n : node
+   * @return int
+   */
+  private static int stateHash(Node n) {
+    return Arrays.hashCode(n.fOld) * 31 + Arrays.hashCode(n.fNext);
+  }
+
   /**
    * 	Create automaton states
    */
@@ -301,20 +531,26 @@ class LTLCheck
       Streams.out.println("createGraph for " + f);
     }
 
+    numberSubformulas(f);
+
     aNodes.clear();
+    stateIndex_.clear();
     aNodes.addInt(initNode_ = newNode());
 
     int id;
     Node np = node(id = newNode());
 
     np.incoming.add(initNode_);
-    np.fNew.add(f.root());
+    set(np.fNew, sfIndex(f.root()));
 
     if (db) {
       printStateSet(f);
     }
 
-    expand(f, id);
+    expand(id);
+    if (db) {
+      Streams.out.println("tableau expanded in " + expandSteps_ + " steps");
+    }
 
     if (db || option(OPT_PRINTSTATES)) {
       printStateSet(f, true);
@@ -324,196 +560,248 @@ class LTLCheck
   /**
    * Build a tableau (see p. 134).
    * The numbers '// x' correspond to line numbers from the
-   * 'simple on-the-fly...' paper
+   * 'simple on-the-fly...' paper.
+   *
+   * The paper's procedure is recursive; here, the expansion is a loop
+   * over explicit states instead (see expandStep), so the depth of the
+   * formula is limited only by the heap, not the thread stack.  Nodes
+   * are created in the same order as by the recursive procedure, so
+   * the same automaton results.
+   * @param q : id of node to start with
+   */
+  private void expand(int q) {
+    work_.clear();
+    expanding_ = q;
+    expandSteps_ = 0;
+    while (expandStep()) {
+    }
+  }
+
+  /**
+   * Perform one step of the tableau expansion.  The state of the
+   * expansion is the node being expanded (expanding_), and a stack
+   * (work_) of nodes that have been split, each with the subformula it
+   * was split on; the second half of each split is constructed once the
+   * expansion of the first half is complete.
+   * @return false if expansion is complete
    */
-  private void expand(Formula f_, int q) {
+  private boolean expandStep() {
+    if (expanding_ < 0) {
+      if (work_.isEmpty()) {
+        return false;
+      }
+      int e = work_.popInt();
+      int q = work_.popInt();
+      expanding_ = secondBranch(q, e);
+    }
+    else {
+      expanding_ = expandNode(expanding_);
+    }
+    expandSteps_++;
+    return true;
+  }
+
+  /**
+   * Process a node of the tableau
+   * @param q : id of node
+   * @return id of node to process next, or -1 if none
+   */
+  private int expandNode(int q) {
 
     final boolean db = false;
 
     if (db) {
-      Streams.out.println("expand formula, root=" + q);
+      Streams.out.println("expand node " + q);
     }
 
     Node qr = node(q);
 // 4
-    if (qr.fNew.isEmpty()) {
+    if (isEmpty(qr.fNew)) {
 
       // 5
-      // skip the initial node
-      for (int i = 1; i < aNodes.size(); i++) {
-
-        Node t = node(aNodes.getInt(i)); //aNode(i));
-        if (t.fOld.equals(qr.fOld)
-            && t.fNext.equals(qr.fNext)
-            ) {
+      // look for an existing node (other than the initial node)
+      // with the same Old and Next sets
+      int h = stateHash(qr);
+      for (int t = stateIndex_.get(h, -1); t >= 0; t = node(t).sameHash) {
+        Node tr = node(t);
+        if (Arrays.equals(tr.fOld, qr.fOld)
+            && Arrays.equals(tr.fNext, qr.fNext)) {
           // 6
-          t.incoming.include(qr.incoming);
-          return;
+          tr.incoming.include(qr.incoming);
+          freeNode(q);
+          return -1;
         }
       }
+      qr.sameHash = stateIndex_.get(h, -1);
+      stateIndex_.put(h, q);
+
       int n2 = newNode();
 
       Node n2p = node(n2);
       n2p.incoming.add(q);
-      n2p.fNew = new OrdSet(qr.fNext);
+      n2p.fNew = copy(qr.fNext);
 
       aNodes.addInt(q);
-      expand(f_, n2);
-      return;
+      return n2;
     }
 
 // 12
     // New(q) is not empty
-    int e = qr.fNew.removeLast();
+    int e = removeLast(qr.fNew);
 
     // 13.5: not in original paper; more efficient to test for
     //  'old' added again (modifying lines 22 and 25)
-    if (qr.fOld.contains(e) != null) {
-      expand(f_, q);
-      return;
+    if (get(qr.fOld, e)) {
+      return q;
     }
 
-    int litCode = env.getLiteralCode(e);
+    int litCode = literalCode(e);
     if (litCode != 0) {
 // 15
 
       // is e False, or is its negation in q.old?
       if (litCode == -1) {
-        return; // BOTTOM or FALSE
+        freeNode(q);
+        return -1; // BOTTOM or FALSE
       }
 
       // see if negative of this exists in q.old.
-      for (int i = 0; i < qr.fOld.length(); i++) {
-        int litCode2 = env.getLiteralCode(qr.fOld.get(i));
-        if (litCode2 == -litCode) {
-          return;
+      for (int w = 0; w < qr.fOld.length; w++) {
+        for (long bits = qr.fOld[w]; bits != 0; bits &= bits - 1) {
+          int litCode2 = literalCode( (w << 6) + Long.numberOfTrailingZeros(bits));
+          if (litCode2 == -litCode) {
+            freeNode(q);
+            return -1;
+          }
         }
       }
 
 // 18
       // add e to q.old
       if (litCode != 1) { // don't add TRUE
-        qr.fOld.add(e);
+        set(qr.fOld, e);
       }
-      expand(f_, q);
-      return;
+      return q;
     }
 
 // 15
-    int etype = env.nType(e);
+    int etype = sfType_[e];
+    int id1 = newNode();
+    Node n1 = node(id1);
+
+    n1.incoming = new OrdSet(qr.incoming);
+    n1.fNew = copy(qr.fNew);
+    n1.fOld = copy(qr.fOld);
+    set(n1.fOld, e);
+    n1.fNext = copy(qr.fNext);
+
     switch (etype) {
       case T_UNTIL:
       case T_RELEASE:
       case T_OR: {
-        {
-          int id1 = newNode();
-          Node n1 = node(id1);
-
-          n1.incoming = new OrdSet(qr.incoming);
-          n1.fNew = new OrdSet(qr.fNew);
-          switch (etype) {
-            case T_UNTIL:
-            case T_OR:
-              n1.fNew.add(f_.child(e, 0));
-              break;
-            case T_RELEASE:
-              n1.fNew.add(f_.child(e, 1));
-              break;
-          }
-
-          n1.fOld = new OrdSet(qr.fOld);
-          n1.fOld.add(e);
-
-          n1.fNext = new OrdSet(qr.fNext);
-          switch (etype) {
-            case T_UNTIL:
-            case T_RELEASE:
-              n1.fNext.add(e);
-              break;
-          }
-          expand(f_, id1);
+        switch (etype) {
+          case T_UNTIL:
+          case T_OR:
+            set(n1.fNew, sfChild0_[e]);
+            break;
+          case T_RELEASE:
+            set(n1.fNew, sfChild1_[e]);
+            break;
         }
 
-        {
-          int id2 = newNode();
-          Node n2 = node(id2);
-
-          n2.incoming = new OrdSet(qr.incoming);
-
-          n2.fNew = new OrdSet(qr.fNew);
-
-          switch (etype) {
-            case T_UNTIL:
-            case T_OR:
-              n2.fNew.add(f_.child(e, 1));
-              break;
-            case T_RELEASE:
-              n2.fNew.add(f_.child(e, 0));
-              n2.fNew.add(f_.child(e, 1));
-              break;
-          }
-
-          n2.fOld = new OrdSet(qr.fOld);
-          n2.fOld.add(e);
-
-          n2.fNext = new OrdSet(qr.fNext);
-          expand(f_, id2);
+        switch (etype) {
+          case T_UNTIL:
+          case T_RELEASE:
+            set(n1.fNext, e);
+            break;
         }
-      }
-      break;
 
-      case T_AND: {
-        int id1 = newNode();
-        Node n1 = node(id1);
+        // construct the second node once the first is expanded
+        work_.pushInt(q);
+        work_.pushInt(e);
+      }
+      return id1;
 
-        n1.incoming = new OrdSet(qr.incoming);
+      case T_AND:
+        set(n1.fNew, sfChild0_[e]);
+        set(n1.fNew, sfChild1_[e]);
+        break;
 
-        n1.fNew = new OrdSet(qr.fNew);
-        n1.fNew.add(f_.child(e, 0));
-        n1.fNew.add(f_.child(e, 1));
+      case T_NEXT:
+        set(n1.fNext, sfChild0_[e]);
+        break;
 
-        n1.fOld = new OrdSet(qr.fOld);
-        n1.fOld.add(e);
+      default:
+        throw new RuntimeException("node type = " + etype);
+    }
+    freeNode(q);
+    return id1;
+  }
 
-        n1.fNext = new OrdSet(qr.fNext);
-        expand(f_, id1);
-      }
-      break;
+  /**
+   * Construct the second of the nodes that a node is split into
+   * @param q : id of node that was split
+   * @param e : subformula it was split on (until, release or or)
+   * @return id of new node
+   */
+  private int secondBranch(int q, int e) {
+    Node qr = node(q);
+    int etype = sfType_[e];
 
-      case T_NEXT: {
-        int id1 = newNode();
-        Node n1 = node(id1);
+    int id2 = newNode();
+    Node n2 = node(id2);
 
-        n1.incoming = new OrdSet(qr.incoming);
+    n2.incoming = new OrdSet(qr.incoming);
 
-        n1.fNew = new OrdSet(qr.fNew);
+    n2.fNew = copy(qr.fNew);
 
-        n1.fOld = new OrdSet(qr.fOld);
-        n1.fOld.add(e);
+    switch (etype) {
+      case T_UNTIL:
+      case T_OR:
+        set(n2.fNew, sfChild1_[e]);
+        break;
+      case T_RELEASE:
+        set(n2.fNew, sfChild0_[e]);
+        set(n2.fNew, sfChild1_[e]);
+        break;
+    }
 
-        n1.fNext = new OrdSet(qr.fNext);
-        n1.fNext.add(f_.child(e, 0));
+    n2.fOld = copy(qr.fOld);
+    set(n2.fOld, e);
 
-        expand(f_, id1);
-      }
-      break;
+    n2.fNext = copy(qr.fNext);
+    freeNode(q);
+    return id2;
+  }
 
-      default:
-        throw new RuntimeException("node type = " + etype);
-    }
+  /**
+   * Discard a node that won't be part of the automaton
+   * @param q : id of node
+   */
+  private void freeNode(int q) {
+    forestNodes.free(q - Forest.IDBASE);
   }
 
   /*	Node class for constructing automaton
    */
   private static class Node {
 
+    Node(int words) {
+      fOld = new long[words];
+      fNew = new long[words];
+      fNext = new long[words];
+    }
+
     // list of predecessor nodes
     OrdSet incoming = new OrdSet();
-    // subformulas already processed
-    OrdSet fOld = new OrdSet();
-    OrdSet fNew = new OrdSet();
-    // subformulas yet to be processed
-    OrdSet fNext = new OrdSet();
+    // subformulas already processed, and yet to be processed; these are
+    // bit sets of subformula numbers
+    long[] fOld;
+    long[] fNew;
+    // subformulas to be processed in the next state
+    long[] fNext;
+    // next node in stateIndex_ with the same hash code, or -1
+    int sameHash = -1;
   };
 
   /**
@@ -529,22 +817,27 @@ class LTLCheck
       newNums.setInt(aNodes.getInt(i), i);
     }
 
-    // add states
+    // add states; the literals in each node's Old set are the guard of
+    // the transitions to it
+    Cube[] guards = new Cube[aNodes.size()];
     for (int i = 0; i < aNodes.size(); i++) {
-      int s = b.addState(i == 0);
+      b.addState(i == 0);
 
-      // add flags for prop. vars
+      Cube g = new Cube();
       Node nd = node(aNodes.getInt(i));
-      for (int j = 0; j < nd.fOld.length(); j++) {
-        int f = nd.fOld.get(j);
-        int code = env.getLiteralCode(f);
+      for (int f = 0; f < sfNodes_.length(); f++) {
+        if (!get(nd.fOld, f)) {
+          continue;
+        }
+        int code = literalCode(f);
         boolean neg = (code < 0);
         code = Math.abs(code);
         if (code < 2) {
           continue;
         }
-        b.addPropVar(s, code - 2, !neg);
+        g = g.with(code - 2, !neg);
       }
+      guards[i] = g;
     }
 
     // add transitions
@@ -554,22 +847,18 @@ class LTLCheck
 
       for (int j = 0; j < dest.incoming.length(); j++) {
         int srcNum = dest.incoming.get(j);
-        b.addTransition(newNums.getInt(srcNum), newNums.getInt(destNum));
+        b.addTransition(newNums.getInt(srcNum), i, guards[i]);
       }
     }
 
     // add accepting sets for (a U b) formulas
 
     {
-      DArray nList = env.forest.getNodeList(f_.root());
-
-      for (int i = 0; i < nList.length(); i++) {
-        int root = nList.getInt(i);
-
-        if (f_.nType(root) != T_UNTIL) {
+      for (int root = 0; root < sfNodes_.length(); root++) {
+        if (sfType_[root] != T_UNTIL) {
           continue;
         }
-        int childB = f_.child(root, 1);
+        int childB = sfChild1_[root];
 
         BitSet set = new BitSet();
         for (int j = 0; j < aNodes.size(); j++) {
@@ -578,8 +867,8 @@ class LTLCheck
 
           // see if (a U b) does not exist in src.old
           //  or b IS in src.old
-          if (src.fOld.contains(root) == null
-              || src.fOld.contains(childB) != null
+          if (!get(src.fOld, root)
+              || get(src.fOld, childB)
               ) {
             set.set(newNums.getInt(si));
           }
@@ -604,20 +893,20 @@ class LTLCheck
   }
 
   private void printStateSet(Formula f_, boolean skipNew) {
-    Streams.out.println(
+    println(
         "------------- States ------------------------------------");
     for (int i = 0; i < aNodes.size(); i++) {
       printState(aNodes.getInt(i), skipNew);
     }
     // print the formulas associated with each node
-    Streams.out.println(
+    println(
         "------------- Formulas ----------------------------------");
     DArray list = env.forest.getNodeList(f_.root());
     for (int i = 0; i < list.length(); i++) {
-      Streams.out.println(Tools.f(list.getInt(i), 3) + ": " +
+      println(Tools.f(list.getInt(i), 3) + ": " +
                           f_.toString(list.getInt(i)));
     }
-    Streams.out.println(
+    println(
         "---------------------------------------------------------\n");
   }
 
@@ -637,27 +926,32 @@ class LTLCheck
 
     if (!skipNew) {
       sb.append("  New:");
-      sb.append(n.fNew.toString());
+      sb.append(setString(n.fNew));
       Tools.tab(sb, p);
       p += pamt;
     }
     sb.append("  Old:");
-    sb.append(n.fOld.toString());
+    sb.append(setString(n.fOld));
     Tools.tab(sb, p);
     p += pamt;
     sb.append(" Next:");
-    sb.append(n.fNext.toString());
+    sb.append(setString(n.fNext));
     Tools.tab(sb, p);
     p += pamt;
 
-    Streams.out.println(sb.toString());
+    println(sb.toString());
   }
 
   // flags indicating which vars we've printed warnings about
   private BitSet pvWarn_ = new BitSet();
 
+  // automata constructed for formulas, by canonical form
+  private AutomatonCache cache_;
+
   // symbol table
   private Environment env;
+  // where results are printed; null to print nothing
+  private PrintStream out_ = Streams.out;
 
   // automaton states
   private Forest nForest_ = new Forest();
@@ -671,5 +965,27 @@ class LTLCheck
   // id of special 'init' node
   private int initNode_;
 
+  // tableau expansion:  node being expanded (or -1), stack of pairs
+  // (node, subformula) for nodes split into two, and number of steps
+  // performed
+  private int expanding_;
+  private DArray work_ = new DArray();
+  private int expandSteps_;
+
+  // subformulas of formula being converted:  node ids, by number, and
+  // numbers, by node id
+  private DArray sfNodes_;
+  private IntIntMap sfNumbers_ = new IntIntMap();
+  // number of words in a bit set of subformulas
+  private int sfWords_;
+  // connective of each subformula, the numbers of its children (or -1),
+  // and its literal code (computed when first needed)
+  private int[] sfType_, sfChild0_, sfChild1_, sfLiteral_;
+
+  // tableau nodes in aNodes, by the hash code of their Old and Next
+  // sets; each maps to the most recently added node with that code,
+  // whose sameHash field leads to the rest
+  private IntIntMap stateIndex_ = new IntIntMap();
+
   private int options_;
 }
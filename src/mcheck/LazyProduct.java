@@ -0,0 +1,636 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+
+/**
+ * The product of two Buchi automata, with states generated on demand by
+ * the emptiness search.  Only states reachable from the initial states are
+ * ever represented, and the search stops as soon as an accepting cycle is
+ * found.
+ *
+ * If the automata are generalized, so is the product:  its states are
+ * pairs (i,j), numbered i + j * |Q1|, and it has the accept sets of both
+ * automata.  Emptiness is determined by Couvreur's algorithm, which looks
+ * for a strongly connected component that meets every accept set; no
+ * degeneralization is required.
+ *
+ * Otherwise the product is that constructed by Buchi.calcProduct, with
+ * states numbered i + j * |Q1| + x * |Q1| * |Q2|, for x = 0..2 the copy
+ * tracking which automaton is to accept next.
+ *
+ * Product state numbers are longs, since the product of a large model
+ * and automaton may have more states than an int can number; each
+ * state generated is given a dense (int) id, and it's these ids that
+ * nonEmpty() returns.  Successors are generated in
+ * the same order as calcProduct adds transitions, and the nested depth
+ * first search is used, so nonEmpty() finds the same sequence as
+ * Buchi.nonEmpty() does on the reduced product.
+ */
+class LazyProduct {
+
+  /**
+   * Constructor
+   * @param b1 : first automaton; its state labels label the product states
+   * @param b2 : second automaton
+   * @param general : if true, constructs the generalized product;
+   *   otherwise, neither automaton can be generalized
+   */
+  public LazyProduct(Buchi b1, Buchi b2, boolean general) {
+    Tools.ASSERT(general || (!b1.general() && !b2.general()));
+    this.b1 = b1;
+    this.b2 = b2;
+    general_ = general;
+    rowSize = b1.nStates();
+    pageSize = (long) rowSize * b2.nStates();
+    nSets_ = general ? b1.nAcceptSets() + b2.nAcceptSets() : 1;
+    accWords_ = Math.max(1, (nSets_ + 63) >> 6);
+  }
+
+  /**
+   * Determine if language recognized by product is empty
+   * @return DArray containing sequence of ids of product states ending
+   *   with a cycle, if nonempty (see repeatPoint); null if empty
+   */
+  public DArray nonEmpty() {
+    ids_.clear();
+    nIds_ = 0;
+    hashed_.clear();
+    flagged_.clear();
+    stacked_.clear();
+    dfsSp1_ = 0;
+    dfsSp2_ = 0;
+    loopStart_ = -1;
+
+    long[] init = initialStates();
+    DArray seq = null;
+
+    if (general_) {
+      num_ = new int[16];
+      dead_.clear();
+      counter_ = 0;
+      for (int i = 0; i < init.length && seq == null; i++) {
+        seq = findAcceptingSCC(id(init[i]));
+      }
+      num_ = null;
+      return seq;
+    }
+
+    boolean result = false;
+    for (int i = 0; i < init.length; i++) {
+      result = dfs1(id(init[i]));
+      if (result) {
+        break;
+      }
+    }
+
+    if (result) {
+      seq = new DArray();
+      for (int j = 0; j < dfsSp1_; j++) {
+        seq.addInt(dfsStack1_[j]);
+      }
+      for (int j = 1; j < dfsSp2_; j++) {
+        seq.addInt(dfsStack2_[j]);
+      }
+    }
+    return seq;
+  }
+
+  /**
+   * Find the point at which the sequence returned by nonEmpty() starts
+   * to repeat, and delete its last item (which repeats that point)
+   * @param seq : sequence returned by nonEmpty()
+   * @return index of start of repeating subsequence, or -1 if none found
+   */
+  public int repeatPoint(DArray seq) {
+    int rep = loopStart_;
+    if (rep < 0) {
+      // the cycle closes at the last earlier occurrence of the final state
+      for (int i = seq.size() - 2; i >= 0; i--) {
+        if (seq.getInt(i) == seq.lastInt()) {
+          rep = i;
+          break;
+        }
+      }
+    }
+    if (rep >= 0) {
+      seq.pop();
+    }
+    return rep;
+  }
+
+  /**
+   * Get the initial product states, in increasing order; since initial
+   * states read no input, every pair of them is one
+   * @return array of product state numbers
+   */
+  private long[] initialStates() {
+    OrdSet i1 = b1.initialStates(), i2 = b2.initialStates();
+    long[] a = new long[i1.length() * i2.length()];
+    int k = 0;
+    for (int i = 0; i < i1.length(); i++) {
+      for (int j = 0; j < i2.length(); j++) {
+        a[k++] = i1.get(i) + (long) i2.get(j) * rowSize;
+      }
+    }
+    Arrays.sort(a);
+    return a;
+  }
+
+  /**
+   * Read label of a product state
+   * @param id : id of product state, as returned by nonEmpty()
+   * @return label of the first automaton's state
+   */
+  public String stateLabel(int id) {
+    return b1.stateLabel( (int) (codes_[id] % rowSize));
+  }
+
+  /**
+   * Get the number of product states generated by the last call to
+   * nonEmpty()
+   * @return int
+   */
+  public int statesGenerated() {
+    return nIds_;
+  }
+
+  /**
+   * Get the dense id of a product state, assigning one if it hasn't
+   * been generated yet
+   * @param code : product state number
+   * @return id
+   */
+  private int id(long code) {
+    int id = ids_.get(code, -1);
+    if (id < 0) {
+      id = nIds_++;
+      ids_.put(code, id);
+      if (id == codes_.length) {
+        codes_ = grow(codes_);
+      }
+      codes_[id] = code;
+    }
+    return id;
+  }
+
+  /**
+   * Get the number of successor candidates of a product state; these
+   * are the pairs of transitions of the two automata
+   * @param id : id of product state
+   * @return int
+   */
+  private int candidates(int id) {
+    long code = codes_[id] % pageSize;
+    return b1.degree( (int) (code % rowSize))
+        * b2.degree( (int) (code / rowSize));
+  }
+
+  /**
+   * Get a successor of a product state
+   * @param id : id of product state
+   * @param k : index of candidate (0..candidates-1); the first automaton's
+   *   transitions vary slowest
+   * @return id of successor, or -1 if the guards of the pair of
+   *   transitions contradict each other
+   */
+  private int successor(int id, int k) {
+    long code = codes_[id];
+    int x = (int) (code / pageSize);
+    int ri = (int) (code % rowSize);
+    int qj = (int) ( (code % pageSize) / rowSize);
+
+    int d2 = b2.degree(qj);
+    int t1 = k / d2, t2 = k % d2;
+    if (b1.contradicts(ri, t1, b2, qj, t2)) {
+      return -1;
+    }
+    int rm = b1.next(ri, t1);
+    int qn = b2.next(qj, t2);
+
+    if (general_) {
+      return id(rm + (long) qn * rowSize);
+    }
+
+    int y = x;
+    switch (x) {
+      case 0:
+        if (b1.accepting(rm)) {
+          y = 1;
+        }
+        break;
+      case 1:
+        if (b2.accepting(qn)) {
+          y = 2;
+        }
+        break;
+      case 2:
+        y = 0;
+        break;
+    }
+    return id( (rm + (long) qn * rowSize) + y * pageSize);
+  }
+
+  /**
+   * Determine if a product state is accepting (non-generalized product)
+   * @param id : id of product state
+   * @return boolean
+   */
+  private boolean accepting(int id) {
+    return codes_[id] / pageSize == 2;
+  }
+
+  /**
+   * Determine if a product state is in an accept set
+   * @param id : id of product state
+   * @param k : index of set; for the generalized product, the sets of the
+   *   first automaton are followed by those of the second
+   * @return boolean
+   */
+  private boolean inAcceptSet(int id, int k) {
+    if (!general_) {
+      return accepting(id);
+    }
+    long code = codes_[id];
+    if (k < b1.nAcceptSets()) {
+      return b1.accepting( (int) (code % rowSize), k);
+    }
+    return b2.accepting( (int) (code / rowSize), k - b1.nAcceptSets());
+  }
+
+  /**
+   * Add the accept sets containing a product state to a set of flags
+   * @param id : id of product state
+   * @param acc : flags, one bit per accept set
+   * @param offset : position of flags within acc
+   */
+  private void addAcceptance(int id, long[] acc, int offset) {
+    for (int k = 0; k < nSets_; k++) {
+      if (inAcceptSet(id, k)) {
+        acc[offset + (k >> 6)] |= 1L << k;
+      }
+    }
+  }
+
+  /**
+   * Search for a reachable strongly connected component that contains
+   * a cycle, and that meets every accept set (Couvreur's algorithm).
+   * Components are found as in Tarjan's algorithm; the stack of
+   * candidate component roots records, for each, the accept sets met by
+   * the states merged into it so far.
+   * @param q0 : id of state to start from
+   * @return sequence of product states leading to and around the cycle,
+   *   or null if none found
+   */
+  private DArray findAcceptingSCC(int q0) {
+    if (num(q0) != 0) {
+      return null;
+    }
+    int W = accWords_;
+    long[] merged = new long[W];
+
+    visit(q0);
+    while (dfsSp1_ > 0) {
+      int top = dfsSp1_ - 1;
+      int q = dfsStack1_[top];
+      int pos = dfsCursor1_[top];
+
+      if (pos < candidates(q)) {
+        dfsCursor1_[top] = pos + 1;
+        int q2 = successor(q, pos);
+        if (q2 < 0 || dead_.get(q2)) {
+          continue;
+        }
+        if (num(q2) == 0) {
+          visit(q2);
+          continue;
+        }
+
+        // q2 is in a component still being explored, so the roots
+        // above it belong to the same component; merge them
+        Arrays.fill(merged, 0);
+        while (rootNum_[rootSp_ - 1] > num(q2)) {
+          rootSp_--;
+          for (int w = 0; w < W; w++) {
+            merged[w] |= rootAcc_[rootSp_ * W + w];
+          }
+        }
+        int r = rootSp_ - 1;
+        boolean all = true;
+        for (int w = 0; w < W; w++) {
+          rootAcc_[r * W + w] |= merged[w];
+          if (rootAcc_[r * W + w] != fullMask(w)) {
+            all = false;
+          }
+        }
+        if (all) {
+          return lasso(rootNum_[r]);
+        }
+        continue;
+      }
+
+      // all successors examined; if q is a root, its component is
+      // complete, and contains no accepting cycle
+      dfsSp1_--;
+      if (rootNum_[rootSp_ - 1] == num(q)) {
+        rootSp_--;
+        int s;
+        do {
+          s = dfsStack2_[--dfsSp2_];
+          dead_.set(s);
+        }
+        while (s != q);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the flags word with a bit set for every accept set
+   * @param w : index of word
+   * @return long
+   */
+  private long fullMask(int w) {
+    int bits = nSets_ - (w << 6);
+    return bits >= 64 ? -1L : (1L << bits) - 1;
+  }
+
+  /**
+   * Get the dfs number of a state (Couvreur's algorithm)
+   * @param id : id of product state
+   * @return dfs number, or 0 if not yet visited
+   */
+  private int num(int id) {
+    return id < num_.length ? num_[id] : 0;
+  }
+
+  /**
+   * Visit a state (Couvreur's algorithm):  push it onto the dfs stack
+   * (dfsStack1_), the stack of states in unfinished components
+   * (dfsStack2_), and the stack of root candidates
+   * @param q : id of product state
+   */
+  private void visit(int q) {
+    while (q >= num_.length) {
+      num_ = grow(num_);
+    }
+    num_[q] = ++counter_;
+
+    if (dfsSp1_ == dfsStack1_.length) {
+      dfsStack1_ = grow(dfsStack1_);
+      dfsCursor1_ = grow(dfsCursor1_);
+    }
+    dfsStack1_[dfsSp1_] = q;
+    dfsCursor1_[dfsSp1_] = 0;
+    dfsSp1_++;
+
+    if (dfsSp2_ == dfsStack2_.length) {
+      dfsStack2_ = grow(dfsStack2_);
+    }
+    dfsStack2_[dfsSp2_++] = q;
+
+    int W = accWords_;
+    if (rootSp_ == rootNum_.length) {
+      rootNum_ = grow(rootNum_);
+      long[] a = new long[rootNum_.length * W];
+      System.arraycopy(rootAcc_, 0, a, 0, rootAcc_.length);
+      rootAcc_ = a;
+    }
+    rootNum_[rootSp_] = num_[q];
+    Arrays.fill(rootAcc_, rootSp_ * W, (rootSp_ + 1) * W, 0);
+    addAcceptance(q, rootAcc_, rootSp_ * W);
+    rootSp_++;
+  }
+
+  /**
+   * Construct the sequence for an accepting component:  the dfs stack
+   * leading to the component's root, then a cycle from the root through
+   * every accept set and back
+   * @param rootNum : dfs number of the component's root; the component
+   *   consists of the live states with dfs number at least this
+   * @return sequence of product states, ending with the root
+   */
+  private DArray lasso(int rootNum) {
+    DArray seq = new DArray();
+    int root = -1;
+    for (int j = 0; j < dfsSp1_; j++) {
+      int q = dfsStack1_[j];
+      if (num(q) == rootNum) {
+        root = q;
+        break;
+      }
+      seq.addInt(q);
+    }
+    loopStart_ = seq.length();
+    seq.addInt(root);
+
+    long[] met = new long[accWords_];
+    addAcceptance(root, met, 0);
+    int cur = root;
+    for (int k = 0; k < nSets_; k++) {
+      if ( (met[k >> 6] & (1L << k)) != 0) {
+        continue;
+      }
+      DArray path = pathWithin(cur, k, -1, rootNum);
+      for (int i = 0; i < path.length(); i++) {
+        cur = path.getInt(i);
+        addAcceptance(cur, met, 0);
+        seq.addInt(cur);
+      }
+    }
+    DArray path = pathWithin(cur, -1, root, rootNum);
+    for (int i = 0; i < path.length(); i++) {
+      seq.addInt(path.getInt(i));
+    }
+    return seq;
+  }
+
+  /**
+   * Find a shortest path within the component being explored
+   * @param from : id of starting state
+   * @param set : if >= 0, the path leads to a state in this accept set
+   * @param target : if set < 0, the id of the state the path leads to
+   * @param rootNum : dfs number of component's root
+   * @return ids of states on path, excluding from; at least one
+   */
+  private DArray pathWithin(int from, int set, int target, int rootNum) {
+    // predecessor of each state reached by the search
+    IntIntMap parent = new IntIntMap();
+    DArray queue = new DArray();
+    queue.addInt(from);
+    parent.put(from, from);
+
+    for (int head = 0; ; head++) {
+      int q = queue.getInt(head);
+      for (int k = 0; k < candidates(q); k++) {
+        int q2 = successor(q, k);
+        if (q2 < 0 || dead_.get(q2) || num(q2) < rootNum) {
+          continue;
+        }
+        if (set >= 0 ? inAcceptSet(q2, set) : q2 == target) {
+          DArray path = new DArray();
+          path.addInt(q2);
+          for (int u = q; u != from; u = parent.get(u, -1)) {
+            path.addInt(u);
+          }
+          // reverse into order from 'from'
+          DArray out = new DArray();
+          for (int i = path.length() - 1; i >= 0; i--) {
+            out.addInt(path.getInt(i));
+          }
+          return out;
+        }
+        if (!parent.containsKey(q2)) {
+          parent.put(q2, q);
+          queue.addInt(q2);
+        }
+      }
+    }
+  }
+
+  /**
+   * Perform emptiness depth-first search, part 1 (see Buchi.dfs1)
+   * @param q0 : id of state to start from
+   * @return true if infinite path found
+   */
+  private boolean dfs1(int q0) {
+    int base = dfsSp1_;
+    push1(q0);
+
+    while (dfsSp1_ > base) {
+      int top = dfsSp1_ - 1;
+      int q = dfsStack1_[top];
+      int pos = dfsCursor1_[top];
+
+      if (pos < candidates(q)) {
+        dfsCursor1_[top] = pos + 1;
+        int q2 = successor(q, pos);
+        if (q2 >= 0 && !hashed_.get(q2)) {
+          push1(q2);
+        }
+        continue;
+      }
+
+      if (accepting(q) && dfs2(q)) {
+        return true;
+      }
+      dfsSp1_--;
+      stacked_.set(q, false);
+    }
+    return false;
+  }
+
+  private void push1(int q) {
+    stacked_.set(q);
+    hashed_.set(q);
+    if (dfsSp1_ == dfsStack1_.length) {
+      dfsStack1_ = grow(dfsStack1_);
+      dfsCursor1_ = grow(dfsCursor1_);
+    }
+    dfsStack1_[dfsSp1_] = q;
+    dfsCursor1_[dfsSp1_] = 0;
+    dfsSp1_++;
+  }
+
+  /**
+   * Perform emptiness depth-first search, part 2 (see Buchi.dfs2)
+   * @param q0 : id of accepting state to start from
+   * @return true if infinite path found
+   */
+  private boolean dfs2(int q0) {
+    dfsSp2_ = 0;
+    push2(q0);
+
+    while (dfsSp2_ > 0) {
+      int top = dfsSp2_ - 1;
+      int q = dfsStack2_[top];
+      int pos = dfsCursor2_[top];
+
+      if (pos < candidates(q)) {
+        dfsCursor2_[top] = pos + 1;
+        int q2 = successor(q, pos);
+        if (q2 < 0) {
+          continue;
+        }
+        if (stacked_.get(q2)) {
+          push2(q2);
+          return true;
+        }
+        if (!flagged_.get(q2)) {
+          push2(q2);
+        }
+        continue;
+      }
+      dfsSp2_--;
+    }
+    return false;
+  }
+
+  private void push2(int q) {
+    flagged_.set(q);
+    if (dfsSp2_ == dfsStack2_.length) {
+      dfsStack2_ = grow(dfsStack2_);
+      dfsCursor2_ = grow(dfsCursor2_);
+    }
+    dfsStack2_[dfsSp2_] = q;
+    dfsCursor2_[dfsSp2_] = 0;
+    dfsSp2_++;
+  }
+
+  private static int[] grow(int[] a) {
+    int[] b = new int[Math.max(16, a.length * 2)];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private static long[] grow(long[] a) {
+    long[] b = new long[Math.max(16, a.length * 2)];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private Buchi b1, b2;
+  // true if product is generalized
+  private boolean general_;
+  // number of accept sets, and number of words in a set of flags
+  // representing them
+  private int nSets_, accWords_;
+  // number of states in first automaton, and in the product of the
+  // two automata
+  private int rowSize;
+  private long pageSize;
+
+  // dense ids of the product states generated so far, by product state
+  // number, and the reverse mapping
+  private LongIntMap ids_ = new LongIntMap();
+  private long[] codes_ = new long[0];
+  private int nIds_;
+
+  // dfs usage (by id): bit is set if state is 'hashed', 'flagged', or on
+  // the first stack
+  private BitSet hashed_ = new BitSet();
+  private BitSet flagged_ = new BitSet();
+  private BitSet stacked_ = new BitSet();
+
+  // dfs stacks:  ids of states, index of next successor candidate to
+  // examine for each, and number of entries in use
+  private int[] dfsStack1_ = new int[0], dfsCursor1_ = new int[0];
+  private int[] dfsStack2_ = new int[0], dfsCursor2_ = new int[0];
+  private int dfsSp1_, dfsSp2_;
+  // position in sequence returned by nonEmpty() where the cycle starts,
+  // if known (the state it starts at may appear again within the cycle)
+  private int loopStart_;
+
+  // Couvreur's algorithm uses dfsStack1_ and dfsCursor1_ as the dfs
+  // stack, and dfsStack2_ as the stack of states in unfinished components.
+  // dfs number of each state (by id); 0 if not yet visited
+  private int[] num_;
+  private int counter_;
+  // bit is set if state's component is complete
+  private BitSet dead_ = new BitSet();
+  // stack of root candidates:  dfs number, and flags for the accept sets
+  // met by the component (accWords_ words each)
+  private int[] rootNum_ = new int[0];
+  private long[] rootAcc_ = new long[0];
+  private int rootSp_;
+}
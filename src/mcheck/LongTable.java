@@ -0,0 +1,94 @@
+package mcheck;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * A read-only table of longs, held either in an array, or in a file
+ * that's mapped into memory; as with IntTable, a mapped table is split
+ * into segments (of SEG_LONGS longs), each mapped separately.
+ */
+abstract class LongTable {
+
+  /**
+   * Get an entry of the table
+   * @param i : index of entry, 0..length()-1
+   * @return long
+   */
+  public abstract long get(int i);
+
+  /**
+   * Get the number of entries in the table
+   * @return int
+   */
+  public abstract int length();
+
+  /**
+   * Construct a table that reads from an array; the array isn't copied
+   * @param a : array
+   * @return LongTable
+   */
+  public static LongTable wrap(long[] a) {
+    return new ArrayTable(a);
+  }
+
+  /**
+   * Construct a table that reads from part of a file, without copying it
+   * @param ch : channel of file
+   * @param pos : position of the table's first entry in the file; the
+   *   entries are big-endian
+   * @param len : number of entries
+   * @return LongTable
+   */
+  public static LongTable map(FileChannel ch, long pos, int len) throws
+      IOException {
+    LongBuffer[] segs = new LongBuffer[ (int) ( ( (long) len + SEG_LONGS - 1)
+                                               >> SEG_SHIFT)];
+    for (int k = 0; k < segs.length; k++) {
+      int segLen = Math.min(SEG_LONGS, len - (k << SEG_SHIFT));
+      segs[k] = ch.map(FileChannel.MapMode.READ_ONLY,
+                       pos + 8L * (k << SEG_SHIFT), 8L * segLen)
+          .asLongBuffer();
+    }
+    return new MappedTable(segs, len);
+  }
+
+  private static final int SEG_SHIFT = 27, SEG_LONGS = 1 << SEG_SHIFT;
+
+  private static class ArrayTable
+      extends LongTable {
+    ArrayTable(long[] a) {
+      a_ = a;
+    }
+
+    public long get(int i) {
+      return a_[i];
+    }
+
+    public int length() {
+      return a_.length;
+    }
+
+    private long[] a_;
+  }
+
+  private static class MappedTable
+      extends LongTable {
+    MappedTable(LongBuffer[] segs, int len) {
+      segs_ = segs;
+      len_ = len;
+    }
+
+    public long get(int i) {
+      return segs_[i >>> SEG_SHIFT].get(i & (SEG_LONGS - 1));
+    }
+
+    public int length() {
+      return len_;
+    }
+
+    private LongBuffer[] segs_;
+    private int len_;
+  }
+}
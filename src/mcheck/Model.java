@@ -3,6 +3,8 @@ package mcheck;
 import base.*;
 import java.util.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 
 class Model
     implements IScript {
@@ -17,21 +19,93 @@ class Model
     varsUsed_.clear();
     initialStates_.clear();
     tbl_.clear();
-    names_.clear();
-    ids_.clear();
+    nameArray_ = new int[0];
+    names_ = IntTable.wrap(nameArray_);
+    nStates_ = 0;
+    loaded_ = false;
+    succOffsets_ = null;
+    succTargets_ = null;
+    predOffsets_ = null;
+    predSources_ = null;
+    varStates_.clear();
+    fairSets_.clear();
+    fairStates_.clear();
+    stateVars_ = null;
+    varWords_ = 0;
   }
 
+  /*	Parse a model definition, from the opening '{' to the closing '}'.
+                  Unless the scanner is echoing its input, the body is read by
+                  a ModelReader, which scans characters directly; otherwise,
+                  it's read a token at a time.
+                  > scan						scanner; next token must be '{'
+   */
   public void parse(base.Scanner scan) {
     final boolean db = false;
 
-    boolean initDef = false;
     BitSet statesDefined = new BitSet();
 
-    scan.read(T_MODELOP);
-    Token t = Token.eofToken();
+    Token t = scan.read(T_MODELOP);
     if (db) {
       Streams.out.println("Model.parse:");
     }
+    if (scan.echo() || scan.peeked()) {
+      t = parseTokens(scan, statesDefined);
+    }
+    else {
+      t = new ModelReader(this, env.vars, scan, t).read(statesDefined);
+    }
+
+    // verify that no undefined transitions are occurring
+
+    for (int i = 0; i < states(); i++) {
+      KState s = state(i);
+      for (int j = 0; j < s.trans_.length(); j++) {
+        int destName = s.trans_.get(j);
+        int dest = stateId(destName);
+        if (!statesDefined.get(dest)) {
+          t.exception("Transition to unknown state: state "
+                      + stateName(i) +
+                      " to " + destName);
+        }
+      }
+    }
+
+    for (int i = 0; i < fairSets_.length(); i++) {
+      OrdSet names = ( (FairSet) fairSets_.get(i)).states_;
+      for (int j = 0; j < names.length(); j++) {
+        int id = stateId(names.get(j));
+        if (id < 0 || !statesDefined.get(id)) {
+          t.exception("Fairness constraint refers to unknown state: "
+                      + names.get(j));
+        }
+      }
+    }
+
+    // if no initial states were defined, make every state
+    // an initial one
+    if (initialStates_.isEmpty()) {
+      for (int i = 0; i < states(); i++) {
+        initialStates_.add(stateName(i));
+      }
+    }
+
+    freeze();
+
+    if (db) {
+      Streams.out.println("Model.parse:\n" + this);
+    }
+  }
+
+  /*	Parse the body of a model definition a token at a time
+                  > scan						scanner, positioned after the '{'
+                  > statesDefined		ids of states defined are set here
+                  < the closing '}' token
+   */
+  private Token parseTokens(base.Scanner scan, BitSet statesDefined) {
+    final boolean db = false;
+
+    Token t = Token.eofToken();
     while (true) {
       t = scan.peek();
       if (db) {
@@ -42,6 +116,13 @@ class Model
         break;
       }
 
+      // fairness constraints follow the state definitions
+      if (t.id(T_COMPAREMID) || !fairSets_.isEmpty()) {
+        scan.read(T_COMPAREMID);
+        parseFairSet(scan);
+        continue;
+      }
+
       boolean initial = false;
 
       if (scan.peek(T_INITIALSTATE)) {
@@ -52,21 +133,10 @@ class Model
       t = scan.read(T_INTVAL);
       int num = base.Scanner.parseInt(t.text());
 
-      int id = stateId(num);
-      if (id >= 0
-          && statesDefined.get(id)) {
+      if (!defineState(num, initial, statesDefined)) {
         t.exception("Duplicate state definition");
       }
 
-      if (id < 0) {
-        id = addState(num);
-      }
-      statesDefined.set(id);
-      if (initial) {
-        setInitialState(num);
-        initDef = true;
-      }
-
       boolean first = true; //	require at least one transition?
 
       while (true) {
@@ -77,10 +147,7 @@ class Model
         first = false;
         scan.read();
         int num2 = base.Scanner.parseInt(t.text());
-        if (stateId(num2) < 0) {
-          addState(num2);
-        }
-        addTransition(num, num2);
+        defineTransition(num, num2);
       }
 
       first = true;
@@ -96,74 +163,542 @@ class Model
           if (db) {
             Streams.out.println(" searching for variable " + t.text());
           }
-
-          //pr((" searching for %s\n",t.str().s() ));
           int varNum = env.vars.var(t.text(), true);
           if (db) {
             Streams.out.println(" varNum=" + varNum);
           }
+          definePropVar(num, varNum);
+        }
+      }
+    }
+    return t;
+  }
 
-          //pr(("  returned %d\n",varNum));
-//			int varNum = varToInt(t.str().charAt(0));
-          varsUsed_.set(varNum);
+  /*	Parse a fairness constraint (following the ':'):  a list of
+                  state names and/or prop. vars, at least one.  The
+                  constraint is satisfied by the listed states, and by the
+                  states in which any of the listed vars is true.  A fair path
+                  passes through states satisfying every constraint infinitely
+                  often.
+   */
+  private void parseFairSet(base.Scanner scan) {
+    OrdSet states = new OrdSet();
+    BitSet vars = new BitSet();
+    boolean first = true;
+    while (true) {
+      Token t = scan.peek();
+      if (t.id(T_INTVAL)) {
+        scan.read();
+        states.add(base.Scanner.parseInt(t.text()));
+      }
+      else if (t.id(T_PROPVAR) || first) {
+        t = scan.read(T_PROPVAR);
+        vars.set(env.vars.var(t.text(), true));
+      }
+      else {
+        break;
+      }
+      first = false;
+    }
+    addFairSet(states, vars);
+  }
 
-          addPropVar(num, varNum);
-        }
+  /*	Define a state, as read from a model definition
+                  > num							name of state
+                  > initial					true if it's an initial state
+                  > statesDefined		ids of states defined so far
+                  < false if state was already defined
+   */
+  boolean defineState(int num, boolean initial, BitSet statesDefined) {
+    int id = stateId(num);
+    if (id >= 0 && statesDefined.get(id)) {
+      return false;
+    }
+    if (id < 0) {
+      id = addState(num);
+    }
+    statesDefined.set(id);
+    if (initial) {
+      setInitialState(num);
+    }
+    return true;
+  }
+
+  /*	Add a transition read from a model definition, adding its
+                  destination state if it hasn't been seen yet
+                  > src							name of source state
+                  > dest						name of destination state
+   */
+  void defineTransition(int src, int dest) {
+    if (stateId(dest) < 0) {
+      addState(dest);
+    }
+    addTransition(src, dest);
+  }
+
+  /*	Set a prop. var read from a model definition
+                  > state						name of state
+                  > var							index of var
+   */
+  void definePropVar(int state, int var) {
+    varsUsed_.set(var);
+    addPropVar(state, var);
+  }
+
+  /*	Add a fairness constraint read from a model definition
+                  > states					names of states listed
+                  > vars						prop. vars listed
+   */
+  void addFairSet(OrdSet states, BitSet vars) {
+    FairSet fs = new FairSet();
+    fs.states_ = states;
+    fs.vars_ = vars;
+    fairSets_.add(fs);
+  }
+
+  /*	Determine if any fairness constraints have been added
+   */
+  boolean hasFairSets() {
+    return !fairSets_.isEmpty();
+  }
+
+  /*	Build the compressed transition tables (successors and
+                  predecessors) from the states' successor lists.  Must be
+                  called after the last state or transition has been added,
+                  and before any of the id-based methods (succStart, succEnd,
+                  succ, predStart, predEnd, pred) are used.
+   */
+  public void freeze() {
+    // a loaded model's tables are already frozen
+    if (loaded_) {
+      return;
+    }
+    int n = states();
+    int[] offsets = new int[n + 1];
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      offsets[i] = total;
+      total += state(i).trans_.length();
+    }
+    offsets[n] = total;
+
+    // successors of each state are stored by id, in the same
+    // (name-sorted) order as the state's transition list
+    int[] targets = new int[total];
+    for (int i = 0; i < n; i++) {
+      OrdSet tr = state(i).trans_;
+      int k = offsets[i];
+      for (int j = 0; j < tr.length(); j++) {
+        targets[k++] = stateId(tr.get(j), true);
       }
     }
+    succOffsets_ = IntTable.wrap(offsets);
+    succTargets_ = IntTable.wrap(targets);
 
-    // verify that no undefined transitions are occurring
+    // pack the prop. vars of each state into words
+    int maxVar = 0;
+    for (int i = 0; i < n; i++) {
+      maxVar = Math.max(maxVar, state(i).pv_.length());
+    }
+    varWords_ = (maxVar + 63) >> 6;
+    long[] vars = new long[n * varWords_];
+    for (int i = 0; i < n; i++) {
+      long[] w = state(i).pv_.toLongArray();
+      System.arraycopy(w, 0, vars, i * varWords_, w.length);
+    }
+    stateVars_ = LongTable.wrap(vars);
 
+    buildIndexes();
+  }
 
-    for (int i = 0; i < ids_.length(); i++) {
-      //if (!statesUsed_.get(i)) continue;
-      KState s = state(i);
-//		if (!s.used()) continue;
-//		pt((" trans length = %d\n",s.trans_.length() ));
-      for (int j = 0; j < s.trans_.length(); j++) {
-        int destName = s.trans_.get(j);
-        int dest = stateId(destName);
-        if (!statesDefined.get(dest)) {
-          t.exception("Transition to unknown state: state "
-                      + stateName(i) +
-                      " to " + destName);
+  /*	Build the tables derived from the frozen successor table and
+                  the packed prop. vars of each state:  the predecessor table,
+                  and the bit vectors for each prop. var and fairness constraint
+   */
+  private void buildIndexes() {
+    int n = states();
+    IntTable offsets = succOffsets_;
+    IntTable targets = succTargets_;
+    int total = targets.length();
+
+    // build the reverse (predecessor) table by counting sort on the
+    // targets; predecessors of each state end up in increasing id order
+    int[] pOffsets = new int[n + 1];
+    for (int k = 0; k < total; k++) {
+      pOffsets[targets.get(k) + 1]++;
+    }
+    for (int i = 0; i < n; i++) {
+      pOffsets[i + 1] += pOffsets[i];
+    }
+    int[] fill = DArray.copy(pOffsets, 0, n);
+    int[] sources = new int[total];
+    for (int i = 0; i < n; i++) {
+      for (int k = offsets.get(i); k < offsets.get(i + 1); k++) {
+        sources[fill[targets.get(k)]++] = i;
+      }
+    }
+    predOffsets_ = pOffsets;
+    predSources_ = sources;
+
+    // build a bit vector for each prop. var, with a bit set for
+    // each state the variable is true in
+    varStates_.clear();
+    for (int i = 0; i < n; i++) {
+      for (int w = 0; w < varWords_; w++) {
+        for (long bits = stateVars_.get(i * varWords_ + w); bits != 0;
+             bits &= bits - 1) {
+          int vn = (w << 6) + Long.numberOfTrailingZeros(bits);
+          long[] v = propVarStates(vn);
+          if (v == null) {
+            v = new long[(n + 63) >> 6];
+            varStates_.set(vn, v);
+          }
+          v[i >> 6] |= 1L << i;
         }
       }
     }
 
-    // if no initial states were defined, make every state
-    // an initial one
-    if (!initDef) {
-      for (int i = 0; i < ids_.length(); i++) {
-//			if (statesUsed_.get(i)) {
-        initialStates_.add(stateName(i));
+    // build a bit vector for each fairness constraint
+    fairStates_.clear();
+    for (int k = 0; k < fairSets_.length(); k++) {
+      FairSet fs = (FairSet) fairSets_.get(k);
+      long[] v = new long[(n + 63) >> 6];
+      for (int j = 0; j < fs.states_.length(); j++) {
+        int id = stateId(fs.states_.get(j), true);
+        v[id >> 6] |= 1L << id;
       }
-//			}
+      for (int vn = fs.vars_.nextSetBit(0); vn >= 0;
+           vn = fs.vars_.nextSetBit(vn + 1)) {
+        long[] pv = propVarStates(vn);
+        if (pv != null) {
+          for (int w = 0; w < v.length; w++) {
+            v[w] |= pv[w];
+          }
+        }
+      }
+      fairStates_.add(v);
     }
+  }
 
-    if (db) {
-      Streams.out.println("Model.parse:\n" + this);
+  private static final int
+      VERSION = 0x9a01 // magic number for binary model file version
+      , HEADER_BYTES = 28 // size of binary model file header
+      ;
+
+  /*	Write the model to a binary file, which read() can load without
+                  parsing.  The model must be frozen.
+                  > f								file to write
+   */
+  public void write(File f) throws IOException {
+    DataOutputStream w = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(f), 1 << 16));
+    try {
+      write(w);
+    }
+    finally {
+      w.close();
     }
   }
 
-  /*	Add a state to the model
+  /*	Write the model in binary form.  All values are big-endian; the
+                  tables of ints start on a 4-byte boundary, and the table of
+                  longs on an 8-byte boundary:
+
+                  u16      VERSION
+                  u16      0
+                  i32      number of states (n)
+                  i32      number of transitions (t)
+                  i32      number of prop. vars (v)
+                  i32      words per state in the prop. var. table (w)
+                  i32      number of initial states (k)
+                  i32      number of fairness constraints (f)
+                  i32[n]   names of states, by id
+                  i32[n+1] position of first successor of each state
+                  i32[t]   ids of successors
+                  i32[k]   names of initial states
+                  0 or 4 bytes of padding
+                  i64[n*w] prop. vars true in each state, as bit vectors
+                  v times: u16 length, followed by name of var (UTF-8)
+                  f times: i32 number of state names, followed by names;
+                           i32 number of prop. vars, followed by indices
+
+                  > w								stream to write to
+   */
+  public void write(DataOutputStream w) throws IOException {
+    int n = states();
+    int nVars = env.vars.length();
+    w.writeShort(VERSION);
+    w.writeShort(0);
+    w.writeInt(n);
+    w.writeInt(succTargets_.length());
+    w.writeInt(nVars);
+    w.writeInt(varWords_);
+    w.writeInt(initialStates_.length());
+    w.writeInt(fairSets_.length());
+    for (int i = 0; i < n; i++) {
+      w.writeInt(names_.get(i));
+    }
+    for (int i = 0; i <= n; i++) {
+      w.writeInt(succOffsets_.get(i));
+    }
+    for (int i = 0; i < succTargets_.length(); i++) {
+      w.writeInt(succTargets_.get(i));
+    }
+    for (int i = 0; i < initialStates_.length(); i++) {
+      w.writeInt(initialStates_.get(i));
+    }
+    // pad from the layout, not w.size(), which stops counting at 2GB
+    long varPos = HEADER_BYTES
+        + 4L * ( (long) n + n + 1 + succTargets_.length()
+                + initialStates_.length());
+    if ( (varPos & 4) != 0) {
+      w.writeInt(0);
+    }
+    for (int i = 0; i < n * varWords_; i++) {
+      w.writeLong(stateVars_.get(i));
+    }
+    for (int i = 0; i < nVars; i++) {
+      byte[] b = env.vars.var(i).getBytes("UTF-8");
+      w.writeShort(b.length);
+      w.write(b);
+    }
+    for (int k = 0; k < fairSets_.length(); k++) {
+      FairSet fs = (FairSet) fairSets_.get(k);
+      w.writeInt(fs.states_.length());
+      for (int j = 0; j < fs.states_.length(); j++) {
+        w.writeInt(fs.states_.get(j));
+      }
+      w.writeInt(fs.vars_.cardinality());
+      for (int vn = fs.vars_.nextSetBit(0); vn >= 0;
+           vn = fs.vars_.nextSetBit(vn + 1)) {
+        w.writeInt(vn);
+      }
+    }
+  }
+
+  /*	Load a model from a binary file written by write().  The file is
+                  mapped into memory, and its tables are checked in place and
+                  used as the frozen tables, without being copied; each table
+                  is mapped in segments, so the file may exceed 2GB.  No
+                  per-state objects are constructed, so the loaded model can't
+                  be modified.  Its prop. vars are added to the environment.
+                  > f								file to read
+   */
+  public void read(File f) throws IOException {
+    clear();
+    RandomAccessFile raf = new RandomAccessFile(f, "r");
+    try {
+      read(raf.getChannel());
+    }
+    catch (EOFException e) {
+      clear();
+      throw new IOException("Model file truncated");
+    }
+    catch (IOException e) {
+      clear();
+      throw e;
+    }
+    finally {
+      raf.close();
+    }
+    loaded_ = true;
+    buildIndexes();
+  }
+
+  /*	Load a model from a channel containing a binary model
+                  > ch							channel, positioned at start of file
+   */
+  private void read(FileChannel ch) throws IOException {
+    ByteBuffer hdr = ByteBuffer.allocate(HEADER_BYTES);
+    while (hdr.hasRemaining() && ch.read(hdr) >= 0) {
+    }
+    if (hdr.hasRemaining()) {
+      throw new IOException("Model file truncated");
+    }
+    hdr.flip();
+    int v = hdr.getShort() & 0xffff;
+    switch (v) {
+      case VERSION:
+        break;
+      default:
+        throw new IOException("Bad version in model file");
+    }
+    hdr.getShort();
+    int n = hdr.getInt(), nTrans = hdr.getInt(), nVars = hdr.getInt(),
+        words = hdr.getInt(), nInit = hdr.getInt(), nFair = hdr.getInt();
+    if ( (n | nTrans | nVars | words | nInit | nFair) < 0
+        || n == Integer.MAX_VALUE
+        || (long) words * 64 > (long) nVars + 63
+        || (long) n * words > Integer.MAX_VALUE) {
+      throw new IOException("Bad model file header");
+    }
+    long offsetPos = HEADER_BYTES + 4L * n;
+    long targetPos = offsetPos + 4L * (n + 1);
+    long initPos = targetPos + 4L * nTrans;
+    long varPos = initPos + 4L * nInit;
+    varPos += varPos & 4;
+    long tailPos = varPos + 8L * n * words;
+    if (tailPos > ch.size()) {
+      throw new IOException("Model file truncated");
+    }
+
+    IntTable names = IntTable.map(ch, HEADER_BYTES, n);
+    IntTable offsets = IntTable.map(ch, offsetPos, n + 1);
+    IntTable targets = IntTable.map(ch, targetPos, nTrans);
+    IntTable init = IntTable.map(ch, initPos, nInit);
+
+    // check the transition table in place
+    if (offsets.get(0) != 0 || offsets.get(n) != nTrans) {
+      throw new IOException("Bad transition table in model file");
+    }
+    for (int i = 0; i < n; i++) {
+      if (offsets.get(i) > offsets.get(i + 1)) {
+        throw new IOException("Bad transition table in model file");
+      }
+    }
+    for (int k = 0; k < nTrans; k++) {
+      int t = targets.get(k);
+      if (t < 0 || t >= n) {
+        throw new IOException("Bad transition in model file");
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      int name = names.get(i);
+      if (tbl_.get(name, -1) >= 0) {
+        throw new IOException("Duplicate state in model file: " + name);
+      }
+      tbl_.put(name, i);
+    }
+    names_ = names;
+    nameArray_ = null;
+    nStates_ = n;
+    succOffsets_ = offsets;
+    succTargets_ = targets;
+    for (int i = 0; i < nInit; i++) {
+      int name = init.get(i);
+      if (stateId(name) < 0) {
+        throw new IOException("Initial state undefined in model file: "
+                              + name);
+      }
+      initialStates_.add(name);
+    }
+
+    // read the var names, and map the file's vars to the environment's
+    ch.position(tailPos);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        Channels.newInputStream(ch), 1 << 16));
+    int[] varMap = new int[nVars];
+    boolean identity = true;
+    for (int i = 0; i < nVars; i++) {
+      byte[] b = new byte[in.readUnsignedShort()];
+      in.readFully(b);
+      varMap[i] = env.vars.var(new String(b, "UTF-8"), true);
+      identity &= (varMap[i] == i);
+    }
+
+    // use the var table in place, unless the vars must be renumbered
+    LongTable vars = LongTable.map(ch, varPos, n * words);
+    if (identity) {
+      varWords_ = words;
+      stateVars_ = vars;
+    }
+    else {
+      int maxVar = 0;
+      for (int i = 0; i < nVars; i++) {
+        maxVar = Math.max(maxVar, varMap[i] + 1);
+      }
+      varWords_ = (maxVar + 63) >> 6;
+      long[] renumbered = new long[n * varWords_];
+      for (int i = 0; i < n; i++) {
+        for (int w = 0; w < words; w++) {
+          for (long bits = vars.get(i * words + w); bits != 0;
+               bits &= bits - 1) {
+            int vn = varMap[ (w << 6) + Long.numberOfTrailingZeros(bits)];
+            renumbered[i * varWords_ + (vn >> 6)] |= 1L << vn;
+          }
+        }
+      }
+      stateVars_ = LongTable.wrap(renumbered);
+    }
+    for (int i = 0; i < n * varWords_; i++) {
+      for (long bits = stateVars_.get(i); bits != 0; bits &= bits - 1) {
+        varsUsed_.set( ( (i % varWords_) << 6)
+                      + Long.numberOfTrailingZeros(bits));
+      }
+    }
+
+    for (int k = 0; k < nFair; k++) {
+      FairSet fs = new FairSet();
+      int cnt = in.readInt();
+      for (int j = 0; j < cnt; j++) {
+        int name = in.readInt();
+        if (stateId(name) < 0) {
+          throw new IOException(
+              "Fairness constraint refers to unknown state: " + name);
+        }
+        fs.states_.add(name);
+      }
+      cnt = in.readInt();
+      for (int j = 0; j < cnt; j++) {
+        int vn = in.readInt();
+        if (vn < 0 || vn >= nVars) {
+          throw new IOException("Bad fairness constraint in model file");
+        }
+        fs.vars_.set(varMap[vn]);
+      }
+      fairSets_.add(fs);
+    }
+  }
+
+  /*	Determine the number of fairness constraints
+   */
+  public int fairSets() {
+    return fairSets_.length();
+  }
+
+  /*	Get the states satisfying a fairness constraint, from the frozen
+                  tables
+                  > k								index of constraint (0..fairSets()-1)
+                  < bit vector, with bit i set if state with id i satisfies
+                      the constraint (do not modify)
+   */
+  public long[] fairStates(int k) {
+    return (long[]) fairStates_.get(k);
+  }
+
+  /*	Determine if the compressed transition table is available
+   */
+  public boolean frozen() {
+    return succOffsets_ != null;
+  }
+
+  /*	Add a state to the model; throws IllegalStateException if the
+                  model was loaded by read()
                   > name						name of state to add
                   < id of state
    */
   public int addState(int name) {
+    checkModifiable();
     KState st = new KState();
     if (stateId(name) >= 0) {
       throw new RuntimeException("state already defined");
     }
 
-    int id = ids_.addInt(0);
-    ids_.setInt(id, id);
+    int id = nStates_++;
 
     states_.add(st);
+    succOffsets_ = null;
 
-    names_.addInt(name);
+    if (id == nameArray_.length) {
+      int[] n2 = new int[Math.max(20, id * 2)];
+      System.arraycopy(nameArray_, 0, n2, 0, id);
+      nameArray_ = n2;
+      names_ = IntTable.wrap(nameArray_);
+    }
+    nameArray_[id] = name;
 
-    tbl_.put("" + name, ids_.get(id));
+    tbl_.put(name, id);
 
 //	states_.add(st,number);
 //	if (firstState_ < 0 || firstState_ > number)
@@ -171,51 +706,178 @@ class Model
     return id;
   }
 
-  /*	Determine if prop. variable is set in a particular state
+  /*	Determine if prop. variable is set in a particular state; reads
+                  the frozen tables if they're available
                   > state						name of state
                   > vn							id of variable
    */
   public boolean propVar(int stateName, int vn) {
-    return state(stateId(stateName, true)).pv_.get(vn);
+    int id = stateId(stateName, true);
+    if (frozen()) {
+      return propVarAt(id, vn);
+    }
+    return state(id).pv_.get(vn);
   }
 
-  /*	Add a propositional variable to a state
+  /*	Add a propositional variable to a state.  Invalidates the frozen
+                  tables; throws IllegalStateException if the model was loaded
+                  by read().
                   > state						name of state
                   > var							variable to set true (0..MAX_PROP_VARS-1)
    */
   public void addPropVar(int state, int var) {
+    checkModifiable();
     int id = stateId(state, true);
     state(id).setPropVar(var);
+    succOffsets_ = null;
   }
 
-  /*	Determine number of transitions from a state
+  /*	Determine number of transitions from a state; reads the frozen
+                  tables if they're available
                   > src							name of state
    */
   public int degree(int src) {
-    return state(stateId(src, true)).trans_.length();
+    int id = stateId(src, true);
+    if (frozen()) {
+      return succEnd(id) - succStart(id);
+    }
+    return state(id).trans_.length();
   }
 
-  /*	Get next state
+  /*	Get next state; reads the frozen tables if they're available
+                  (their successors are in the same order as the states'
+                  transition lists)
                   > current					name of current state
                   > neighborInd			index of neighbor in list (0..degree-1)
                   < next state			name of next state
    */
   public int next(int current, int neighborInd) {
-    int currentId = stateId(current);
+    int currentId = stateId(current, true);
+    if (frozen()) {
+      return stateName(succ(succStart(currentId) + neighborInd));
+    }
     return state(currentId).trans_.get(neighborInd);
   }
 
+  /*	Throw an IllegalStateException if the model was loaded by read(),
+                  and so has no per-state objects to modify
+   */
+  private void checkModifiable() {
+    if (loaded_) {
+      throw new IllegalStateException(
+          "Model loaded from a binary file can't be modified");
+    }
+  }
+
   private KState state(int index) {
     return (KState) states_.get(index);
   }
 
-  /*	Add a transition from one state to another
+  /*	Add a transition from one state to another.  Invalidates the
+                  frozen tables; throws IllegalStateException if the model was
+                  loaded by read().
                   > src							name of source state
                   > dest						name of destination state
    */
   public void addTransition(int src, int dest) {
+    checkModifiable();
     int srcId = stateId(src);
     state(srcId).addTransition(dest);
+    succOffsets_ = null;
+  }
+
+  /*	Get position of first successor of a state in the frozen
+                  transition table
+                  > id							id of state
+                  < index of first successor; successors occupy
+                      succStart(id) ... succEnd(id)-1
+   */
+  public int succStart(int id) {
+    return succOffsets_.get(id);
+  }
+
+  /*	Get position following last successor of a state in the frozen
+                  transition table
+                  > id							id of state
+   */
+  public int succEnd(int id) {
+    return succOffsets_.get(id + 1);
+  }
+
+  /*	Get successor from frozen transition table
+                  > index						position in table, from succStart..succEnd-1
+                  < id of successor state
+   */
+  public int succ(int index) {
+    return succTargets_.get(index);
+  }
+
+  /*	Get position of first predecessor of a state in the frozen
+                  transition table
+                  > id							id of state
+                  < index of first predecessor; predecessors occupy
+                      predStart(id) ... predEnd(id)-1
+   */
+  public int predStart(int id) {
+    return predOffsets_[id];
+  }
+
+  /*	Get position following last predecessor of a state in the frozen
+                  transition table
+                  > id							id of state
+   */
+  public int predEnd(int id) {
+    return predOffsets_[id + 1];
+  }
+
+  /*	Get predecessor from frozen transition table
+                  > index						position in table, from predStart..predEnd-1
+                  < id of predecessor state
+   */
+  public int pred(int index) {
+    return predSources_[index];
+  }
+
+  /*	Get the states in which a prop. variable is set, from the frozen
+                  tables
+                  > vn							id of variable
+                  < bit vector, with bit i set if variable is true in state
+                      with id i (do not modify); null if it's true in no state
+   */
+  public long[] propVarStates(int vn) {
+    long[] v = null;
+    if (vn < varStates_.length()) {
+      v = (long[]) varStates_.getObj(vn);
+    }
+    return v;
+  }
+
+  /*	Determine if prop. variable is set in a particular state
+                  > id							id of state
+                  > vn							id of variable
+   */
+  public boolean propVarAt(int id, int vn) {
+    int w = vn >> 6;
+    return w < varWords_
+        && (stateVars_.get(id * varWords_ + w) & (1L << vn)) != 0;
+  }
+
+  /*	Get the prop. variables set in a state, from the frozen tables
+                  > id							id of state
+                  > words						the state's vars are stored here as a bit
+                                      vector, in words 0..stateVarWords()-1
+   */
+  public void stateVars(int id, long[] words) {
+    int base = id * varWords_;
+    for (int w = 0; w < varWords_; w++) {
+      words[w] = stateVars_.get(base + w);
+    }
+  }
+
+  /*	Get the number of words used for each state by stateVars()
+   */
+  public int stateVarWords() {
+    return varWords_;
   }
 
   public String toString() {
@@ -237,27 +899,40 @@ class Model
 
        sb.append(Tools.f(name, STW));
        sb.append(':');
-       int j = degree(name);
        int tot = 0;
-       for (int k = 0; k < j; k++) {
+       for (int k = succStart(i); k < succEnd(i); k++) {
          if (tot++ == MAX_TRANS) {
            tot = 1;
            sb.append("\n");
            sb.append(Tools.sp(STW + 1));
          }
-         sb.append(Tools.f(next(name, k), STW));
+         sb.append(Tools.f(stateName(succ(k)), STW));
        }
        sb.append(Tools.sp((MAX_TRANS - tot) * STW + 1));
 //
 //       Tools.tab(sb, len + (MAX_TRANS - tot) * STW + 1);
 
        for (int k = 0; k < env.vars.length(); k++) {
-         if (propVar(name, k)) {
+         if (propVarAt(i, k)) {
            sb.append(env.vars.var(k) + " ");
          }
        }
        sb.append("\n");
      }
+
+     for (int i = 0; i < fairSets_.length(); i++) {
+       FairSet fs = (FairSet) fairSets_.get(i);
+       sb.append(" fair:");
+       for (int j = 0; j < fs.states_.length(); j++) {
+         sb.append(Tools.f(fs.states_.get(j), STW));
+       }
+       sb.append(' ');
+       for (int k = fs.vars_.nextSetBit(0); k >= 0;
+            k = fs.vars_.nextSetBit(k + 1)) {
+         sb.append(env.vars.var(k) + " ");
+       }
+       sb.append("\n");
+     }
      return sb.toString();
 }
 
@@ -268,7 +943,7 @@ class Model
   /*	Determine number of states
    */
   public int states() {
-    return states_.length();
+    return nStates_;
   }
 
   /*	Determine if a model has been defined.
@@ -314,7 +989,7 @@ class Model
                   < name of state
    */
   public int stateName(int id) {
-    return names_.getInt(id);
+    return names_.get(id);
   }
 
   /*	Convert state name to id
@@ -324,15 +999,11 @@ class Model
                   < id of state, or -1 if it doesn't exist
    */
   public int stateId(int name, boolean mustExist) {
-    String work = Integer.toString(name);
-    Integer ptr = (Integer) tbl_.get(work);
-    if (ptr == null) {
-      if (mustExist) {
-        throw new IllegalStateException("stateId called with undefined state");
-      }
-      return -1;
+    int id = tbl_.get(name, -1);
+    if (id < 0 && mustExist) {
+      throw new IllegalStateException("stateId called with undefined state");
     }
-    return ptr.intValue();
+    return id;
   }
 
   public int stateId(int name) {
@@ -340,7 +1011,11 @@ class Model
   }
 
   public DArray getNames() {
-    return names_;
+    int[] names = new int[nStates_];
+    for (int i = 0; i < nStates_; i++) {
+      names[i] = names_.get(i);
+    }
+    return new DArray(names);
   }
 
   // array of states
@@ -352,14 +1027,46 @@ class Model
   // initial states
   private OrdSet initialStates_ = new OrdSet();
 
-  // hash table containing strings of state names, with pointers to
-  // state ids
-  private HashMap tbl_ = new HashMap();
+  // hash table mapping state names to state ids
+  private IntIntMap tbl_ = new IntIntMap();
 
-  // names associated with each state
-  private DArray names_ = new DArray();
-  // ids of each state; these are pointed to by the hash table entries
-  private DArray ids_ = new DArray();
+  // names associated with each state; only the first nStates_ are used.
+  // For a parsed model, names_ reads from nameArray_, which grows as
+  // states are added; for a loaded one, it reads from the file, and
+  // nameArray_ is null
+  private int[] nameArray_ = new int[0];
+  private IntTable names_ = IntTable.wrap(nameArray_);
+  private int nStates_;
+  // true if the model was loaded by read()
+  private boolean loaded_;
+
+  // frozen transition table, built by freeze() or read():  the successors
+  // of state i are the ids succTargets_[succOffsets_[i] ...
+  // succOffsets_[i+1]-1]; null if not built, or invalidated by adding
+  // states, transitions or prop. vars
+  private IntTable succOffsets_;
+  private IntTable succTargets_;
+  // reverse of the above: the predecessors of state i are the ids
+  // predSources_[predOffsets_[i] ... predOffsets_[i+1]-1]
+  private int[] predOffsets_;
+  private int[] predSources_;
+  // for each prop. var, bit vector of the states it's true in
+  private DArray varStates_ = new DArray();
+  // for each state, bit vector of the prop. vars true in it; the vector
+  // for state i occupies words i*varWords_ ... (i+1)*varWords_-1
+  private LongTable stateVars_;
+  private int varWords_;
+  // fairness constraints (FairSet objects)
+  private DArray fairSets_ = new DArray();
+  // for each fairness constraint, bit vector of the states satisfying it
+  private DArray fairStates_ = new DArray();
+
+  private static class FairSet {
+    // names of states listed in the constraint
+    OrdSet states_ = new OrdSet();
+    // prop. vars listed in the constraint
+    BitSet vars_ = new BitSet();
+  }
 
   private static class KState {
 
@@ -0,0 +1,410 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+
+/**
+ * Reads the body of a model definition (everything following the '{')
+ * by scanning characters directly, instead of having the scanner's DFA
+ * construct a Token for each state name and prop. var.
+ *
+ * Input is read through a window of fixed size, so the memory used
+ * doesn't depend on the length of the model's source.  State names are
+ * converted from their digits as they're scanned, and prop. vars are
+ * looked up in a table keyed by their characters; a String is constructed
+ * only the first time each var is seen.  Tokens are constructed only to
+ * report errors, and for the closing '}'.
+ *
+ * The syntax accepted is that of the model definitions recognized by
+ * mcheck.dfa:  state names (digits), prop. vars (a lowercase letter or
+ * '_', followed by letters, digits, or '_'), '>' and ':', separated by
+ * whitespace (chars 1...32) or comments ("--", "//", or "%", to the end of
+ * the line).
+ */
+class ModelReader
+    implements IScript {
+
+  /**
+   * Constructor
+   * @param model : model to add states to
+   * @param vars : prop. vars
+   * @param scan : scanner to read characters from
+   * @param open : the opening '{' token, just read from the scanner
+   */
+  public ModelReader(Model model, Vars vars, base.Scanner scan, Token open) {
+    this.model = model;
+    this.vars = vars;
+    this.scan = scan;
+    source = open.source();
+    line = open.line();
+    lineStart = -1 - open.column();
+  }
+
+  /**
+   * Read the model definition's body, through the closing '}'; the
+   * scanner is left positioned after it
+   * @param statesDefined : ids of states defined are set here
+   * @return the closing '}' token
+   */
+  public Token read(BitSet statesDefined) {
+    advance();
+    while (kind != T_MODELCL) {
+
+      // fairness constraints follow the state definitions
+      if (kind == T_COMPAREMID || model.hasFairSets()) {
+        expect(T_COMPAREMID);
+        advance();
+        readFairSet();
+        continue;
+      }
+
+      boolean initial = false;
+      if (kind == T_INITIALSTATE) {
+        advance();
+        initial = true;
+      }
+
+      expect(T_INTVAL);
+      int num = value;
+      if (!model.defineState(num, initial, statesDefined)) {
+        token().exception("Duplicate state definition");
+      }
+      advance();
+
+      // at least one transition
+      expect(T_INTVAL);
+      do {
+        model.defineTransition(num, value);
+        advance();
+      }
+      while (kind == T_INTVAL);
+
+      // at least one prop. var, or '_'
+      expect(T_PROPVAR);
+      do {
+        if (!blank()) {
+          model.definePropVar(num, var());
+        }
+        advance();
+      }
+      while (kind == T_PROPVAR);
+    }
+
+    Token t = token();
+    scan.unreadChars(buf, pos, end - pos, line, pos - lineStart);
+    return t;
+  }
+
+  /**
+   * Read a fairness constraint (following the ':'):  a list of state
+   * names and/or prop. vars, at least one
+   */
+  private void readFairSet() {
+    OrdSet states = new OrdSet();
+    BitSet fv = new BitSet();
+    expect(kind == T_INTVAL ? T_INTVAL : T_PROPVAR);
+    while (true) {
+      if (kind == T_INTVAL) {
+        states.add(value);
+      }
+      else if (kind == T_PROPVAR) {
+        fv.set(var());
+      }
+      else {
+        break;
+      }
+      advance();
+    }
+    model.addFairSet(states, fv);
+  }
+
+  /**
+   * Throw an exception if the current token isn't of a particular kind
+   * @param id : kind expected
+   */
+  private void expect(int id) {
+    if (kind != id) {
+      throw new ScanException("Bad or missing token", token());
+    }
+  }
+
+  /**
+   * Scan the next token, skipping whitespace and comments.  Sets kind to
+   * T_INTVAL (with its value in value), T_PROPVAR (with its characters
+   * at tokStart...pos-1), T_INITIALSTATE, T_COMPAREMID, T_MODELCL,
+   * Token.T_EOF, or Token.T_ASCII for anything else
+   */
+  private void advance() {
+    while (true) {
+      if (pos == end && !fill(pos)) {
+        tokStart = pos;
+        kind = Token.T_EOF;
+        return;
+      }
+      char c = buf[pos];
+      if (c == '\n') {
+        pos++;
+        line++;
+        lineStart = pos;
+        continue;
+      }
+      if (c >= 1 && c <= ' ') {
+        pos++;
+        continue;
+      }
+      if ( (c == '-' || c == '/') && nextChar() == c || c == '%') {
+        skipLine();
+        continue;
+      }
+      break;
+    }
+
+    tokStart = pos;
+    char c = buf[pos];
+    if (c >= '0' && c <= '9') {
+      readInt();
+    }
+    else if (c == '_' || (c >= 'a' && c <= 'z')) {
+      readVar();
+    }
+    else {
+      pos++;
+      switch (c) {
+        case '>':
+          kind = T_INITIALSTATE;
+          break;
+        case ':':
+          kind = T_COMPAREMID;
+          break;
+        case '}':
+          kind = T_MODELCL;
+          break;
+        default:
+          kind = Token.T_ASCII;
+          break;
+      }
+    }
+  }
+
+  /**
+   * Scan a state name; its digits needn't stay in the window, since
+   * any number of leading zeros is allowed
+   */
+  private void readInt() {
+    kind = T_INTVAL;
+    value = 0;
+    while (true) {
+      if (pos == end && !fill(pos)) {
+        break;
+      }
+      char c = buf[pos];
+      if (c < '0' || c > '9') {
+        break;
+      }
+      int d = c - '0';
+      if (value > (Integer.MAX_VALUE - d) / 10) {
+        throw new ScanException("Integer too large", token());
+      }
+      value = value * 10 + d;
+      pos++;
+    }
+  }
+
+  /**
+   * Scan a prop. var; its characters are left in the window, so var() can
+   * look it up before the next token is scanned
+   */
+  private void readVar() {
+    kind = T_PROPVAR;
+    hash = 0;
+    while (true) {
+      if (pos == end) {
+        if (tokStart == 0 && end == buf.length) {
+          throw new ScanException("Prop. var too long", token());
+        }
+        if (!fill(tokStart)) {
+          break;
+        }
+      }
+      char c = buf[pos];
+      if (! (c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+             || (c >= '0' && c <= '9'))) {
+        break;
+      }
+      hash = 31 * hash + c;
+      pos++;
+    }
+  }
+
+  /**
+   * Determine if the current prop. var is '_' (which, in a state
+   * definition, stands for no vars)
+   * @return boolean
+   */
+  private boolean blank() {
+    return pos - tokStart == 1 && buf[tokStart] == '_';
+  }
+
+  /**
+   * Get the index of the current prop. var, adding it to the vars if
+   * it's new
+   * @return index of var
+   */
+  private int var() {
+    int len = pos - tokStart;
+    int mask = names.length - 1;
+    int i = hash & mask;
+    while (names[i] != null) {
+      if (hashes[i] == hash && matches(names[i], len)) {
+        return ids[i];
+      }
+      i = (i + 1) & mask;
+    }
+    String name = new String(buf, tokStart, len);
+    int id = vars.var(name, true);
+    names[i] = name;
+    hashes[i] = hash;
+    ids[i] = id;
+    if (++nNames * 2 > names.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  private boolean matches(String name, int len) {
+    if (name.length() != len) {
+      return false;
+    }
+    for (int j = 0; j < len; j++) {
+      if (name.charAt(j) != buf[tokStart + j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    String[] oldNames = names;
+    int[] oldHashes = hashes;
+    int[] oldIds = ids;
+    names = new String[oldNames.length * 2];
+    hashes = new int[names.length];
+    ids = new int[names.length];
+    int mask = names.length - 1;
+    for (int j = 0; j < oldNames.length; j++) {
+      if (oldNames[j] == null) {
+        continue;
+      }
+      int i = oldHashes[j] & mask;
+      while (names[i] != null) {
+        i = (i + 1) & mask;
+      }
+      names[i] = oldNames[j];
+      hashes[i] = oldHashes[j];
+      ids[i] = oldIds[j];
+    }
+  }
+
+  /**
+   * Get the character following the current one
+   * @return character, or -1 if at end of input
+   */
+  private int nextChar() {
+    if (pos + 1 == end && !fill(pos)) {
+      return -1;
+    }
+    return buf[pos + 1];
+  }
+
+  /**
+   * Skip to the end of the current line (but not past the '\n')
+   */
+  private void skipLine() {
+    while (true) {
+      if (pos == end && !fill(pos)) {
+        return;
+      }
+      if (buf[pos] == '\n') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  /**
+   * Read more characters into the window, discarding those before a
+   * position
+   * @param keep : position of first character to keep
+   * @return false if no more characters could be read
+   */
+  private boolean fill(int keep) {
+    if (eof) {
+      return false;
+    }
+    if (keep > 0) {
+      System.arraycopy(buf, keep, buf, 0, end - keep);
+      pos -= keep;
+      end -= keep;
+      tokStart -= keep;
+      lineStart -= keep;
+    }
+    int n = scan.readChars(buf, end, buf.length - end);
+    if (n < 0) {
+      eof = true;
+      return false;
+    }
+    end += n;
+    return true;
+  }
+
+  /**
+   * Construct a token for the current one, for reporting errors
+   * @return Token
+   */
+  private Token token() {
+    String context = null;
+    if (lineStart >= 0) {
+      int i = lineStart;
+      while (i < end && buf[i++] != '\n') {
+      }
+      context = new String(buf, lineStart, i - lineStart);
+    }
+    int start = Math.max(0, tokStart);
+    return new Token(source, context, line, tokStart - lineStart,
+                     new String(buf, start, pos - start), kind, scan.getDFA());
+  }
+
+  // size of window, in characters
+  private static final int WINDOW = 1 << 16;
+
+  private Model model;
+  private Vars vars;
+  private base.Scanner scan;
+  private String source;
+
+  // window:  characters pos...end-1 have been read, but not scanned
+  private char[] buf = new char[WINDOW];
+  private int pos;
+  private int end;
+  // true if the scanner has no more characters
+  private boolean eof;
+  // line number of the character at pos, 0...n
+  private int line;
+  // position in window of the line's first character; negative if the
+  // line started before the window's first character
+  private int lineStart;
+
+  // current token:  its kind, position, and value (if T_INTVAL)
+  private int kind;
+  private int tokStart;
+  private int value;
+  // hash code of current token's characters (if T_PROPVAR); same as
+  // String.hashCode()
+  private int hash;
+
+  // open-addressed hash table of vars seen so far
+  private String[] names = new String[64];
+  private int[] hashes = new int[64];
+  private int[] ids = new int[64];
+  private int nNames;
+}
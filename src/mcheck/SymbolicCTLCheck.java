@@ -0,0 +1,534 @@
+package mcheck;
+
+import base.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * CTL model checker that represents sets of states, and the transition
+ * relation, as BDDs.
+ *
+ * A state is encoded by the bits of its id; each bit has a 'current' and a
+ * 'next' variable, interleaved, with the most significant bit at the top of
+ * the order.  The temporal connectives are computed as fixpoints of the
+ * pre-image operation:
+ *
+ *   EX c   = exists x' . T(x,x') & c(x')
+ *   E[a U b] = mu Z . b | (a & EX Z)
+ *   EG c   = nu Z . c & EX Z
+ *   AF c   = mu Z . c | AX Z,  where AX Z = !EX !Z
+ *
+ * Like CTLCheck, a state with no successors satisfies AX of anything, and
+ * thus AF of anything.
+ *
+ * If the model has fairness constraints, EG is computed by Emerson and Lei's
+ * nested fixpoint
+ *
+ *   EG c   = nu Z . c & (for each constraint F) EX E[c U (Z & F)]
+ *
+ * and the other path quantifiers are restricted to the states with a fair
+ * path, fair = EG true.
+ *
+ * The encoding of a model is built once, and reused by subsequent calls to
+ * check() with the same model; call reset() if the model changes.
+ */
+class SymbolicCTLCheck
+    implements IScript {
+
+  /*	Discard the encoding of the model, so it will be rebuilt by the
+                  next call to check()
+   */
+  public void reset() {
+    model_ = null;
+    bdd_ = null;
+  }
+
+  /*	Check a formula
+                  > env							symbol table
+                  > m								model to check
+                  > f								specification (CTL formula)
+                  > bs							if not null, where to store flags representing
+                                     satisfying states (by state id)
+                  > printFormulas		if true, prints formulas satisfied in each state
+                  > showProgress		if true, displays formulas as they're marked for
+                                     each state
+   */
+  public void check(Environment env, Model m, Formula f, BitSet bs,
+                    boolean printFormulas, boolean showProgress) {
+
+    this.env = env;
+    f_ = f;
+    warnings_.clear();
+
+    if (bs != null) {
+      bs.clear();
+    }
+
+    Tools.ASSERT(f_.isCTL());
+
+    if (!m.defined()) {
+      return;
+    }
+
+    if (m != model_) {
+      encode(m);
+    }
+
+    // reduce formula to minimal set of connectives
+    f_.reduce();
+
+    sfAlias_.clear();
+    sfOrder_.clear();
+    sfSet_.clear();
+    sfClasses_ = f_.nodeClasses();
+    classReps_.clear();
+    extractSubformulas(f_.root());
+    warnUnusedVars();
+
+    int n = sfOrder_.length();
+    for (int i = 0; i < n; i++) {
+      int root = sfOrder_.getInt(i);
+      int set = bdd_.ref(processFormula(root));
+      sfSet_.setInt(root, set);
+      if (showProgress) {
+        printMarked(root);
+      }
+    }
+
+    if (printFormulas && out_ != null) {
+      for (int i = 0; i < model_.states(); i++) {
+        out_.println("State #" + model_.stateName(i) + ":");
+        for (int j = 0; j < n; j++) {
+          int root = sfOrder_.getInt(j);
+          if (member(sfSet_.getInt(root), i)) {
+            out_.print("  ");
+            out_.println(f_.toString(root));
+          }
+        }
+        out_.println();
+      }
+    }
+
+    if (bs != null && n > 0) {
+      int sat = sfSet_.getInt(sfOrder_.getInt(n - 1));
+      for (int i = 0; i < model_.states(); i++) {
+        if (member(sat, i)) {
+          bs.set(i);
+        }
+      }
+    }
+
+    // release the subformulas' sets
+    for (int i = 0; i < n; i++) {
+      bdd_.deref(sfSet_.getInt(sfOrder_.getInt(i)));
+    }
+  }
+
+  /*	Encode a model's states, prop. vars, and transition relation
+                  as BDDs
+   */
+  private void encode(Model m) {
+    model_ = m;
+    int n = m.states();
+
+    nBits_ = 1;
+    while ( (1L << nBits_) < n) {
+      nBits_++;
+    }
+
+    bdd_ = new BDD(2 * nBits_);
+
+    curVars_ = new int[nBits_];
+    int[] allVars = new int[2 * nBits_];
+    renameMap_ = new int[2 * nBits_];
+    for (int i = 0; i < nBits_; i++) {
+      curVars_[i] = 2 * i;
+      allVars[2 * i] = 2 * i;
+      allVars[2 * i + 1] = 2 * i + 1;
+      renameMap_[2 * i] = 2 * i + 1;
+      renameMap_[2 * i + 1] = 2 * i + 1;
+    }
+    int[] nextVars = new int[nBits_];
+    for (int i = 0; i < nBits_; i++) {
+      nextVars[i] = 2 * i + 1;
+    }
+    nextCube_ = bdd_.ref(bdd_.cube(nextVars));
+
+    long[] keys = new long[Math.max(n, 1)];
+    for (int i = 0; i < n; i++) {
+      keys[i] = i;
+    }
+    valid_ = bdd_.ref(bdd_.fromMinterms(keys, n, curVars_));
+
+    // transition relation; the key for (i,j) interleaves the bits of
+    // i and j, so keys sorted by (i,j) aren't necessarily in order
+    int nTrans = 0;
+    for (int i = 0; i < n; i++) {
+      nTrans += m.succEnd(i) - m.succStart(i);
+    }
+    keys = new long[Math.max(nTrans, 1)];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = m.succStart(i); j < m.succEnd(i); j++) {
+        keys[k++] = interleave(i, m.succ(j));
+      }
+    }
+    Arrays.sort(keys, 0, nTrans);
+    trans_ = bdd_.ref(bdd_.fromMinterms(keys, nTrans, allVars));
+
+    varSets_.clear();
+
+    fairSets_ = new int[m.fairSets()];
+    fair_ = BDD.ONE;
+    if (fairSets_.length > 0) {
+      for (int f = 0; f < fairSets_.length; f++) {
+        long[] v = m.fairStates(f);
+        keys = new long[n];
+        k = 0;
+        for (int i = 0; i < n; i++) {
+          if ( (v[i >> 6] & (1L << i)) != 0) {
+            keys[k++] = i;
+          }
+        }
+        fairSets_[f] = bdd_.ref(bdd_.fromMinterms(keys, k, curVars_));
+      }
+      fair_ = bdd_.ref(fairEG(valid_));
+    }
+  }
+
+  /*	Get the set of states in which a prop. var is true
+                  > var							variable id
+   */
+  private int propVarSet(int var) {
+    if (varSets_.exists(var)) {
+      return varSets_.getInt(var);
+    }
+    long[] v = model_.propVarStates(var);
+    int set = BDD.ZERO;
+    if (v != null) {
+      long[] keys = new long[model_.states()];
+      int k = 0;
+      for (int i = 0; i < model_.states(); i++) {
+        if ( (v[i >> 6] & (1L << i)) != 0) {
+          keys[k++] = i;
+        }
+      }
+      set = bdd_.ref(bdd_.fromMinterms(keys, k, curVars_));
+    }
+    varSets_.setInt(var, set);
+    return set;
+  }
+
+  /*	Set the stream that formulas satisfied in each state (and
+                  warnings) are printed to
+                  > out							PrintStream, or null to print nothing
+   */
+  public void setOutput(PrintStream out) {
+    out_ = out;
+  }
+
+  /*	Get the warnings produced by the last check
+                  < DArray of Strings
+   */
+  public DArray warnings() {
+    return warnings_;
+  }
+
+  /*	Record a warning, and print it
+                  > msg							warning
+   */
+  private void warn(String msg) {
+    warnings_.add(msg);
+    if (out_ != null) {
+      out_.println(msg);
+    }
+  }
+
+  /*	Warn about variables not used in the model
+   */
+  private void warnUnusedVars() {
+    BitSet warned = new BitSet();
+    for (int i = 0; i < sfOrder_.length(); i++) {
+      int root = sfOrder_.getInt(i);
+      if (f_.nType(root) != T_PROPVAR) {
+        continue;
+      }
+      Token t = f_.token(root);
+      int var = env.vars.var(t.text(), true);
+      if (!model_.propVarUsed(var) && !warned.get(var)) {
+        warned.set(var);
+        warn("Warning: Variable '" + t.text() + "' not used in model");
+      }
+    }
+  }
+
+  /*	Determine satisfaction set of a subformula, whose children have
+                  already been processed
+                  > root						subformula node
+                  < BDD of satisfying states
+   */
+  private int processFormula(int root) {
+    int type = f_.nType(root);
+    int a = -1, b = -1;
+    if (f_.nChildren(root) > 0) {
+      a = sfSet_.getInt(childFormula(root, 0));
+    }
+    if (f_.nChildren(root) > 1) {
+      b = sfSet_.getInt(childFormula(root, 1));
+    }
+
+    switch (type) {
+      case T_PROPVAR: {
+        Token t = f_.token(root);
+        int var = env.vars.var(t.text(), true);
+        if (!model_.propVarUsed(var)) {
+          return BDD.ZERO;
+        }
+        return propVarSet(var);
+      }
+      case T_BOTTOM:
+        return BDD.ZERO;
+      case T_NEGATION:
+        return bdd_.diff(valid_, a);
+      case T_AND:
+        return bdd_.and(a, b);
+      case T_EX:
+        if (fairSets_.length > 0) {
+          return preImage(bdd_.and(a, fair_));
+        }
+        return preImage(a);
+      case T_EXISTS_UNTIL:
+        if (fairSets_.length > 0) {
+          return fixEU(a, bdd_.and(b, fair_));
+        }
+        return fixEU(a, b);
+      case T_EG:
+        if (fairSets_.length > 0) {
+          return fairEG(a);
+        }
+        return fixEG(a);
+      case T_AF:
+        if (fairSets_.length > 0) {
+          // AF c = !EG !c
+          return bdd_.diff(valid_, fairEG(bdd_.diff(valid_, a)));
+        }
+        return fixAF(a);
+    }
+    throw new IllegalStateException("unexpected connective: " + type);
+  }
+
+  /*	Calculate the states having a successor within a set
+                  > s								BDD of states
+   */
+  private int preImage(int s) {
+    return bdd_.andExists(trans_, bdd_.replace(s, renameMap_), nextCube_);
+  }
+
+  /*	Calculate E[a U b], the least fixpoint of Z = b | (a & EX Z)
+   */
+  private int fixEU(int a, int b) {
+    bdd_.ref(a);
+    bdd_.ref(b);
+    int z = bdd_.ref(b);
+    while (true) {
+      int z2 = bdd_.ref(bdd_.or(b, bdd_.and(a, preImage(z))));
+      bdd_.deref(z);
+      if (z2 == z) {
+        break;
+      }
+      z = z2;
+    }
+    bdd_.deref(z);
+    bdd_.deref(a);
+    bdd_.deref(b);
+    return z;
+  }
+
+  /*	Calculate EG c, the greatest fixpoint of Z = c & EX Z
+   */
+  private int fixEG(int c) {
+    bdd_.ref(c);
+    int z = bdd_.ref(c);
+    while (true) {
+      int z2 = bdd_.ref(bdd_.and(c, preImage(z)));
+      bdd_.deref(z);
+      if (z2 == z) {
+        break;
+      }
+      z = z2;
+    }
+    bdd_.deref(z);
+    bdd_.deref(c);
+    return z;
+  }
+
+  /*	Calculate EG c under fairness constraints (see above)
+   */
+  private int fairEG(int c) {
+    bdd_.ref(c);
+    int z = bdd_.ref(c);
+    while (true) {
+      int z2 = bdd_.ref(c);
+      for (int k = 0; k < fairSets_.length; k++) {
+        int y = bdd_.ref(fixEU(c, bdd_.and(z, fairSets_[k])));
+        int z3 = bdd_.ref(bdd_.and(z2, preImage(y)));
+        bdd_.deref(y);
+        bdd_.deref(z2);
+        z2 = z3;
+      }
+      bdd_.deref(z);
+      if (z2 == z) {
+        break;
+      }
+      z = z2;
+    }
+    bdd_.deref(z);
+    bdd_.deref(c);
+    return z;
+  }
+
+  /*	Calculate AF c, the least fixpoint of Z = c | AX Z
+   */
+  private int fixAF(int c) {
+    bdd_.ref(c);
+    int z = bdd_.ref(c);
+    while (true) {
+      // AX Z = valid & !EX (valid & !Z)
+      int ax = bdd_.diff(valid_, preImage(bdd_.diff(valid_, z)));
+      int z2 = bdd_.ref(bdd_.or(c, ax));
+      bdd_.deref(z);
+      if (z2 == z) {
+        break;
+      }
+      z = z2;
+    }
+    bdd_.deref(z);
+    bdd_.deref(c);
+    return z;
+  }
+
+  /*	Determine if a state is a member of a set
+                  > set							BDD of states
+                  > id							id of state
+   */
+  private boolean member(int set, int id) {
+    int f = set;
+    while (f != BDD.ZERO && f != BDD.ONE) {
+      int bit = nBits_ - 1 - (bdd_.var(f) >> 1);
+      f = ( (id >> bit) & 1) != 0 ? bdd_.high(f) : bdd_.low(f);
+    }
+    return f == BDD.ONE;
+  }
+
+  /*	Calculate the transition key for a pair of states, with the
+                  bits of the source and destination interleaved (source first)
+   */
+  private long interleave(int src, int dest) {
+    long key = 0;
+    for (int bit = nBits_ - 1; bit >= 0; bit--) {
+      key = (key << 2) | ( ( (src >> bit) & 1) << 1) | ( (dest >> bit) & 1);
+    }
+    return key;
+  }
+
+  /*	Extract list of subformulas from the formula, children first;
+                  identical subformulas are aliased to the first occurrence
+                  > root						current position in formula
+   */
+  private void extractSubformulas(int root) {
+    if (root < 0) {
+      return;
+    }
+    int cls = sfClasses_.get(root, -1);
+    if (classReps_.get(cls, -1) == root) {
+      return;
+    }
+
+    int nc = f_.nChildren(root);
+    for (int i = 0; i < nc; i++) {
+      extractSubformulas(f_.child(root, i));
+    }
+
+    int alias = classReps_.get(cls, -1);
+    if (alias < 0) {
+      alias = root;
+      classReps_.put(cls, root);
+    }
+    sfAlias_.setInt(root, alias);
+    if (alias == root) {
+      sfOrder_.addInt(root);
+    }
+  }
+
+  /*	Get child node; translate by alias if required
+   */
+  private int childFormula(int node, int child) {
+    return sfAlias_.getInt(f_.child(node, child));
+  }
+
+  /*	Print the states satisfying a subformula
+   */
+  private void printMarked(int root) {
+    if (out_ == null) {
+      return;
+    }
+    int set = sfSet_.getInt(root);
+    String str = f_.toString(root);
+    for (int i = 0; i < model_.states(); i++) {
+      if (member(set, i)) {
+        out_.println("  +" + Tools.f(model_.stateName(i), 2) + ": " +
+                            str);
+      }
+    }
+  }
+
+  // specification being checked, in reduced form
+  private Formula f_;
+
+  // symbol table
+  private Environment env;
+  // where output is printed; null to print nothing
+  private PrintStream out_ = Streams.out;
+  // warnings produced by the last check
+  private DArray warnings_ = new DArray();
+
+  // model that has been encoded, or null
+  private Model model_;
+
+  private BDD bdd_;
+
+  // number of bits in a state id
+  private int nBits_;
+
+  // current-state variable for each bit, most significant first
+  private int[] curVars_;
+
+  // map from current-state variables to next-state variables
+  private int[] renameMap_;
+
+  // BDDs of next-state variables (as a cube), valid states, and
+  // transition relation
+  private int nextCube_, valid_, trans_;
+
+  // BDD of each fairness constraint's states, and of the states with
+  // a fair path (all states if there are no constraints)
+  private int[] fairSets_;
+  private int fair_;
+
+  // BDD of each prop. var's states, if built
+  private DArray varSets_ = new DArray();
+
+  // aliases for subformulas, to detect identical ones
+  private DArray sfAlias_ = new DArray();
+
+  // order of subformulas to check
+  private DArray sfOrder_ = new DArray();
+
+  // class of each node of formula (see Formula.nodeClasses), and the
+  // first subformula in sfOrder_ of each class
+  private IntIntMap sfClasses_;
+  private IntIntMap classReps_ = new IntIntMap();
+
+  // BDD of states satisfying each subformula (indexed by node id)
+  private DArray sfSet_ = new DArray();
+}
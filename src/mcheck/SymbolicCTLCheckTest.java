@@ -0,0 +1,168 @@
+package mcheck;
+
+import java.io.*;
+import java.util.*;
+
+public class SymbolicCTLCheckTest {
+
+  /**
+   * Test program for SymbolicCTLCheck:  checks random CTL formulas against
+   * random models (some with fairness constraints), both explicitly and
+   * symbolically, and reports any formula for which the verdicts or the
+   * failing start states differ.  Each model is also saved to a binary
+   * file and loaded again, and the explicit check repeated on the loaded
+   * model.
+   *
+   * @param args : [number of models [random seed]]
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    int trials = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+    Random rnd = new Random(seed);
+    File bin = File.createTempFile("mcheck", ".bin");
+    bin.deleteOnExit();
+
+    int checks = 0, failures = 0;
+    for (int t = 0; t < trials; t++) {
+      String model = randomModel(rnd);
+      Checker c = new Checker(model);
+      c.save(bin);
+      Checker loaded = Checker.load(bin);
+
+      for (int k = 0; k < FORMULAS_PER_MODEL; k++) {
+        String f = randomFormula(rnd, 3);
+        CheckResult r = c.check(f);
+        String diff = compare(r, c.check(f, Checker.OPT_SYMBOLIC),
+                              "symbolic");
+        if (diff == null) {
+          diff = compare(r, loaded.check(f), "loaded");
+        }
+        checks++;
+        if (diff != null) {
+          failures++;
+          System.out.println("*** " + diff + " result differs for " + f
+                             + " on model:\n" + model);
+        }
+      }
+    }
+    System.out.println(checks + " checks on " + trials + " models (seed "
+                       + seed + "), " + failures + " failed");
+  }
+
+  private static final int FORMULAS_PER_MODEL = 10;
+
+  private static final String[] VARS = {
+      "p", "q", "r"};
+
+  /**
+   * Compare the result of an explicit check with another check's
+   * @param r : result of explicit check
+   * @param r2 : other result
+   * @param name : description of other check
+   * @return null if they agree, else name
+   */
+  private static String compare(CheckResult r, CheckResult r2, String name) {
+    if (r.holds() != r2.holds()
+        || !Arrays.equals(r.failedStates(), r2.failedStates())) {
+      return name;
+    }
+    return null;
+  }
+
+  /**
+   * Construct a random model definition, with states 0..n-1
+   * @param rnd : random number generator
+   * @return model definition
+   */
+  private static String randomModel(Random rnd) {
+    int n = 1 + rnd.nextInt(8);
+    StringBuffer sb = new StringBuffer("{\n");
+    boolean anyInitial = false;
+    for (int i = 0; i < n; i++) {
+      boolean initial = rnd.nextInt(3) == 0 || (i == n - 1 && !anyInitial);
+      anyInitial |= initial;
+      sb.append(initial ? "> " : "  ");
+      sb.append(i);
+      int degree = 1 + rnd.nextInt(3);
+      for (int j = 0; j < degree; j++) {
+        sb.append(' ');
+        sb.append(rnd.nextInt(n));
+      }
+      boolean anyVar = false;
+      for (int v = 0; v < VARS.length; v++) {
+        if (rnd.nextBoolean()) {
+          sb.append(' ');
+          sb.append(VARS[v]);
+          anyVar = true;
+        }
+      }
+      if (!anyVar) {
+        sb.append(" _");
+      }
+      sb.append('\n');
+    }
+
+    // half the models have fairness constraints
+    int nFair = rnd.nextBoolean() ? 0 : 1 + rnd.nextInt(2);
+    for (int k = 0; k < nFair; k++) {
+      sb.append(':');
+      if (rnd.nextBoolean()) {
+        sb.append(' ');
+        sb.append(rnd.nextInt(n));
+      }
+      else {
+        sb.append(' ');
+        sb.append(VARS[rnd.nextInt(VARS.length)]);
+      }
+      sb.append('\n');
+    }
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * Construct a random CTL formula
+   * @param rnd : random number generator
+   * @param depth : maximum depth of nested operators
+   * @return formula
+   */
+  private static String randomFormula(Random rnd, int depth) {
+    if (depth == 0 || rnd.nextInt(4) == 0) {
+      return VARS[rnd.nextInt(VARS.length)];
+    }
+    String a = randomFormula(rnd, depth - 1);
+    switch (rnd.nextInt(12)) {
+      case 0:
+        return "!" + paren(a);
+      case 1:
+        return paren(a) + " & " + paren(randomFormula(rnd, depth - 1));
+      case 2:
+        return paren(a) + " | " + paren(randomFormula(rnd, depth - 1));
+      case 3:
+        return "EX " + paren(a);
+      case 4:
+        return "AX " + paren(a);
+      case 5:
+        return "EF " + paren(a);
+      case 6:
+        return "AF " + paren(a);
+      case 7:
+        return "EG " + paren(a);
+      case 8:
+        return "AG " + paren(a);
+      case 9:
+        return "E[" + paren(a) + " U " + paren(randomFormula(rnd, depth - 1))
+            + "]";
+      case 10:
+        return "A[" + paren(a) + " U " + paren(randomFormula(rnd, depth - 1))
+            + "]";
+      default:
+        return paren(a) + " -> " + paren(randomFormula(rnd, depth - 1));
+    }
+  }
+
+  private static String paren(String f) {
+    return "(" + f + ")";
+  }
+}
@@ -13,11 +13,11 @@ class Vars {
     if (db) Streams.out.println("Vars.var str="+Tools.d(str)+" addIfMissing="+addIfMissing);
 
 //    int index = -1;
-    Integer id = (Integer) map.get(str);
+    Integer id = map.get(str);
     if (db) Streams.out.println(" map returned "+Tools.d(id));
 
     if (id == null && addIfMissing) {
-      id = new Integer(strs.size());
+      id = Integer.valueOf(strs.size());
       strs.add(str);
       map.put(str, id);
     }
@@ -28,19 +28,31 @@ class Vars {
   }
 
   public String var(int index) {
-    return (String) strs.get(index);
+    return strs.get(index);
   }
 
   public int length() {
     return strs.size();
   }
 
+  /**
+   * Construct a copy of this table, with the same numbering, that can be
+   * extended independently of it
+   * @return Vars
+   */
+  public Vars copy() {
+    Vars v = new Vars();
+    v.map.putAll(map);
+    v.strs.addAll(strs);
+    return v;
+  }
+
   public void clear() {
     strs.clear();
     map.clear();
   }
 
-  private HashMap map = new HashMap();
-  private ArrayList strs = new ArrayList();
+  private HashMap<String, Integer> map = new HashMap<String, Integer>();
+  private ArrayList<String> strs = new ArrayList<String>();
 
 }
@@ -2,6 +2,7 @@ package mcheck;
 
 import base.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 
 public class mch
@@ -22,26 +23,11 @@ public class mch
     }
     super.doMain(mainArgs);
     try {
-      // -b
-      boolean showBuchi = false;
-      // -r
-      boolean printReduced = false;
-      // -v
-      boolean verbose = false;
-      // -m
-      boolean showMarkedCTL = false;
-      // true if we're to read from stdIn
-      boolean stdIn = true;
-      // true if formulas have been entered
-      boolean formulasDefined = false;
+      // input files
+      DArray paths = new DArray();
       // tokenizer
       DFA dfa = new DFA(Streams.openResource("mcheck.dfa"));
 
-      Environment env = new Environment();
-      env.dfa = dfa;
-
-      Model model = new Model(env);
-
       String title =
           "--//  mch: Kripke Model Checker for LTL & CTL Formulas\n" +
           "-//        Written by Jeff Sember, Spring 2005\n" +
@@ -55,36 +41,70 @@ public class mch
           +
           "                      if none specified, uses standard input\n"
           + "<opts> include:\n"
+          + " -a, --batch <n>: check each input file independently, n at a time\n"
+          + "                      (0: one per processor); output is in input order\n"
           + " -b, --buchi    : show Buchi automata\n"
+          + " -c, --cache <n>: cache automata of up to n LTL formulas (default "
+          + LTLCheck.DEFAULT_CACHE_SIZE + ")\n"
+          + " -d, --bdd      : check CTL formulas symbolically, using BDDs\n"
           + " -e, --echo     : echo input files\n"
           + " -h, --help     : print help\n"
+          + " -j, --parallel : evaluate CTL subformulas in parallel\n"
+          + " -k, --serve <n>: answer requests on local port n (0: any free port),\n"
+          + "                      with each input file (and --load file) as a\n"
+          + "                      model named by its file name; see CheckServer\n"
+          + " -l, --load <f> : load model from binary file (see --save)\n"
           +
           " -m, --mark     : show formulas as they're marked in states (CTL only)\n"
+          + " -n, --nested   : check LTL by nested search of degeneralized automata\n"
+          + "                      (for cross-checking)\n"
+          + " -o, --save <f> : save each parsed model to binary file (not with\n"
+          + "                      --batch)\n"
           + " -p, --paren    : don't filter out unnecessary parentheses\n"
           + " -r, --reduced  : display reduced formulas\n"
-          + " -v, --verbose  : verbose output\n";
+          + " -s, --sweep    : use fixpoint sweeps for CTL (for cross-checking)\n"
+          + " -t, --stats    : report product states explored by LTL checks\n"
+          + " -u, --unsimp   : don't simplify LTL formula automata\n"
+          + " -v, --verbose  : verbose output\n"
+          + " -w, --witness  : show witness or counterexample path (CTL only)\n";
 
-      String defaults = " == --buchi -b --echo -e --help -h --mark -m"
-          + " --paren -p --reduced -r --verbose -v ";
+      String defaults = " == --batch -a --buchi -b --cache -c --bdd -d --echo -e --help -h --parallel -j --serve -k --load -l --mark -m"
+          + " --nested -n --save -o --paren -p --reduced -r --sweep -s --stats -t --unsimp -u --verbose -v --witness -w ";
 
-      base.Scanner scan = new base.Scanner(dfa, T_WHITESPACE);
       CmdArgs args = new CmdArgs(mainArgs, defaults, helpMsg);
 
+      cacheSize = LTLCheck.DEFAULT_CACHE_SIZE;
+      batchThreads = -1;
+      servePort = -1;
+
       // command line options:
       while (args.hasNext()) {
         if (args.nextIsValue()) {
-          stdIn = false;
-          String p = args.nextValue();
-          scan.include(Streams.reader(p), p, false);
+          paths.add(args.nextValue());
           continue;
         }
 
         switch (args.nextChar()) {
+          case 'a':
+            batchThreads = args.nextInt();
+            break;
           case 'b':
             showBuchi = true;
             break;
+          case 'c':
+            cacheSize = args.nextInt();
+            break;
+          case 'd':
+            symbolicCTL = true;
+            break;
           case 'e':
-            scan.setEcho(true);
+            echo = true;
+            break;
+          case 't':
+            stats = true;
+            break;
+          case 'u':
+            unsimplified = true;
             break;
           case 'v':
             verbose = true;
@@ -92,11 +112,32 @@ public class mch
           case 'm':
             showMarkedCTL = true;
             break;
+          case 'k':
+            servePort = args.nextInt();
+            break;
+          case 'l':
+            loadPath = args.nextPath();
+            break;
+          case 'o':
+            savePath = args.nextPath();
+            break;
+          case 'n':
+            nestedLTL = true;
+            break;
+          case 'j':
+            parallelCTL = true;
+            break;
           case 'r':
             printReduced = true;
             break;
+          case 's':
+            sweepCTL = true;
+            break;
+          case 'w':
+            witness = true;
+            break;
           case 'p':
-            env.filterParen = true;
+            filterParen = true;
             break;
           default:
             args.unsupported();
@@ -104,115 +145,352 @@ public class mch
       }
       args.done();
 
-      if (stdIn) {
+      // each batch job would save its model to the same file
+      if (batchThreads >= 0 && savePath != null) {
+        args.exception("--save can't be used with --batch");
+      }
+
+      if (servePort >= 0) {
+        serve(paths);
+        return;
+      }
+
+      if (batchThreads >= 0 && !paths.isEmpty()) {
+        checkFiles(dfa, paths);
+        return;
+      }
+
+      base.Scanner scan = new base.Scanner(dfa, T_WHITESPACE);
+      scan.setEcho(echo);
+      for (int i = 0; i < paths.length(); i++) {
+        String p = paths.getString(i);
+        scan.include(Streams.reader(p), p, false);
+      }
+      if (paths.isEmpty()) {
         scan.include(Streams.reader(null), "");
       }
+      check(dfa, scan);
+    }
+    catch (ScanException e) {
+      Streams.out.println(e.toString());
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-      LTLCheck c = null;
-      c = new LTLCheck(env,
-                       (verbose ? LTLCheck.OPT_PRINTSTATES : 0)
-                       | (verbose ? LTLCheck.OPT_PRINTFULLSEQ : 0)
-                       | (showBuchi ? LTLCheck.OPT_PRINTBUCHI : 0)
-          );
-
-      while (!scan.eof()) {
-
-        Token t = scan.peek();
-        // is it a model definition?
-        if (t.id(T_MODELOP)) {
-          model.clear();
-          env.clear();
-          formulasDefined = false;
-          model.parse(scan);
-          Streams.out.println("Parsed model, " + model.states() + " states\n");
-          if (verbose) {
-            model.print();
-            Streams.out.println();
-            formulasDefined = true;
+  /**
+   * Run a server that answers check requests against resident models
+   * @param paths : paths of model files to load before accepting requests
+   */
+  private void serve(DArray paths) throws IOException {
+    CheckServer server = new CheckServer(servePort);
+    for (int i = 0; i < paths.length(); i++) {
+      String p = paths.getString(i);
+      Reader r = Streams.reader(p);
+      try {
+        server.define(modelName(p), new Checker(r, p));
+      }
+      finally {
+        r.close();
+      }
+    }
+    if (loadPath != null) {
+      server.define(modelName(loadPath.getName()), Checker.load(loadPath));
+    }
+    Streams.out.println("Serving on port " + server.port());
+    Streams.out.flush();
+    server.serve();
+  }
+
+  /**
+   * Derive the name of a model from the path of the file it's read from
+   * @param path : path of file
+   * @return file name, without directory or extension
+   */
+  private static String modelName(String path) {
+    String name = new File(path).getName();
+    int ext = name.lastIndexOf('.');
+    return ext > 0 ? name.substring(0, ext) : name;
+  }
+
+  /**
+   * Check each input file independently, as if mch had been run on each
+   * one separately.  Files are checked concurrently by a pool of threads,
+   * each with its own scanner, environment, model and checkers; the
+   * output of each is collected in a buffer, and printed once the output
+   * of every file preceding it has been.
+   * @param dfa : tokenizer (shared, since recognizing tokens doesn't
+   *   modify it)
+   * @param paths : paths of input files
+   */
+  private void checkFiles(final DFA dfa, DArray paths) throws IOException {
+    int nThreads = batchThreads;
+    if (nThreads == 0) {
+      nThreads = Runtime.getRuntime().availableProcessors();
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+    try {
+      List<Future<ByteArrayOutputStream>> jobs =
+          new ArrayList<Future<ByteArrayOutputStream>>();
+      for (int i = 0; i < paths.length(); i++) {
+        final String p = paths.getString(i);
+        jobs.add(pool.submit(new Callable<ByteArrayOutputStream>() {
+          public ByteArrayOutputStream call() throws Exception {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(buf);
+            Streams.setThreadOutput(out);
+            try {
+              base.Scanner scan = new base.Scanner(dfa, T_WHITESPACE);
+              scan.setEcho(echo);
+              scan.include(Streams.reader(p), p);
+              check(dfa, scan);
+            }
+            catch (ScanException e) {
+              Streams.out.println(e.toString());
+            }
+            finally {
+              Streams.setThreadOutput(null);
+              out.close();
+            }
+            return buf;
           }
+        }));
+      }
+      for (Future<ByteArrayOutputStream> job : jobs) {
+        ByteArrayOutputStream buf;
+        try {
+          buf = job.get();
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
         }
-        else if (t.id(T_COMPARE)) {
+        catch (ExecutionException e) {
+          Throwable c = e.getCause();
+          if (c instanceof IOException) {
+            throw (IOException) c;
+          }
+          if (c instanceof RuntimeException) {
+            throw (RuntimeException) c;
+          }
+          throw new RuntimeException(c);
+        }
+        buf.writeTo(Streams.out);
+        Streams.out.flush();
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
 
-          // ? <form> : <form>
-          // compare two LTL formulas
+  /**
+   * Read models and specifications from a scanner until it's exhausted,
+   * checking each specification against the most recent model
+   * @param dfa : tokenizer
+   * @param scan : scanner
+   */
+  private void check(DFA dfa, base.Scanner scan) throws IOException {
+    // true if formulas have been entered
+    boolean formulasDefined = false;
+
+    Environment env = new Environment();
+    env.dfa = dfa;
+    env.filterParen = filterParen;
+
+    Model model = new Model(env);
+
+    LTLCheck c = null;
+    c = new LTLCheck(env,
+                     (verbose ? LTLCheck.OPT_PRINTSTATES : 0)
+                     | (verbose ? LTLCheck.OPT_PRINTFULLSEQ : 0)
+                     | (showBuchi ? LTLCheck.OPT_PRINTBUCHI : 0)
+                     | (nestedLTL ? LTLCheck.OPT_DEGENERALIZE : 0)
+                     | (unsimplified ? LTLCheck.OPT_NOSIMPLIFY : 0)
+                     | (stats ? LTLCheck.OPT_STATS : 0),
+                     cacheSize
+        );
+    SymbolicCTLCheck symbolic = new SymbolicCTLCheck();
+
+    if (loadPath != null) {
+      model.clear();
+      env.clear();
+      model.read(loadPath);
+      Streams.out.println("Loaded model, " + model.states() + " states\n");
+      if (verbose) {
+        model.print();
+        Streams.out.println();
+        formulasDefined = true;
+      }
+    }
 
-          formulasDefined = model.defined();
-          scan.read();
+    while (!scan.eof()) {
+
+      Token t = scan.peek();
+      // is it a model definition?
+      if (t.id(T_MODELOP)) {
+        model.clear();
+        env.clear();
+        formulasDefined = false;
+        model.parse(scan);
+        symbolic.reset();
+        if (savePath != null) {
+          model.write(savePath);
+        }
+        Streams.out.println("Parsed model, " + model.states() + " states\n");
+        if (verbose) {
+          model.print();
+          Streams.out.println();
+          formulasDefined = true;
+        }
+      }
+      else if (t.id(T_COMPARE)) {
 
-          Formula f1 = new Formula(env, scan);
-          scan.read(T_COMPAREMID);
-          Formula f2 = new Formula(env, scan);
+        // ? <form> : <form>
+        // compare two LTL formulas
 
-          c.compare(f1, f2, printReduced);
-        }
-        else {
+        formulasDefined = model.defined();
+        scan.read();
 
-          // assume it's a formula.
+        Formula f1 = new Formula(env, scan);
+        scan.read(T_COMPAREMID);
+        Formula f2 = new Formula(env, scan);
 
-          formulasDefined = model.defined();
+        c.compare(f1, f2, printReduced);
+      }
+      else {
 
-          Formula f = new Formula(env, scan);
-          Streams.out.println(f);
-          if (printReduced) {
-            Streams.out.println(f.reduced());
-          }
+        // assume it's a formula.
 
-          if (!model.defined()) {
-            continue;
-          }
+        formulasDefined = model.defined();
+
+        Formula f = new Formula(env, scan);
+        Streams.out.println(f);
+        if (printReduced) {
+          Streams.out.println(f.reduced());
+        }
+
+        if (!model.defined()) {
+          continue;
+        }
 
-          // if a model has been defined,
-          // check it against this formula.
+        // if a model has been defined,
+        // check it against this formula.
 
-          if (f.isCTL() && !f.isLTL()
-              ) {
-            CTLCheck c2 = new CTLCheck();
-            BitSet sat = new BitSet();
+        if (f.isCTL() && !f.isLTL()
+            ) {
+          BitSet sat = new BitSet();
+          CTLCheck c2 = null;
+          if (symbolicCTL && !witness) {
+            symbolic.check(env, model, f, sat, verbose, showMarkedCTL);
+          }
+          else {
+            c2 = new CTLCheck(
+                (sweepCTL ? CTLCheck.OPT_SWEEP : 0)
+                | (parallelCTL ? CTLCheck.OPT_PARALLEL : 0)
+                | (witness ? CTLCheck.OPT_WITNESS : 0));
             c2.check(env, model, f, sat, verbose, showMarkedCTL);
+          }
 
-            // Verify that all start states satisfy the formula
-            OrdSet is = model.initialStates();
-            boolean first = true;
-            for (int i = 0; i < is.length(); i++) {
-              int iName = is.get(i);
-              if (!sat.get(model.stateId(iName))) {
-                if (first) {
-                  Streams.out.print("Not satisfied; start states: ");
-                  first = false;
-                }
-                else {
-                  Streams.out.print(' ');
-                }
-                Streams.out.print(iName);
+          // Verify that all start states satisfy the formula
+          OrdSet is = model.initialStates();
+          boolean first = true;
+          for (int i = 0; i < is.length(); i++) {
+            int iName = is.get(i);
+            if (!sat.get(model.stateId(iName))) {
+              if (first) {
+                Streams.out.print("Not satisfied; start states: ");
+                first = false;
               }
+              else {
+                Streams.out.print(' ');
+              }
+              Streams.out.print(iName);
             }
-            if (first) {
-              Streams.out.print("Satisified.");
-            }
-            Streams.out.print("\n\n");
-            continue;
           }
+          if (first) {
+            Streams.out.print("Satisified.");
+          }
+          Streams.out.println();
 
-          if (f.isLTL()) {
-            c.check(model, f);
-            continue;
+          // show a path from the first failing start state, or if
+          // there are none, from the first start state
+          if (witness && is.length() > 0) {
+            int iName = is.get(0);
+            for (int i = 0; i < is.length(); i++) {
+              if (!sat.get(model.stateId(is.get(i)))) {
+                iName = is.get(i);
+                break;
+              }
+            }
+            String path = c2.witness(model.stateId(iName));
+            if (path != null) {
+              String str = (first ? "Witness" : "Counterexample")
+                  + " from " + iName + ":\n  " + path;
+              if (!verbose) {
+                str = Tools.trimLength(str, 75, true);
+              }
+              Streams.out.println(str);
+            }
           }
+          Streams.out.println();
+          continue;
+        }
 
-          Streams.out.println("(cannot check mixed CTL/LTL formula...)\n");
+        if (f.isLTL()) {
+          c.check(model, f);
           continue;
         }
-      }
 
-      if (!formulasDefined && model.defined()) {
-        model.print();
-        Streams.out.println();
+        Streams.out.println("(cannot check mixed CTL/LTL formula...)\n");
+        continue;
       }
     }
-    catch (ScanException e) {
-      Streams.out.println(e.toString());
+
+    if (!formulasDefined && model.defined()) {
+      model.print();
+      Streams.out.println();
     }
-    catch (IOException e) {
-      throw new RuntimeException(e);
+
+    if (showBuchi) {
+      Streams.out.println(c.cache());
     }
   }
+
+  // -b
+  private boolean showBuchi;
+  // -r
+  private boolean printReduced;
+  // -v
+  private boolean verbose;
+  // -m
+  private boolean showMarkedCTL;
+  // -s
+  private boolean sweepCTL;
+  // -j
+  private boolean parallelCTL;
+  // -d
+  private boolean symbolicCTL;
+  // -w
+  private boolean witness;
+  // -n
+  private boolean nestedLTL;
+  // -u
+  private boolean unsimplified;
+  // -t
+  private boolean stats;
+  // -l
+  private File loadPath;
+  // -o
+  private File savePath;
+  // -c
+  private int cacheSize;
+  // -p
+  private boolean filterParen;
+  // -e
+  private boolean echo;
+  // -a; negative if not in batch mode
+  private int batchThreads;
+  // -k; negative if not in server mode
+  private int servePort;
 }